@@ -3,14 +3,12 @@ package com.linetranslate.bot;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import java.io.File;
 
 @SpringBootApplication
 @EnableAsync
-@EnableCaching
 public class LinebotTranslatorApplication {
 
 	public static void main(String[] args) {
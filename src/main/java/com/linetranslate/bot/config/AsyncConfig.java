@@ -0,0 +1,68 @@
+package com.linetranslate.bot.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.linetranslate.bot.util.StripedExecutor;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Configuration
+@Slf4j
+public class AsyncConfig {
+
+    @Value("${app.line.async.core-pool-size:8}")
+    private int corePoolSize;
+
+    @Value("${app.line.async.max-pool-size:16}")
+    private int maxPoolSize;
+
+    @Value("${app.line.async.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.line.async.await-termination-seconds:30}")
+    private int awaitTerminationSeconds;
+
+    @Value("${app.line.async.lanes:32}")
+    private int laneCount;
+
+    @Value("${app.line.async.lane-queue-capacity:20}")
+    private int laneQueueCapacity;
+
+    /**
+     * 處理 LINE 訊息的專用執行緒池
+     * 佇列有上限，滿載時由 webhook 執行緒自行處理，相當於退回同步模式而不會丟棄訊息
+     */
+    @Bean(name = "messageProcessingExecutor")
+    public ThreadPoolTaskExecutor messageProcessingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("line-message-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(awaitTerminationSeconds);
+        executor.initialize();
+
+        log.info("訊息處理執行緒池初始化完成，核心: {}, 最大: {}, 佇列: {}", corePoolSize, maxPoolSize, queueCapacity);
+        return executor;
+    }
+
+    /**
+     * 依用戶分道的序列執行器，同一用戶的訊息依序處理，不同用戶共用 messageProcessingExecutor 並行處理
+     * 每個 lane 同時最多只佔用執行緒池佇列中的一個位置
+     */
+    @Bean(name = "userOrderedExecutor")
+    public StripedExecutor userOrderedExecutor(ThreadPoolTaskExecutor messageProcessingExecutor) {
+        if (queueCapacity < laneCount) {
+            log.warn("執行緒池佇列 ({}) 小於 lane 數量 ({})，滿載時部分 lane 會在 webhook 執行緒中執行", queueCapacity, laneCount);
+        }
+        log.info("用戶分道執行器初始化完成，lane: {}, 每個 lane 佇列上限: {}", laneCount, laneQueueCapacity);
+        return new StripedExecutor(messageProcessingExecutor, laneCount, laneQueueCapacity);
+    }
+}
@@ -4,12 +4,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linetranslate.bot.service.ai.AiHttpTransport;
+import com.theokanning.openai.client.OpenAiApi;
 import com.theokanning.openai.service.OpenAiService;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
 
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -44,7 +48,7 @@ public class OpenAiConfig {
     }
 
     @Bean(name = "openAiClient")
-    public OpenAiService openAiClient() {
+    public OpenAiService openAiClient(AiHttpTransport aiHttpTransport) {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             log.warn("OpenAI API 金鑰未設置");
             // 返回一個空的服務，後續需要做好空值檢查
@@ -52,6 +56,14 @@ public class OpenAiConfig {
         }
 
         log.info("初始化 OpenAI 服務, 使用模型: {}", modelName);
-        return new OpenAiService(apiKey, Duration.ofSeconds(60));
+        // 使用共用的 HTTP 傳輸層，只額外加上授權標頭；授權標頭需在速率限制攔截器之前加入，才能依金鑰分別限制
+        OkHttpClient.Builder httpClientBuilder = aiHttpTransport.clientFor("openai").newBuilder();
+        httpClientBuilder.interceptors().add(0, chain -> chain.proceed(chain.request().newBuilder()
+                .header("Authorization", "Bearer " + apiKey)
+                .build()));
+        OkHttpClient httpClient = httpClientBuilder.build();
+        ObjectMapper objectMapper = OpenAiService.defaultObjectMapper();
+        Retrofit retrofit = OpenAiService.defaultRetrofit(httpClient, objectMapper);
+        return new OpenAiService(retrofit.create(OpenAiApi.class), httpClient.dispatcher().executorService());
     }
 }
\ No newline at end of file
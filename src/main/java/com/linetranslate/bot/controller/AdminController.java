@@ -181,6 +181,14 @@ public class AdminController {
                         return new TextMessage("未知的使用量子命令：" + usageSubCommand + "\n\n可用的子命令：\n• /admin usage - 顯示當前月的使用量和費用\n• /admin usage month [YYYY-MM] - 顯示指定月份的使用量和費用\n• /admin usage provider [openai/gemini] - 按 AI 提供者顯示使用量和費用\n• /admin usage summary - 顯示所有時間的使用量和費用摘要");
                 }
                 
+            case "status":
+                // 顯示 AI 提供者的斷路器狀態
+                return new TextMessage(adminService.getAiProviderStatus());
+
+            case "metrics":
+                // 顯示快取、佇列等元件的效能指標
+                return new TextMessage(adminService.getPerformanceMetrics());
+                
             case "today":
                 // 使用現有的 getTodayStats 方法
                 return new TextMessage(adminService.getTodayStats());
@@ -325,6 +333,8 @@ public class AdminController {
                 "➖ /admin nickname [用戶ID] [新暱稱] - 設置用戶暱稱\n" +
                 "➖ /admin config - 查看和修改系統配置\n" +
                 "➖ /admin usage - 查看 API 使用量和費用\n" +
+                "➖ /admin status - 查看 AI 提供者的斷路器狀態\n" +
+                "➖ /admin metrics - 查看快取與效能指標\n" +
                 "➖ /admin add [用戶ID] - 添加管理員\n" +
                 "➖ /admin remove [用戶ID] - 移除管理員權限";
     }
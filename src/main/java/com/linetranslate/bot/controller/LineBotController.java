@@ -13,10 +13,10 @@ import com.linecorp.bot.model.message.TextMessage;
 import com.linecorp.bot.spring.boot.annotation.EventMapping;
 import com.linecorp.bot.spring.boot.annotation.LineMessageHandler;
 
-import com.linetranslate.bot.model.UserProfile;
 import com.linetranslate.bot.repository.UserProfileRepository;
 import com.linetranslate.bot.service.ocr.ImageTranslationService;
 import com.linetranslate.bot.service.translation.TranslationService;
+import com.linetranslate.bot.service.line.LineReplyDispatcher;
 import com.linetranslate.bot.service.line.LineUserProfileService;
 import com.linetranslate.bot.service.AdminService;
 import com.linetranslate.bot.util.LanguageUtils;
@@ -38,6 +38,7 @@ public class LineBotController {
     private final ImageTranslationService imageTranslationService;
     private final OpenAiConfig openAiConfig;
     private final GeminiConfig geminiConfig;
+    private final LineReplyDispatcher lineReplyDispatcher;
 
     @Autowired
     public LineBotController(
@@ -47,7 +48,8 @@ public class LineBotController {
             AdminController adminController,
             ImageTranslationService imageTranslationService,
             OpenAiConfig openAiConfig,
-            GeminiConfig geminiConfig) {
+            GeminiConfig geminiConfig,
+            LineReplyDispatcher lineReplyDispatcher) {
         this.translationService = translationService;
         this.lineUserProfileService = lineUserProfileService;
         this.adminService = adminService;
@@ -55,10 +57,12 @@ public class LineBotController {
         this.imageTranslationService = imageTranslationService;
         this.openAiConfig = openAiConfig;
         this.geminiConfig = geminiConfig;
+        this.lineReplyDispatcher = lineReplyDispatcher;
     }
     
     /**
      * 處理文本消息事件
+     * 非同步模式下立即返回 null 讓 webhook 完成，處理結果由 LineReplyDispatcher 回覆
      */
     @EventMapping
     public Message handleTextMessageEvent(MessageEvent<TextMessageContent> event) {
@@ -67,6 +71,43 @@ public class LineBotController {
 
         log.info("收到用戶 {} 的文字訊息: {}", userId, receivedText);
 
+        if (lineReplyDispatcher.isEnabled()) {
+            lineReplyDispatcher.dispatch(userId, event.getReplyToken(), event.getTimestamp(),
+                    () -> processTextMessage(userId, receivedText));
+            return null;
+        }
+        return processTextMessage(userId, receivedText);
+    }
+
+    /**
+     * 處理圖片消息事件
+     */
+    @EventMapping
+    public Message handleImageMessageEvent(MessageEvent<ImageMessageContent> event) {
+        String userId = event.getSource().getUserId();
+        String messageId = event.getMessage().getId();
+        log.info("收到用戶 {} 的圖片訊息，ID: {}", userId, messageId);
+
+        if (lineReplyDispatcher.isEnabled()) {
+            lineReplyDispatcher.dispatch(userId, event.getReplyToken(), event.getTimestamp(),
+                    () -> processImageMessage(userId, messageId));
+            return null;
+        }
+        return processImageMessage(userId, messageId);
+    }
+
+    /**
+     * 處理其他未定義的事件
+     */
+    @EventMapping
+    public void handleDefaultMessageEvent(Event event) {
+        log.info("收到未處理的事件: {}", event);
+    }
+
+    /**
+     * 處理文字訊息並產生回覆
+     */
+    private Message processTextMessage(String userId, String receivedText) {
         // 檢查是否是系統命令
         if (receivedText.startsWith("/")) {
             return handleCommand(userId, receivedText);
@@ -83,14 +124,9 @@ public class LineBotController {
     }
 
     /**
-     * 處理圖片消息事件
+     * 處理圖片訊息並產生回覆
      */
-    @EventMapping
-    public Message handleImageMessageEvent(MessageEvent<ImageMessageContent> event) {
-        String userId = event.getSource().getUserId();
-        String messageId = event.getMessage().getId();
-        log.info("收到用戶 {} 的圖片訊息，ID: {}", userId, messageId);
-
+    private Message processImageMessage(String userId, String messageId) {
         try {
             // 處理圖片翻譯
             String translationResult = imageTranslationService.processImageTranslation(userId, messageId);
@@ -102,14 +138,6 @@ public class LineBotController {
         }
     }
 
-    /**
-     * 處理其他未定義的事件
-     */
-    @EventMapping
-    public void handleDefaultMessageEvent(Event event) {
-        log.info("收到未處理的事件: {}", event);
-    }
-
     /**
      * 處理系統命令
      */
@@ -272,12 +300,8 @@ public class LineBotController {
      * @return 設置結果消息
      */
     private Message handleSetModelCommand(String userId, String modelName) {
-        // 獲取用戶當前的 AI 提供者
-        UserProfile userProfile = lineUserProfileService.getUserProfile(userId);
-        String provider = userProfile.getPreferredAiProvider();
-        if (provider == null) {
-            provider = "openai"; // 默認使用 OpenAI
-        }
+        // 獲取用戶當前的 AI 提供者 (未設定時預設為 OpenAI)
+        String provider = translationService.getPreferredProvider(userId);
         
         // 設置提供者
         translationService.setPreferredProvider(userId, provider);
@@ -31,6 +31,8 @@ public class TranslationRecord {
     private double processingTimeMs;
     private boolean isImageTranslation;
     private String imageUrl; // 如果是圖片翻譯，則存儲圖片URL
+    private String routingReason; // 模型路由選擇模型的原因，未啟用路由時為 null
+    private String baselineModel; // 未經模型路由時會使用的模型，用於估算路由節省的費用
 
     @Builder.Default
     private LocalDateTime timestamp = LocalDateTime.now();
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -84,10 +85,11 @@ public class UserProfile {
 
     /**
      * 獲取最近使用的語言列表
+     * 資料庫中的最近語言以 $push 累積，讀取時的集合已去除重複，這裡只取最近的 5 個
      *
      * @return 語言代碼列表
      */
     public List<String> getRecentLanguagesList() {
-        return new ArrayList<>(recentLanguages);
+        return recentLanguages.stream().limit(5).collect(Collectors.toList());
     }
 }
\ No newline at end of file
@@ -10,7 +10,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserProfileRepository extends MongoRepository<UserProfile, String> {
+public interface UserProfileRepository extends MongoRepository<UserProfile, String>, UserProfileRepositoryCustom {
 
     Optional<UserProfile> findByUserId(String userId);
 
@@ -0,0 +1,37 @@
+package com.linetranslate.bot.repository;
+
+import java.util.Map;
+
+import com.linetranslate.bot.model.UserProfile;
+
+/**
+ * 以 MongoDB 更新運算子實作的用戶資料原子操作，每個方法只需一次資料庫往返
+ */
+public interface UserProfileRepositoryCustom {
+
+    /**
+     * 更新用戶的最後互動時間並返回最新資料，用戶不存在時建立新資料
+     *
+     * @param userId 用戶 ID
+     * @return 更新後的用戶資料
+     */
+    UserProfile touchUserProfile(String userId);
+
+    /**
+     * 記錄一次翻譯：累加翻譯次數並將結果與語言加入最近列表
+     *
+     * @param userId 用戶 ID
+     * @param imageTranslation 是否為圖片翻譯
+     * @param translatedText 翻譯結果，為 null 時不更新最近翻譯
+     * @param languageCode 目標語言代碼，為 null 時不更新最近語言
+     */
+    void recordTranslation(String userId, boolean imageTranslation, String translatedText, String languageCode);
+
+    /**
+     * 更新用戶偏好設定及最後互動時間，只寫入指定的欄位，不覆蓋翻譯次數等其他欄位
+     *
+     * @param userId 用戶 ID
+     * @param preferences 欄位名稱與新值
+     */
+    void updatePreferences(String userId, Map<String, Object> preferences);
+}
@@ -0,0 +1,77 @@
+package com.linetranslate.bot.repository;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.linetranslate.bot.model.UserProfile;
+
+public class UserProfileRepositoryCustomImpl implements UserProfileRepositoryCustom {
+
+    // 最近翻譯保留的筆數
+    private static final int RECENT_TRANSLATIONS_LIMIT = 5;
+
+    // 最近語言保留的筆數，$push 無法去除重複，保留較多筆讓讀取時去重後仍有足夠的語言
+    private static final int RECENT_LANGUAGES_WINDOW = 20;
+
+    private final MongoTemplate mongoTemplate;
+
+    public UserProfileRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public UserProfile touchUserProfile(String userId) {
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("lastInteractionAt", now)
+                .setOnInsert("firstInteractionAt", now)
+                .setOnInsert("totalTranslations", 0)
+                .setOnInsert("textTranslations", 0)
+                .setOnInsert("imageTranslations", 0);
+
+        return mongoTemplate.findAndModify(byUserId(userId), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), UserProfile.class);
+    }
+
+    @Override
+    public void recordTranslation(String userId, boolean imageTranslation, String translatedText, String languageCode) {
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("lastInteractionAt", now)
+                .setOnInsert("firstInteractionAt", now)
+                .inc("totalTranslations", 1)
+                .inc(imageTranslation ? "imageTranslations" : "textTranslations", 1);
+
+        // 最新的項目放在最前面，並截斷到固定長度
+        if (translatedText != null) {
+            update.push("recentTranslations").atPosition(Update.Position.FIRST)
+                    .slice(RECENT_TRANSLATIONS_LIMIT).each(translatedText);
+        }
+        if (languageCode != null && !languageCode.trim().isEmpty()) {
+            update.push("recentLanguages").atPosition(Update.Position.FIRST)
+                    .slice(RECENT_LANGUAGES_WINDOW).each(languageCode);
+        }
+
+        mongoTemplate.upsert(byUserId(userId), update, UserProfile.class);
+    }
+
+    @Override
+    public void updatePreferences(String userId, Map<String, Object> preferences) {
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update()
+                .set("lastInteractionAt", now)
+                .setOnInsert("firstInteractionAt", now);
+        preferences.forEach(update::set);
+        mongoTemplate.upsert(byUserId(userId), update, UserProfile.class);
+    }
+
+    private static Query byUserId(String userId) {
+        return Query.query(Criteria.where("userId").is(userId));
+    }
+}
@@ -29,6 +29,9 @@ import com.linetranslate.bot.model.UserProfile;
 import com.linetranslate.bot.repository.TranslationRecordRepository;
 import com.linetranslate.bot.repository.UserProfileRepository;
 import com.linetranslate.bot.service.line.LineUserProfileService;
+import com.linetranslate.bot.service.ai.ModelPricing;
+import com.linetranslate.bot.service.ai.ProviderCircuitBreakers;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -51,6 +54,8 @@ public class AdminService {
     private final OpenAiConfig openAiConfig;
     private final GeminiConfig geminiConfig;
     private final LineUserProfileService lineUserProfileService;
+    private final List<MetricsReporter> metricsReporters;
+    private final ProviderCircuitBreakers providerCircuitBreakers;
     
     @Autowired
     public AdminService(
@@ -60,7 +65,9 @@ public class AdminService {
             AppConfig appConfig,
             OpenAiConfig openAiConfig,
             GeminiConfig geminiConfig,
-            LineUserProfileService lineUserProfileService) {
+            LineUserProfileService lineUserProfileService,
+            List<MetricsReporter> metricsReporters,
+            ProviderCircuitBreakers providerCircuitBreakers) {
         this.translationRecordRepository = translationRecordRepository;
         this.userProfileRepository = userProfileRepository;
         this.lineMessagingClient = lineMessagingClient;
@@ -68,6 +75,8 @@ public class AdminService {
         this.openAiConfig = openAiConfig;
         this.geminiConfig = geminiConfig;
         this.lineUserProfileService = lineUserProfileService;
+        this.metricsReporters = metricsReporters;
+        this.providerCircuitBreakers = providerCircuitBreakers;
         this.dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     }
 
@@ -412,6 +421,41 @@ public class AdminService {
         return statsBuilder.toString();
     }
     
+    /**
+     * 獲取各元件的效能指標
+     *
+     * @return 效能指標字符串
+     */
+    public String getPerformanceMetrics() {
+        StringBuilder metricsBuilder = new StringBuilder();
+        metricsBuilder.append("📊 效能指標\n");
+
+        for (MetricsReporter reporter : metricsReporters) {
+            metricsBuilder.append("\n【").append(reporter.getMetricsName()).append("】\n");
+            try {
+                metricsBuilder.append(reporter.getMetricsSummary()).append("\n");
+            } catch (Exception e) {
+                log.error("獲取 {} 指標失敗", reporter.getMetricsName(), e);
+                metricsBuilder.append("無法獲取指標: ").append(e.getMessage()).append("\n");
+            }
+        }
+
+        return metricsBuilder.toString();
+    }
+    
+    /**
+     * 獲取 AI 提供者的健康狀態
+     *
+     * @return 各提供者與模型的斷路器狀態
+     */
+    public String getAiProviderStatus() {
+        StringBuilder statusBuilder = new StringBuilder();
+        statusBuilder.append("🩺 AI 提供者狀態\n\n");
+        statusBuilder.append("• 默認 AI 提供者: ").append(appConfig.getDefaultAiProvider()).append("\n");
+        statusBuilder.append(providerCircuitBreakers.getStatusSummary());
+        return statusBuilder.toString();
+    }
+
     /**
      * 獲取系統配置信息
      *
@@ -851,6 +895,20 @@ private String calculateApiUsageStats(List<TranslationRecord> records, String ti
     statsBuilder.append("總費用: $").append(String.format("%.2f", totalCost)).append("\n");
     statsBuilder.append("平均每次請求費用: $").append(String.format("%.4f", totalCost / totalRequests)).append("\n");
     
+    // 模型路由的節省：以未經路由時的模型重新估算費用
+    List<TranslationRecord> routedRecords = records.stream()
+            .filter(record -> record.getBaselineModel() != null && !record.getBaselineModel().equals(record.getModelName()))
+            .collect(Collectors.toList());
+    if (!routedRecords.isEmpty()) {
+        double routedCost = routedRecords.stream().mapToDouble(this::calculateRecordCost).sum();
+        double baselineCost = routedRecords.stream()
+                .mapToDouble(record -> calculateRecordCost(record, record.getBaselineModel()))
+                .sum();
+        statsBuilder.append("\n【模型路由】\n");
+        statsBuilder.append("改用其他模型: ").append(routedRecords.size()).append(" 次\n");
+        statsBuilder.append("估算節省: $").append(String.format("%.4f", baselineCost - routedCost)).append("\n");
+    }
+    
     return statsBuilder.toString();
 }
 
@@ -861,8 +919,18 @@ private String calculateApiUsageStats(List<TranslationRecord> records, String ti
  * @return 該記錄的費用
  */
 private double calculateRecordCost(TranslationRecord record) {
+    return calculateRecordCost(record, record.getModelName());
+}
+
+/**
+ * 以指定模型的價格計算單條翻譯記錄的費用
+ *
+ * @param record 翻譯記錄
+ * @param model 模型名稱
+ * @return 該記錄的費用
+ */
+private double calculateRecordCost(TranslationRecord record, String model) {
     String provider = record.getAiProvider();
-    String model = record.getModelName();
     boolean isImageTranslation = record.isImageTranslation();
     
     // 估算輸入和輸出的令牌數
@@ -884,74 +952,13 @@ private double calculateRecordCost(TranslationRecord record) {
     
     // 根據不同的提供者和模型計算費用
     if ("openai".equals(provider)) {
-        // OpenAI 的費用計算 (價格單位: $/1K tokens)
-        switch (model) {
-            // 最新模型價格
-            case "gpt-4.1":
-            case "gpt-4.1-2025-04-14":
-                cost += (inputTokens / 1000.0) * 2.00 + (outputTokens / 1000.0) * 8.00;
-                break;
-            case "gpt-4.1-mini":
-            case "gpt-4.1-mini-2025-04-14":
-                cost += (inputTokens / 1000.0) * 0.40 + (outputTokens / 1000.0) * 1.60;
-                break;
-            case "gpt-4.1-nano":
-            case "gpt-4.1-nano-2025-04-14":
-                cost += (inputTokens / 1000.0) * 0.10 + (outputTokens / 1000.0) * 0.40;
-                break;
-            case "gpt-4.5-preview":
-            case "gpt-4.5-preview-2025-02-27":
-                cost += (inputTokens / 1000.0) * 75.00 + (outputTokens / 1000.0) * 150.00;
-                break;
-            case "gpt-4o":
-            case "gpt-4o-2024-08-06":
-                cost += (inputTokens / 1000.0) * 2.50 + (outputTokens / 1000.0) * 10.00;
-                break;
-            case "gpt-4o-mini":
-            case "gpt-4o-mini-2024-07-18":
-                cost += (inputTokens / 1000.0) * 0.15 + (outputTokens / 1000.0) * 0.60;
-                break;
-            case "o1":
-            case "o1-2024-12-17":
-                cost += (inputTokens / 1000.0) * 15.00 + (outputTokens / 1000.0) * 60.00;
-                break;
-            case "o1-pro":
-            case "o1-pro-2025-03-19":
-                cost += (inputTokens / 1000.0) * 150.00 + (outputTokens / 1000.0) * 600.00;
-                break;
-            case "o3":
-            case "o3-2025-04-16":
-                cost += (inputTokens / 1000.0) * 10.00 + (outputTokens / 1000.0) * 40.00;
-                break;
-            case "o4-mini":
-            case "o4-mini-2025-04-16":
-                cost += (inputTokens / 1000.0) * 1.10 + (outputTokens / 1000.0) * 4.40;
-                break;
-            case "o3-mini":
-            case "o3-mini-2025-01-31":
-                cost += (inputTokens / 1000.0) * 1.10 + (outputTokens / 1000.0) * 4.40;
-                break;
-            case "o1-mini":
-            case "o1-mini-2024-09-12":
-                cost += (inputTokens / 1000.0) * 1.10 + (outputTokens / 1000.0) * 4.40;
-                break;
-            // 舊模型
-            case "gpt-4":
-                cost += (inputTokens / 1000.0) * 0.03 + (outputTokens / 1000.0) * 0.06;
-                break;
-            case "gpt-3.5-turbo":
-                cost += (inputTokens / 1000.0) * 0.0005 + (outputTokens / 1000.0) * 0.0015;
-                break;
-            default:
-                // 默認使用 gpt-4o 的費用
-                cost += (inputTokens / 1000.0) * 2.50 + (outputTokens / 1000.0) * 10.00;
-                break;
-        }
+        // OpenAI 的費用計算，價格表見 ModelPricing
+        cost += ModelPricing.estimateCost(provider, model, inputTokens, outputTokens);
         
         // 如果是圖片翻譯，加上圖片計算費用
         if (isImageTranslation) {
-            // 使用 gpt-image-1 的價格: $5.00/1K tokens
-            cost += 5.00 / 1000.0 * 500; // 估算每張圖片約 500 tokens
+            // 使用 gpt-image-1 的價格: $5.00/1M tokens
+            cost += 5.00 / 1_000_000.0 * 500; // 估算每張圖片約 500 tokens
         }
     } else if ("gemini".equals(provider)) {
         // Gemini 的費用計算 (Gemini 目前免費)
@@ -0,0 +1,187 @@
+package com.linetranslate.bot.service.ai;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * 所有 AI 提供者共用的 HTTP 傳輸層
+ * 各提供者的 OkHttpClient 由同一個基礎客戶端衍生，共用連線池與 Dispatcher，只有逾時設定不同。
+ * 回應的 gzip 解壓由 OkHttp 自動處理
+ */
+@Component
+@Slf4j
+public class AiHttpTransport implements MetricsReporter {
+
+    private final OkHttpClient baseClient;
+    private final Map<String, OkHttpClient> providerClients = new ConcurrentHashMap<>();
+    private final Map<String, TimeoutProfile> timeoutProfiles;
+    private final ProviderRateLimiter rateLimiter;
+    private final ModelSettingsRegistry modelSettings;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder http2Acquired = new LongAdder();
+    private final LongAdder callsFailed = new LongAdder();
+    private final TransportEventListener transportEventListener = new TransportEventListener();
+
+    @Autowired
+    public AiHttpTransport(
+            @Value("${app.ai.http.max-requests:128}") int maxRequests,
+            @Value("${app.ai.http.max-requests-per-host:32}") int maxRequestsPerHost,
+            @Value("${app.ai.http.max-idle-connections:20}") int maxIdleConnections,
+            @Value("${app.ai.http.keep-alive:5m}") Duration keepAlive,
+            @Value("${app.ai.http.http2-enabled:true}") boolean http2Enabled,
+            @Value("${app.ai.http.openai.connect-timeout:10s}") Duration openAiConnectTimeout,
+            @Value("${app.ai.http.openai.read-timeout:60s}") Duration openAiReadTimeout,
+            @Value("${app.ai.http.openai.write-timeout:30s}") Duration openAiWriteTimeout,
+            @Value("${app.ai.http.gemini.connect-timeout:10s}") Duration geminiConnectTimeout,
+            @Value("${app.ai.http.gemini.read-timeout:30s}") Duration geminiReadTimeout,
+            @Value("${app.ai.http.gemini.write-timeout:30s}") Duration geminiWriteTimeout,
+            ProviderRateLimiter rateLimiter,
+            ModelSettingsRegistry modelSettings) {
+        this.rateLimiter = rateLimiter;
+        this.modelSettings = modelSettings;
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        // HTTP/2 需要 TLS ALPN 協商，伺服器不支援時自動退回 HTTP/1.1
+        List<Protocol> protocols = http2Enabled
+                ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : List.of(Protocol.HTTP_1_1);
+
+        this.baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(protocols)
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(call -> {
+                    // 在建立請求的執行緒中呼叫，速率限制依此把排隊時間歸給發出請求的翻譯
+                    rateLimiter.onCallCreated(call);
+                    return transportEventListener;
+                })
+                .build();
+
+        this.timeoutProfiles = Map.of(
+                "openai", new TimeoutProfile(openAiConnectTimeout, openAiReadTimeout, openAiWriteTimeout),
+                "gemini", new TimeoutProfile(geminiConnectTimeout, geminiReadTimeout, geminiWriteTimeout));
+
+        log.info("AI HTTP 傳輸層初始化完成，最大請求: {}, 每個主機: {}, 閒置連線: {}, keep-alive: {}, HTTP/2: {}",
+                maxRequests, maxRequestsPerHost, maxIdleConnections, keepAlive, http2Enabled);
+    }
+
+    /**
+     * 取得指定提供者的 HTTP 客戶端，共用連線池與 Dispatcher，使用該提供者的逾時設定與速率限制；
+     * 請求的模型有設定讀取逾時時，以模型的設定為準
+     *
+     * @param provider AI 提供者名稱，例如 openai 或 gemini
+     * @return HTTP 客戶端
+     */
+    public OkHttpClient clientFor(String provider) {
+        return providerClients.computeIfAbsent(provider, key -> {
+            OkHttpClient.Builder builder = baseClient.newBuilder();
+            if (modelSettings.hasReadTimeouts()) {
+                builder.addInterceptor(modelTimeoutInterceptor());
+            }
+            builder.addInterceptor(rateLimiter.interceptorFor(key));
+            TimeoutProfile profile = timeoutProfiles.get(key);
+            if (profile != null) {
+                builder.connectTimeout(profile.connect())
+                        .readTimeout(profile.read())
+                        .writeTimeout(profile.write());
+            }
+            return builder.build();
+        });
+    }
+
+    private Interceptor modelTimeoutInterceptor() {
+        return chain -> {
+            Duration readTimeout = modelSettings.get(ProviderRateLimiter.extractModel(chain.request())).readTimeout();
+            if (readTimeout == null) {
+                return chain.proceed(chain.request());
+            }
+            return chain.withReadTimeout((int) readTimeout.toMillis(), TimeUnit.MILLISECONDS).proceed(chain.request());
+        };
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "AI HTTP 連線";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        Dispatcher dispatcher = baseClient.dispatcher();
+        ConnectionPool pool = baseClient.connectionPool();
+        long acquired = connectionsAcquired.sum();
+        long opened = connectionsOpened.sum();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("請求: 執行中 ").append(dispatcher.runningCallsCount())
+          .append(", 排隊 ").append(dispatcher.queuedCallsCount())
+          .append(" (上限 ").append(dispatcher.getMaxRequests())
+          .append(", 每個主機 ").append(dispatcher.getMaxRequestsPerHost()).append(")\n");
+        sb.append("連線池: 總數 ").append(pool.connectionCount())
+          .append(", 閒置 ").append(pool.idleConnectionCount())
+          .append(", 使用中 ").append(pool.connectionCount() - pool.idleConnectionCount()).append("\n");
+        sb.append("取得連線: ").append(acquired)
+          .append(", 新建: ").append(opened)
+          .append(", HTTP/2: ").append(http2Acquired.sum())
+          .append(", 失敗請求: ").append(callsFailed.sum());
+        if (acquired > 0) {
+            sb.append(String.format("\n連線重用率: %.1f%%", Math.max(0, acquired - opened) * 100.0 / acquired));
+        }
+        return sb.toString();
+    }
+
+    private record TimeoutProfile(Duration connect, Duration read, Duration write) {
+    }
+
+    /**
+     * 統計連線建立與重用，所有衍生客戶端共用同一個實例
+     */
+    private class TransportEventListener extends EventListener {
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectionsOpened.increment();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.increment();
+            if (connection.protocol() == Protocol.HTTP_2) {
+                http2Acquired.increment();
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            callsFailed.increment();
+        }
+    }
+}
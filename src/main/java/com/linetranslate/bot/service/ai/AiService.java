@@ -1,10 +1,97 @@
 package com.linetranslate.bot.service.ai;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * AI 服務介面，定義所有 AI 提供者必須實現的方法
+ * 每個呼叫都可以指定模型；未指定模型的版本使用 getModelName() 返回的模型
  */
 public interface AiService {
 
+    /** 輸出達到 token 上限被截斷時，錯誤訊息中的原因；截斷的結果以錯誤訊息返回，不會被快取或記錄為成功 */
+    String TRUNCATED_REASON = "輸出達到 token 上限，結果不完整";
+
+    /**
+     * 翻譯文本含有 {{n}} 佔位符時附加在提示中的說明
+     *
+     * @param text 要翻譯的文本
+     * @return 提示說明，沒有佔位符時返回空字串
+     */
+    static String placeholderInstruction(String text) {
+        return text != null && text.contains("{{")
+                ? "文本中的 {{0}}、{{1}} 等佔位符必須原樣保留，不要翻譯、改寫或刪除。"
+                : "";
+    }
+
+    /**
+     * 實際回應請求的提供者與模型
+     * 對沖請求由次要提供者勝出時，與 getProviderName()、getModelName() 不同
+     *
+     * @param provider 提供者名稱
+     * @param model 模型名稱
+     */
+    record ServedBy(String provider, String model) {
+    }
+
+    /**
+     * 批次翻譯的任務說明，要求模型以相同數量與順序的 JSON 字串陣列返回
+     *
+     * @param textsJson 要翻譯的文本，JSON 字串陣列
+     * @param targetLanguage 目標語言
+     * @return 任務說明
+     */
+    static String batchTranslationInstruction(String textsJson, String targetLanguage) {
+        return "請將 JSON 陣列中的每一段文本分別翻譯成" + targetLanguage
+                + "。只返回一個 JSON 字串陣列，元素數量與順序必須與輸入相同，不要添加任何解釋或額外信息。"
+                + placeholderInstruction(textsJson);
+    }
+
+    /**
+     * 合併檢測與翻譯的任務說明，要求模型依規則表選擇目標語言並返回 JSON 物件
+     *
+     * @param text 要翻譯的文本
+     * @param targetRules 源語言代碼對應的目標語言代碼
+     * @param otherTarget 規則表未列出的源語言使用的目標語言
+     * @return 任務說明
+     */
+    static String detectAndTranslateInstruction(String text, Map<String, String> targetRules, String otherTarget) {
+        StringBuilder rules = new StringBuilder();
+        targetRules.forEach((source, target) -> rules.append(source).append(" → ").append(target).append("；"));
+        rules.append("其他語言 → ").append(otherTarget);
+
+        return "請先檢測以下文本的語言，再依照目標語言規則翻譯。"
+                + "規則（源語言 → 目標語言，zh 開頭的代碼都視為中文）：" + rules + "。\n"
+                + "只返回一個 JSON 物件，格式為 {\"sourceLanguage\": \"源語言的 ISO 639-1 代碼\", "
+                + "\"targetLanguage\": \"依規則選擇的目標語言代碼\", \"translation\": \"翻譯結果\"}，"
+                + "不要添加任何解釋或其他內容。" + placeholderInstruction(text);
+    }
+
+    /**
+     * 合併檢測與翻譯時譯文可能最長的目標語言，用於決定輸出 token 上限
+     *
+     * @param targetRules 源語言代碼對應的目標語言代碼
+     * @param otherTarget 規則表未列出的源語言使用的目標語言
+     * @return 規則中任一目標語言為高密度文字時返回該語言，否則返回 otherTarget
+     */
+    static String widestTargetLanguage(Map<String, String> targetRules, String otherTarget) {
+        return targetRules.values().stream()
+                .filter(TokenEstimator::isDenseScript)
+                .findFirst()
+                .orElse(otherTarget);
+    }
+
+    /**
+     * 使用指定模型進行文本翻譯
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @return 翻譯結果
+     */
+    String translateText(String text, String targetLanguage, String model);
+
     /**
      * 使用 AI 進行文本翻譯
      *
@@ -12,7 +99,130 @@ public interface AiService {
      * @param targetLanguage 目標語言
      * @return 翻譯結果
      */
-    String translateText(String text, String targetLanguage);
+    default String translateText(String text, String targetLanguage) {
+        return translateText(text, targetLanguage, getModelName());
+    }
+
+    /**
+     * 使用指定模型進行文本翻譯，結果由其他提供者產生時通知呼叫者
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @param onServedByOther 結果不是由本服務的提供者與模型產生時，在返回前呼叫，可為 null
+     * @return 翻譯結果
+     */
+    default String translateText(String text, String targetLanguage, String model, Consumer<ServedBy> onServedByOther) {
+        return translateText(text, targetLanguage, model);
+    }
+
+    /**
+     * 以串流方式進行文本翻譯，模型每輸出一段文字就通知 onDelta
+     * 不支援串流的提供者會在完成後一次回傳整段結果
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @param onDelta 收到文字片段時的回呼，可為 null
+     * @return 完整的翻譯結果
+     */
+    default String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
+        String result = translateText(text, targetLanguage, model);
+        if (onDelta != null && result != null) {
+            onDelta.accept(result);
+        }
+        return result;
+    }
+
+    /**
+     * 以串流方式進行文本翻譯，結果由其他提供者產生時通知呼叫者
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @param onDelta 收到文字片段時的回呼，可為 null
+     * @param onServedByOther 結果不是由本服務的提供者與模型產生時，在返回前呼叫，可為 null
+     * @return 完整的翻譯結果
+     */
+    default String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta,
+                                          Consumer<ServedBy> onServedByOther) {
+        return translateTextStreaming(text, targetLanguage, model, onDelta);
+    }
+
+    /**
+     * 以預設模型串流翻譯
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param onDelta 收到文字片段時的回呼，可為 null
+     * @return 完整的翻譯結果
+     */
+    default String translateTextStreaming(String text, String targetLanguage, Consumer<String> onDelta) {
+        return translateTextStreaming(text, targetLanguage, getModelName(), onDelta);
+    }
+
+    /**
+     * 非阻塞的文本翻譯，等待回應期間不佔用呼叫者執行緒
+     * 失敗時與 translateText 相同，以錯誤訊息正常完成；取消 Future 會中止 HTTP 請求。
+     * 未實作非同步呼叫的提供者會在呼叫者執行緒中同步執行
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @return 完成時包含翻譯結果
+     */
+    default CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+        return CompletableFuture.completedFuture(translateText(text, targetLanguage, model));
+    }
+
+    /**
+     * 非阻塞的文本翻譯，結果由其他提供者產生時通知呼叫者
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @param onServedByOther 結果不是由本服務的提供者與模型產生時，在 Future 完成前呼叫，可為 null
+     * @return 完成時包含翻譯結果
+     */
+    default CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model,
+                                                         Consumer<ServedBy> onServedByOther) {
+        return translateTextAsync(text, targetLanguage, model);
+    }
+
+    /**
+     * 以預設模型進行非阻塞的文本翻譯
+     *
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @return 完成時包含翻譯結果
+     */
+    default CompletableFuture<String> translateTextAsync(String text, String targetLanguage) {
+        return translateTextAsync(text, targetLanguage, getModelName());
+    }
+
+    /**
+     * 以一次呼叫翻譯多段文本，使用與單筆翻譯相同的溫度、輸出上限等翻譯設定
+     * 模型返回的 JSON 字串陣列由呼叫者解析；失敗時以錯誤訊息正常完成。
+     * 未實作的提供者以文本生成送出相同的任務說明
+     *
+     * @param textsJson 要翻譯的文本，JSON 字串陣列
+     * @param targetLanguage 目標語言
+     * @param model 模型名稱
+     * @return 完成時包含模型返回的文本
+     */
+    default CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+        return generateTextAsync(batchTranslationInstruction(textsJson, targetLanguage) + "\n\n" + textsJson, model);
+    }
+
+    /**
+     * 使用指定模型處理圖片中的文字
+     *
+     * @param prompt 描述任務的提示
+     * @param imageUrl 圖片 URL
+     * @param model 模型名稱
+     * @return 處理結果
+     */
+    String processImage(String prompt, String imageUrl, String model);
 
     /**
      * 使用 AI 處理圖片中的文字
@@ -21,7 +231,32 @@ public interface AiService {
      * @param imageUrl 圖片 URL
      * @return 處理結果
      */
-    String processImage(String prompt, String imageUrl);
+    default String processImage(String prompt, String imageUrl) {
+        return processImage(prompt, imageUrl, getModelName());
+    }
+
+    /**
+     * 非阻塞的圖片文字處理
+     *
+     * @param prompt 描述任務的提示
+     * @param imageUrl 圖片 URL
+     * @param model 模型名稱
+     * @return 完成時包含處理結果
+     */
+    default CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+        return CompletableFuture.completedFuture(processImage(prompt, imageUrl, model));
+    }
+
+    /**
+     * 以預設模型進行非阻塞的圖片文字處理
+     *
+     * @param prompt 描述任務的提示
+     * @param imageUrl 圖片 URL
+     * @return 完成時包含處理結果
+     */
+    default CompletableFuture<String> processImageAsync(String prompt, String imageUrl) {
+        return processImageAsync(prompt, imageUrl, getModelName());
+    }
 
     /**
      * 獲取 AI 提供者的名稱
@@ -31,17 +266,79 @@ public interface AiService {
     String getProviderName();
 
     /**
-     * 獲取使用的模型名稱
+     * 獲取未指定模型時使用的模型名稱
      *
      * @return 模型名稱
      */
     String getModelName();
-    
+
+    /**
+     * 使用指定模型生成文本
+     *
+     * @param prompt 提示詞
+     * @param model 模型名稱
+     * @return 生成的文本
+     */
+    String generateText(String prompt, String model);
+
     /**
      * 使用 AI 生成文本
      *
      * @param prompt 提示詞
      * @return 生成的文本
      */
-    String generateText(String prompt);
-}
\ No newline at end of file
+    default String generateText(String prompt) {
+        return generateText(prompt, getModelName());
+    }
+
+    /**
+     * 非阻塞的文本生成
+     *
+     * @param prompt 提示詞
+     * @param model 模型名稱
+     * @return 完成時包含生成的文本
+     */
+    default CompletableFuture<String> generateTextAsync(String prompt, String model) {
+        return CompletableFuture.completedFuture(generateText(prompt, model));
+    }
+
+    /**
+     * 以預設模型進行非阻塞的文本生成
+     *
+     * @param prompt 提示詞
+     * @return 完成時包含生成的文本
+     */
+    default CompletableFuture<String> generateTextAsync(String prompt) {
+        return generateTextAsync(prompt, getModelName());
+    }
+
+    /**
+     * 以一次呼叫同時檢測源語言並翻譯，省去獨立的 AI 語言檢測請求
+     * 模型依規則表自行決定目標語言，並返回 JSON 物件
+     * {"sourceLanguage": ..., "targetLanguage": ..., "translation": ...}；
+     * 回應格式由呼叫者驗證，失敗時以錯誤訊息正常完成。
+     * 提供者應使用翻譯的溫度與輸出上限；未實作的提供者以文本生成送出相同的任務說明
+     *
+     * @param text 要翻譯的文本
+     * @param targetRules 源語言代碼對應的目標語言代碼
+     * @param otherTarget 規則表未列出的源語言使用的目標語言
+     * @param model 模型名稱
+     * @return 完成時包含模型返回的 JSON 文本
+     */
+    default CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                              String otherTarget, String model) {
+        return generateTextAsync(detectAndTranslateInstruction(text, targetRules, otherTarget) + "\n\n" + text, model);
+    }
+
+    /**
+     * 以預設模型同時檢測源語言並翻譯
+     *
+     * @param text 要翻譯的文本
+     * @param targetRules 源語言代碼對應的目標語言代碼
+     * @param otherTarget 規則表未列出的源語言使用的目標語言
+     * @return 完成時包含模型返回的 JSON 文本
+     */
+    default CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules, String otherTarget) {
+        return detectAndTranslateAsync(text, targetRules, otherTarget, getModelName());
+    }
+}
@@ -1,10 +1,15 @@
 package com.linetranslate.bot.service.ai;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.linetranslate.bot.model.UserProfile;
+import com.linetranslate.bot.service.line.UserPreferences;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,14 +23,20 @@ public class AiServiceFactory {
     private final OpenAiService openAiService;
     private final GeminiService geminiService;
     private final String defaultProvider;
+    private final HedgingPolicy hedgingPolicy;
+    private final ProviderCircuitBreakers circuitBreakers;
 
     @Autowired
     public AiServiceFactory(
             @Autowired(required = false) OpenAiService openAiService,
             @Autowired(required = false) GeminiService geminiService,
-            @Value("${app.ai.default-provider:openai}") String defaultProvider) {
+            @Value("${app.ai.default-provider:openai}") String defaultProvider,
+            HedgingPolicy hedgingPolicy,
+            ProviderCircuitBreakers circuitBreakers) {
         this.openAiService = openAiService;
         this.geminiService = geminiService;
+        this.hedgingPolicy = hedgingPolicy;
+        this.circuitBreakers = circuitBreakers;
 
         // 使用臨時變量存儲最終要使用的提供者
         String effectiveProvider = defaultProvider;
@@ -65,14 +76,14 @@ public class AiServiceFactory {
         // 嘗試獲取請求的服務
         AiService requestedService = getRequestedService(actualProvider);
         if (requestedService != null) {
-            return requestedService;
+            return route(requestedService, actualProvider);
         }
 
         // 如果請求的服務不可用，嘗試使用其他服務
         AiService fallbackService = getFallbackService(actualProvider);
         if (fallbackService != null) {
             log.warn("請求的 AI 服務 {} 不可用，使用 {} 作為替代", actualProvider, fallbackService.getProviderName());
-            return fallbackService;
+            return circuitBreakers.protect(fallbackService);
         }
 
         // 如果所有服務都不可用，返回一個臨時服務
@@ -87,30 +98,74 @@ public class AiServiceFactory {
      * @return 相應的 AI 服務實例，如果所有服務都不可用，返回一個臨時服務
      */
     public AiService getService(UserProfile userProfile) {
+        return getService(UserPreferences.from(userProfile));
+    }
+
+    /**
+     * 根據用戶偏好設定獲取 AI 服務，呼叫時使用用戶選擇的模型
+     *
+     * @param preferences 用戶偏好設定
+     * @return 相應的 AI 服務實例，如果所有服務都不可用，返回一個臨時服務
+     */
+    public AiService getService(UserPreferences preferences) {
         // 獲取用戶偏好的提供者
-        String provider = userProfile.getPreferredAiProvider();
+        String provider = preferences.getPreferredAiProvider();
         String actualProvider = (provider != null && !provider.isEmpty()) ? provider : defaultProvider;
-        
-        // 根據提供者獲取相應的服務
-        AiService service;
-        if ("openai".equals(actualProvider)) {
-            service = openAiService;
-            if (service != null && service instanceof OpenAiService) {
-                // 使用用戶偏好的 OpenAI 模型
-                return new UserPreferredAiService((OpenAiService) service, userProfile);
-            }
-        } else if ("gemini".equals(actualProvider)) {
-            service = geminiService;
-            if (service != null && service instanceof GeminiService) {
-                // 使用用戶偏好的 Gemini 模型
-                return new UserPreferredAiService((GeminiService) service, userProfile);
-            }
+
+        // 根據提供者獲取相應的服務，並使用用戶偏好的模型
+        if ("openai".equals(actualProvider) && openAiService != null) {
+            String model = openAiService.resolveModel(preferences.getOpenaiPreferredModel());
+            return route(withModel(openAiService, model), actualProvider);
+        } else if ("gemini".equals(actualProvider) && geminiService != null) {
+            String model = geminiService.resolveModel(preferences.getGeminiPreferredModel());
+            return route(withModel(geminiService, model), actualProvider);
         }
-        
+
         // 如果無法獲取用戶偏好的服務，則使用預設方式獲取服務
         return getService(actualProvider);
     }
 
+    /**
+     * 獲取指定提供者與模型的 AI 服務，例如模型路由選出的模型
+     *
+     * @param provider 提供者名稱，如果為 null 則使用預設提供者
+     * @param model 模型名稱，如果為 null 則使用該提供者的預設模型
+     * @return 相應的 AI 服務實例，如果所有服務都不可用，返回一個臨時服務
+     */
+    public AiService getService(String provider, String model) {
+        AiService requestedService = provider != null ? getRequestedService(provider) : null;
+        if (requestedService == null || model == null) {
+            return getService(provider);
+        }
+        return route(withModel(requestedService, model), provider);
+    }
+
+    private static AiService withModel(AiService service, String model) {
+        return model.equals(service.getModelName()) ? service : new UserPreferredAiService(service, model);
+    }
+
+    /**
+     * 依斷路器狀態決定實際使用的服務
+     * 主要提供者的斷路器開啟而另一個提供者正常時改用另一個提供者；
+     * 啟用對沖請求且另一個提供者正常時，包裝成對沖服務
+     */
+    private AiService route(AiService primaryService, String provider) {
+        AiService secondaryService = getFallbackService(provider);
+        boolean secondaryAvailable = secondaryService != null && circuitBreakers.isAvailable(secondaryService);
+
+        if (!circuitBreakers.isAvailable(primaryService) && secondaryAvailable) {
+            log.warn("AI 服務 {} ({}) 斷路器開啟，改用 {}", primaryService.getProviderName(),
+                    primaryService.getModelName(), secondaryService.getProviderName());
+            return circuitBreakers.protect(secondaryService);
+        }
+
+        AiService protectedPrimary = circuitBreakers.protect(primaryService);
+        if (!hedgingPolicy.isEnabled() || !secondaryAvailable) {
+            return protectedPrimary;
+        }
+        return new HedgedAiService(protectedPrimary, circuitBreakers.protect(secondaryService), hedgingPolicy);
+    }
+
     /**
      * 獲取請求的服務
      */
@@ -139,30 +194,51 @@ public class AiServiceFactory {
 
     /**
      * 用戶偏好 AI 服務實現
-     * 包裝現有的 AI 服務，使用用戶偏好的模型
+     * 包裝現有的 AI 服務，未指定模型的呼叫改用用戶偏好的模型
      */
     private static class UserPreferredAiService implements AiService {
         private final AiService baseService;
         private final String modelName;
-        
-        public UserPreferredAiService(OpenAiService openAiService, UserProfile userProfile) {
-            this.baseService = openAiService;
-            this.modelName = openAiService.getModelName(userProfile);
+
+        UserPreferredAiService(AiService baseService, String modelName) {
+            this.baseService = baseService;
+            this.modelName = modelName;
+        }
+
+        @Override
+        public String translateText(String text, String targetLanguage, String model) {
+            return baseService.translateText(text, targetLanguage, model);
         }
-        
-        public UserPreferredAiService(GeminiService geminiService, UserProfile userProfile) {
-            this.baseService = geminiService;
-            this.modelName = geminiService.getModelName(userProfile);
+
+        @Override
+        public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
+            return baseService.translateTextStreaming(text, targetLanguage, model, onDelta);
         }
-        
+
         @Override
-        public String translateText(String text, String targetLanguage) {
-            return baseService.translateText(text, targetLanguage);
+        public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+            return baseService.translateTextAsync(text, targetLanguage, model);
         }
 
         @Override
-        public String processImage(String prompt, String imageUrl) {
-            return baseService.processImage(prompt, imageUrl);
+        public CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                                 String otherTarget, String model) {
+            return baseService.detectAndTranslateAsync(text, targetRules, otherTarget, model);
+        }
+
+        @Override
+        public CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+            return baseService.translateBatchAsync(textsJson, targetLanguage, model);
+        }
+
+        @Override
+        public String processImage(String prompt, String imageUrl, String model) {
+            return baseService.processImage(prompt, imageUrl, model);
+        }
+
+        @Override
+        public CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+            return baseService.processImageAsync(prompt, imageUrl, model);
         }
 
         @Override
@@ -176,8 +252,13 @@ public class AiServiceFactory {
         }
 
         @Override
-        public String generateText(String prompt) {
-            return baseService.generateText(prompt);
+        public String generateText(String prompt, String model) {
+            return baseService.generateText(prompt, model);
+        }
+
+        @Override
+        public CompletableFuture<String> generateTextAsync(String prompt, String model) {
+            return baseService.generateTextAsync(prompt, model);
         }
     }
     
@@ -186,12 +267,12 @@ public class AiServiceFactory {
      */
     private static class FallbackAiService implements AiService {
         @Override
-        public String translateText(String text, String targetLanguage) {
+        public String translateText(String text, String targetLanguage, String model) {
             return "無法翻譯：所有 AI 服務都未正確配置。請檢查環境變數設置。";
         }
 
         @Override
-        public String processImage(String prompt, String imageUrl) {
+        public String processImage(String prompt, String imageUrl, String model) {
             return "無法處理圖片：所有 AI 服務都未正確配置。請檢查環境變數設置。";
         }
 
@@ -206,7 +287,7 @@ public class AiServiceFactory {
         }
 
         @Override
-        public String generateText(String prompt) {
+        public String generateText(String prompt, String model) {
             return "無法生成文本：所有 AI 服務都未正確配置。請檢查環境變數設置。";
         }
     }
@@ -0,0 +1,271 @@
+package com.linetranslate.bot.service.ai;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 以最近 N 次呼叫為滑動視窗的斷路器
+ * 失敗率達到門檻時開啟，開啟期間不接受請求；經過 open-duration 後進入半開狀態，
+ * 允許少量探測請求，探測全部成功則關閉，任何一次失敗則重新開啟
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    /** AI 服務回傳錯誤訊息時使用的前綴 */
+    private static final List<String> FAILURE_PREFIXES = List.of(
+            "翻譯失敗", "圖片處理失敗", "文本生成失敗", "處理失敗", "生成失敗");
+
+    public enum State {
+        CLOSED("正常"),
+        OPEN("開啟"),
+        HALF_OPEN("半開");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 呼叫結果的分類
+     */
+    public enum Outcome {
+        SUCCESS,
+        ERROR,
+        TIMEOUT,
+        RATE_LIMITED,
+        SERVER_ERROR,
+        /** 本地速率限制排隊逾時，請求沒有送到提供者 */
+        QUEUE_TIMEOUT;
+
+        boolean isFailure() {
+            return this != SUCCESS;
+        }
+    }
+
+    private final String name;
+    private final Outcome[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+
+    private State state = State.CLOSED;
+    private int windowCount;
+    private int nextIndex;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private final long[] outcomeCounts = new long[Outcome.values().length];
+    private long rejectedCount;
+    private long openedCount;
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   Duration openDuration, int halfOpenProbes) {
+        this.name = name;
+        this.window = new Outcome[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 是否可以接收流量，不佔用半開狀態的探測名額，用於路由判斷
+     */
+    public synchronized boolean isAvailable() {
+        return switch (currentState()) {
+            case CLOSED -> true;
+            case HALF_OPEN -> probesInFlight < halfOpenProbes;
+            case OPEN -> false;
+        };
+    }
+
+    /**
+     * 實際發出請求前取得許可，半開狀態下會佔用一個探測名額，取得後必須呼叫 record 或 release
+     *
+     * @return 是否允許發出請求
+     */
+    public synchronized boolean tryAcquire() {
+        switch (currentState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probesInFlight < halfOpenProbes) {
+                    probesInFlight++;
+                    return true;
+                }
+                rejectedCount++;
+                return false;
+            default:
+                rejectedCount++;
+                return false;
+        }
+    }
+
+    /**
+     * 記錄一次呼叫結果
+     */
+    public synchronized void record(Outcome outcome) {
+        outcomeCounts[outcome.ordinal()]++;
+
+        if (outcome == Outcome.QUEUE_TIMEOUT) {
+            // 請求沒有送到提供者，不代表提供者的健康狀態，只歸還探測名額
+            release();
+            return;
+        }
+
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (outcome.isFailure()) {
+                open();
+            } else if (++probeSuccesses >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+
+        if (state == State.OPEN) {
+            // 開啟前已發出的請求，結果不影響狀態
+            return;
+        }
+
+        window[nextIndex] = outcome;
+        nextIndex = (nextIndex + 1) % window.length;
+        windowCount = Math.min(windowCount + 1, window.length);
+
+        if (windowCount >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 取得許可後沒有產生結果（例如請求被取消），歸還探測名額
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+        }
+    }
+
+    public synchronized State getState() {
+        return currentState();
+    }
+
+    /**
+     * 滑動視窗內的失敗率
+     */
+    public synchronized double getFailureRate() {
+        if (windowCount == 0) {
+            return 0.0;
+        }
+        int failures = 0;
+        for (int i = 0; i < windowCount; i++) {
+            if (window[i].isFailure()) {
+                failures++;
+            }
+        }
+        return (double) failures / windowCount;
+    }
+
+    /**
+     * 狀態、失敗率與各類結果的累計次數
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(currentState().getDisplayName())
+          .append(String.format(", 失敗率 %.1f%% (%d 次)", getFailureRate() * 100, windowCount))
+          .append(", 成功 ").append(outcomeCounts[Outcome.SUCCESS.ordinal()])
+          .append(", 錯誤 ").append(outcomeCounts[Outcome.ERROR.ordinal()])
+          .append(", 逾時 ").append(outcomeCounts[Outcome.TIMEOUT.ordinal()])
+          .append(", 429 ").append(outcomeCounts[Outcome.RATE_LIMITED.ordinal()])
+          .append(", 5xx ").append(outcomeCounts[Outcome.SERVER_ERROR.ordinal()])
+          .append(", 排隊逾時 ").append(outcomeCounts[Outcome.QUEUE_TIMEOUT.ordinal()])
+          .append(", 開啟 ").append(openedCount).append(" 次")
+          .append(", 拒絕 ").append(rejectedCount);
+        if (state == State.OPEN) {
+            long remainingMs = (openDurationNanos - (System.nanoTime() - openedAtNanos)) / 1_000_000;
+            sb.append(", ").append(Math.max(0, remainingMs / 1000)).append(" 秒後探測");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 依 AI 服務回傳的文字分類呼叫結果，服務以「...失敗: 原因」格式回傳錯誤
+     */
+    static Outcome classify(String result) {
+        if (result == null || result.isBlank()) {
+            return Outcome.ERROR;
+        }
+        if (!isFailureMessage(result)) {
+            return Outcome.SUCCESS;
+        }
+
+        if (result.contains(ProviderRateLimiter.QUEUE_TIMEOUT_MESSAGE)) {
+            return Outcome.QUEUE_TIMEOUT;
+        }
+        if (result.contains(AiService.TRUNCATED_REASON)) {
+            // 提供者正常回應，只是輸出超過上限，不代表提供者不健康
+            return Outcome.SUCCESS;
+        }
+        String message = result.toLowerCase(Locale.ROOT);
+        if (message.contains("429") || message.contains("rate limit") || message.contains("quota")) {
+            return Outcome.RATE_LIMITED;
+        }
+        if (message.contains("timeout") || message.contains("timed out")) {
+            return Outcome.TIMEOUT;
+        }
+        if (message.matches("(?s).*(錯誤 |http )5\\d\\d.*")) {
+            return Outcome.SERVER_ERROR;
+        }
+        return Outcome.ERROR;
+    }
+
+    private static boolean isFailureMessage(String result) {
+        for (String prefix : FAILURE_PREFIXES) {
+            if (result.startsWith(prefix + ":")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private State currentState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openDurationNanos) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+        return state;
+    }
+
+    private void open() {
+        log.warn("斷路器 {} 開啟，失敗率 {}", name, String.format("%.1f%%", getFailureRate() * 100));
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        openedCount++;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+    }
+
+    private void close() {
+        log.info("斷路器 {} 探測成功，恢復正常", name);
+        state = State.CLOSED;
+        windowCount = 0;
+        nextIndex = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+    }
+}
@@ -0,0 +1,138 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 以斷路器保護的 AI 服務包裝
+ * 每次呼叫前向實際使用模型的斷路器取得許可，斷路器開啟時直接返回錯誤訊息，不再等待提供者逾時
+ */
+@Slf4j
+class CircuitBreakingAiService implements AiService {
+
+    private final AiService delegate;
+    private final ProviderCircuitBreakers breakers;
+
+    CircuitBreakingAiService(AiService delegate, ProviderCircuitBreakers breakers) {
+        this.delegate = delegate;
+        this.breakers = breakers;
+    }
+
+    @Override
+    public String translateText(String text, String targetLanguage, String model) {
+        return call("翻譯", model, () -> delegate.translateText(text, targetLanguage, model));
+    }
+
+    @Override
+    public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
+        return call("翻譯", model, () -> delegate.translateTextStreaming(text, targetLanguage, model, onDelta));
+    }
+
+    @Override
+    public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+        return callAsync("翻譯", model, () -> delegate.translateTextAsync(text, targetLanguage, model));
+    }
+
+    @Override
+    public CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                             String otherTarget, String model) {
+        return callAsync("翻譯", model, () -> delegate.detectAndTranslateAsync(text, targetRules, otherTarget, model));
+    }
+
+    @Override
+    public CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+        return callAsync("翻譯", model, () -> delegate.translateBatchAsync(textsJson, targetLanguage, model));
+    }
+
+    @Override
+    public String processImage(String prompt, String imageUrl, String model) {
+        return call("圖片處理", model, () -> delegate.processImage(prompt, imageUrl, model));
+    }
+
+    @Override
+    public CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+        return callAsync("圖片處理", model, () -> delegate.processImageAsync(prompt, imageUrl, model));
+    }
+
+    @Override
+    public String getProviderName() {
+        return delegate.getProviderName();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public String generateText(String prompt, String model) {
+        return call("文本生成", model, () -> delegate.generateText(prompt, model));
+    }
+
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, String model) {
+        return callAsync("文本生成", model, () -> delegate.generateTextAsync(prompt, model));
+    }
+
+    private CircuitBreaker breaker(String model) {
+        return breakers.get(delegate.getProviderName(), model != null ? model : delegate.getModelName());
+    }
+
+    private String call(String operation, String model, Supplier<String> action) {
+        CircuitBreaker breaker = breaker(model);
+        if (!breaker.tryAcquire()) {
+            return rejected(breaker, operation);
+        }
+        String result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            breaker.record(CircuitBreaker.Outcome.ERROR);
+            throw e;
+        }
+        breaker.record(CircuitBreaker.classify(result));
+        return result;
+    }
+
+    private CompletableFuture<String> callAsync(String operation, String model, Supplier<CompletableFuture<String>> action) {
+        CircuitBreaker breaker = breaker(model);
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.completedFuture(rejected(breaker, operation));
+        }
+        CompletableFuture<String> future;
+        try {
+            future = action.get();
+        } catch (RuntimeException e) {
+            // 同步拋出的例外也要記錄，否則半開狀態的探測名額不會釋放
+            breaker.record(CircuitBreaker.Outcome.ERROR);
+            throw e;
+        }
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                breaker.record(CircuitBreaker.classify(result));
+            } else if (isCancellation(error)) {
+                // 被取消的請求（例如對沖中落敗的一方）不代表提供者的健康狀態
+                breaker.release();
+            } else {
+                breaker.record(CircuitBreaker.Outcome.ERROR);
+            }
+        });
+        return future;
+    }
+
+    private String rejected(CircuitBreaker breaker, String operation) {
+        log.warn("{} 斷路器開啟中，略過{}請求", breaker.getName(), operation);
+        return operation + "失敗: " + delegate.getProviderName() + " 服務暫時不可用，請稍後再試";
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        return error instanceof CancellationException
+                || error instanceof CompletionException && error.getCause() instanceof CancellationException;
+    }
+}
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import okio.BufferedSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -13,9 +14,9 @@ import org.springframework.stereotype.Service;
 import com.linetranslate.bot.config.GeminiConfig;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
-
-import com.linetranslate.bot.model.UserProfile;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -26,19 +27,24 @@ public class GeminiService implements AiService {
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final GeminiConfig geminiConfig;
+    private final StreamingMetrics streamingMetrics;
+    private final ModelSettingsRegistry modelSettings;
+
+    // 未設定模型上限時的最大輸出 token 數，翻譯與文本生成依輸入大小調整
+    private static final int MAX_OUTPUT_TOKENS = 8192;
+    private static final int MAX_IMAGE_OUTPUT_TOKENS = 8192;
 
     @Autowired
-    public GeminiService(GeminiConfig geminiConfig) {
+    public GeminiService(GeminiConfig geminiConfig, StreamingMetrics streamingMetrics, AiHttpTransport aiHttpTransport,
+                         ModelSettingsRegistry modelSettings) {
         this.geminiConfig = geminiConfig;
+        this.streamingMetrics = streamingMetrics;
+        this.modelSettings = modelSettings;
         this.modelName = geminiConfig.getModelName();
         this.apiKey = geminiConfig.getApiKey();
 
-        // 初始化 HTTP 客戶端
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+        // 使用共用的 HTTP 傳輸層
+        this.httpClient = aiHttpTransport.clientFor(getProviderName());
 
         this.objectMapper = new ObjectMapper();
 
@@ -46,139 +52,414 @@ public class GeminiService implements AiService {
     }
 
     @Override
-    public String translateText(String text, String targetLanguage) {
+    public String translateText(String text, String targetLanguage, String model) {
         try {
-            // 建立提示
-            String prompt = "請將以下文本翻譯成" + targetLanguage + "。只需返回翻譯結果，不要添加任何解釋或額外信息：\n\n" + text;
-
-            // 建立請求體
-            ObjectNode requestBodyJson = objectMapper.createObjectNode();
-
-            // 添加內容部分
-            ArrayNode contentsArray = requestBodyJson.putArray("contents");
-            ObjectNode contentObject = contentsArray.addObject();
-            ArrayNode partsArray = contentObject.putArray("parts");
-            ObjectNode textPart = partsArray.addObject();
-            textPart.put("text", prompt);
-
-            // 添加生成配置
-            ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
-            generationConfig.put("temperature", 0.2);
-            generationConfig.put("topK", 40);
-            generationConfig.put("topP", 0.95);
-            generationConfig.put("maxOutputTokens", 1024);
-
-            String requestBody = objectMapper.writeValueAsString(requestBodyJson);
-
-            // 建立請求
-            Request request = new Request.Builder()
-                    .url("https://generativelanguage.googleapis.com/v1beta/models/" + modelName + ":generateContent?key=" + apiKey)
-                    .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                    .build();
-
-            // 發送請求
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    log.error("Gemini API 請求失敗: {}", response);
-                    return "翻譯失敗: Gemini API 請求錯誤 " + response.code();
+            return generateContent(buildTranslationRequestBody(text, targetLanguage, resolve(model)), resolve(model), "翻譯");
+        } catch (IOException e) {
+            log.error("Gemini 翻譯失敗: {}", e.getMessage());
+            return "翻譯失敗: " + e.getMessage();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+        String actualModel = resolve(model);
+        StreamingTextAssembler assembler = streamingMetrics.start(getProviderName(), actualModel, null);
+        try {
+            Request request = buildRequest("streamGenerateContent", actualModel,
+                    buildTranslationRequestBody(text, targetLanguage, actualModel));
+            return enqueue(request, "翻譯", assembler::fail, body -> {
+                readStream(body.source(), assembler);
+                if (!assembler.hasContent()) {
+                    assembler.fail();
+                    return null;
                 }
+                return completeStream(assembler, "翻譯");
+            });
+        } catch (IOException e) {
+            assembler.fail();
+            log.error("Gemini 翻譯失敗: {}", e.getMessage());
+            return CompletableFuture.completedFuture("翻譯失敗: " + e.getMessage());
+        }
+    }
 
-                String responseBody = response.body().string();
-                JsonNode jsonResponse = objectMapper.readTree(responseBody);
+    @Override
+    public CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                             String otherTarget, String model) {
+        String actualModel = resolve(model);
+        try {
+            return generateContentAsync(buildTranslationRequestBody(
+                    AiService.detectAndTranslateInstruction(text, targetRules, otherTarget), text,
+                    AiService.widestTargetLanguage(targetRules, otherTarget), actualModel), actualModel, "翻譯");
+        } catch (IOException e) {
+            log.error("Gemini 合併檢測與翻譯失敗: {}", e.getMessage());
+            return CompletableFuture.completedFuture("翻譯失敗: " + e.getMessage());
+        }
+    }
 
-                // 解析回應
-                JsonNode candidatesNode = jsonResponse.path("candidates");
-                if (candidatesNode.isArray() && candidatesNode.size() > 0) {
-                    JsonNode contentNode = candidatesNode.get(0).path("content");
-                    JsonNode partsNode = contentNode.path("parts");
+    @Override
+    public CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+        String actualModel = resolve(model);
+        try {
+            return generateContentAsync(buildTranslationRequestBody(
+                    AiService.batchTranslationInstruction(textsJson, targetLanguage), textsJson, targetLanguage, actualModel),
+                    actualModel, "翻譯");
+        } catch (IOException e) {
+            log.error("Gemini 批次翻譯失敗: {}", e.getMessage());
+            return CompletableFuture.completedFuture("翻譯失敗: " + e.getMessage());
+        }
+    }
 
-                    if (partsNode.isArray() && partsNode.size() > 0) {
-                        String translatedText = partsNode.get(0).path("text").asText();
-                        return translatedText.trim();
-                    }
+    @Override
+    public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
+        String actualModel = resolve(model);
+        StreamingTextAssembler assembler = streamingMetrics.start(getProviderName(), actualModel, onDelta);
+        try {
+            Request request = buildRequest("streamGenerateContent", actualModel,
+                    buildTranslationRequestBody(text, targetLanguage, actualModel));
+
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    assembler.fail();
+                    log.error("Gemini API 串流請求失敗: {}", response);
+                    return "翻譯失敗: Gemini API 請求錯誤 " + response.code();
                 }
+                readStream(response.body().source(), assembler);
+            }
 
-                log.error("無法從 Gemini 回應中解析翻譯結果: {}", responseBody);
+            if (!assembler.hasContent()) {
+                assembler.fail();
+                log.error("Gemini 串流沒有返回翻譯結果");
                 return "翻譯失敗: 無法解析回應";
             }
+            return completeStream(assembler, "翻譯");
         } catch (IOException e) {
-            log.error("Gemini 翻譯失敗: {}", e.getMessage());
+            assembler.fail();
+            log.error("Gemini 串流翻譯失敗: {}", e.getMessage());
             return "翻譯失敗: " + e.getMessage();
         }
     }
 
-    @Override
-    public String processImage(String prompt, String imageUrl) {
-        try {
-            // 建立請求體
-            ObjectNode requestBodyJson = objectMapper.createObjectNode();
-
-            // 添加內容部分
-            ArrayNode contentsArray = requestBodyJson.putArray("contents");
-            ObjectNode contentObject = contentsArray.addObject();
-            ArrayNode partsArray = contentObject.putArray("parts");
-
-            // 添加文本提示
-            ObjectNode textPart = partsArray.addObject();
-            textPart.put("text", prompt);
-
-            // 添加圖片
-            ObjectNode imagePart = partsArray.addObject();
-            ObjectNode inlineData = imagePart.putObject("inlineData");
-
-            // 從 data:image/jpeg;base64, 格式中提取 base64 部分
-            String base64Data = imageUrl;
-            if (imageUrl.contains(";base64,")) {
-                base64Data = imageUrl.split(";base64,")[1];
+    /**
+     * 逐行讀取 SSE 串流，每個 data 事件的格式與 generateContent 的回應相同，只包含新增的文字
+     */
+    private void readStream(BufferedSource source, StreamingTextAssembler assembler) throws IOException {
+        while (!source.exhausted()) {
+            String line = source.readUtf8Line();
+            if (line == null || !line.startsWith("data:")) {
+                continue;
             }
+            appendStreamEvent(assembler, line.substring("data:".length()).trim());
+        }
+    }
 
-            inlineData.put("data", base64Data);
-            inlineData.put("mimeType", "image/jpeg");
+    private void appendStreamEvent(StreamingTextAssembler assembler, String data) throws IOException {
+        if (data.isEmpty()) {
+            return;
+        }
 
-            // 添加生成配置
-            ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
-            generationConfig.put("temperature", 0.1);
-            generationConfig.put("topK", 32);
-            generationConfig.put("topP", 0.95);
-            generationConfig.put("maxOutputTokens", 1024);
+        JsonNode event = objectMapper.readTree(data);
+        JsonNode partsNode = event.path("candidates").path(0).path("content").path("parts");
+        if (partsNode.isArray()) {
+            for (JsonNode part : partsNode) {
+                assembler.append(part.path("text").asText(""));
+            }
+        }
 
-            String requestBody = objectMapper.writeValueAsString(requestBodyJson);
+        // 最後一個事件帶有結束原因
+        if ("MAX_TOKENS".equals(event.path("candidates").path(0).path("finishReason").asText())) {
+            assembler.markTruncated();
+        }
 
-            // 建立請求
-            Request request = new Request.Builder()
-                    .url("https://generativelanguage.googleapis.com/v1beta/models/" + modelName + ":generateContent?key=" + apiKey)
-                    .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                    .build();
+        // 最後一個事件的 usageMetadata 包含完整的輸出 token 數
+        JsonNode tokenCount = event.path("usageMetadata").path("candidatesTokenCount");
+        if (tokenCount.isInt()) {
+            assembler.setCompletionTokens(tokenCount.asInt());
+        }
+    }
 
-            // 發送請求
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    log.error("Gemini API 圖片處理請求失敗: {}", response);
-                    return "圖片處理失敗: Gemini API 請求錯誤 " + response.code();
-                }
+    /**
+     * 串流正常結束，輸出被截斷時返回錯誤訊息，避免不完整的結果被快取或記錄為成功
+     */
+    private static String completeStream(StreamingTextAssembler assembler, String operation) {
+        String result = assembler.complete();
+        if (assembler.isTruncated()) {
+            log.warn("Gemini {}結果達到輸出 token 上限，以失敗處理", operation);
+            return operation + "失敗: " + AiService.TRUNCATED_REASON;
+        }
+        return result;
+    }
 
-                String responseBody = response.body().string();
-                JsonNode jsonResponse = objectMapper.readTree(responseBody);
+    @Override
+    public String processImage(String prompt, String imageUrl, String model) {
+        try {
+            return generateContent(buildImageRequestBody(prompt, imageUrl, resolve(model)), resolve(model), "圖片處理");
+        } catch (IOException e) {
+            log.error("Gemini 圖片處理失敗: {}", e.getMessage());
+            return "圖片處理失敗: " + e.getMessage();
+        }
+    }
 
-                // 解析回應
-                JsonNode candidatesNode = jsonResponse.path("candidates");
-                if (candidatesNode.isArray() && candidatesNode.size() > 0) {
-                    JsonNode contentNode = candidatesNode.get(0).path("content");
-                    JsonNode partsNode = contentNode.path("parts");
+    @Override
+    public CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+        try {
+            return generateContentAsync(buildImageRequestBody(prompt, imageUrl, resolve(model)), resolve(model), "圖片處理");
+        } catch (IOException e) {
+            log.error("Gemini 圖片處理失敗: {}", e.getMessage());
+            return CompletableFuture.completedFuture("圖片處理失敗: " + e.getMessage());
+        }
+    }
 
-                    if (partsNode.isArray() && partsNode.size() > 0) {
-                        String extractedText = partsNode.get(0).path("text").asText();
-                        return extractedText.trim();
+    @Override
+    public String generateText(String prompt, String model) {
+        try {
+            return generateContent(buildGenerateRequestBody(prompt, resolve(model)), resolve(model), "文本生成");
+        } catch (IOException e) {
+            log.error("Gemini 文本生成失敗: {}", e.getMessage());
+            return "文本生成失敗: " + e.getMessage();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, String model) {
+        try {
+            return generateContentAsync(buildGenerateRequestBody(prompt, resolve(model)), resolve(model), "文本生成");
+        } catch (IOException e) {
+            log.error("Gemini 文本生成失敗: {}", e.getMessage());
+            return CompletableFuture.completedFuture("文本生成失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 同步呼叫 generateContent 並取出第一個候選結果的文字
+     *
+     * @param requestBody 請求的 JSON 內容
+     * @param model 模型名稱
+     * @param operation 操作名稱，用於錯誤訊息，例如「翻譯」
+     * @return 回應文字，失敗時返回以「{operation}失敗」開頭的錯誤訊息
+     */
+    private String generateContent(String requestBody, String model, String operation) throws IOException {
+        try (Response response = httpClient.newCall(buildRequest("generateContent", model, requestBody)).execute()) {
+            if (!response.isSuccessful()) {
+                log.error("Gemini API {}請求失敗: {}", operation, response);
+                return operation + "失敗: Gemini API 請求錯誤 " + response.code();
+            }
+            return parseCandidateText(response.body().string(), operation);
+        }
+    }
+
+    /**
+     * 以 OkHttp enqueue 非同步呼叫 generateContent，等待回應期間不佔用執行緒
+     */
+    private CompletableFuture<String> generateContentAsync(String requestBody, String model, String operation) {
+        return enqueue(buildRequest("generateContent", model, requestBody), operation, () -> { },
+                body -> parseCandidateText(body.string(), operation));
+    }
+
+    /**
+     * 非同步發送請求，回應在 OkHttp Dispatcher 的執行緒中解析
+     * 失敗時以錯誤訊息正常完成 Future；Future 被取消時會取消 HTTP 請求
+     *
+     * @param request HTTP 請求
+     * @param operation 操作名稱，用於錯誤訊息
+     * @param onFailure 請求失敗時的額外處理
+     * @param reader 讀取成功的回應，返回 null 表示無法解析
+     */
+    private CompletableFuture<String> enqueue(Request request, String operation, Runnable onFailure, ResponseReader reader) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                onFailure.run();
+                if (!call.isCanceled()) {
+                    log.error("Gemini {}失敗: {}", operation, e.getMessage());
+                }
+                future.complete(operation + "失敗: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        onFailure.run();
+                        log.error("Gemini API {}請求失敗: {}", operation, response);
+                        future.complete(operation + "失敗: Gemini API 請求錯誤 " + response.code());
+                        return;
+                    }
+                    String result = reader.read(response.body());
+                    if (result == null) {
+                        log.error("Gemini {}沒有返回可解析的結果", operation);
+                        future.complete(operation + "失敗: 無法解析回應");
+                        return;
                     }
+                    future.complete(result);
+                } catch (IOException e) {
+                    onFailure.run();
+                    log.error("Gemini {}失敗: {}", operation, e.getMessage());
+                    future.complete(operation + "失敗: " + e.getMessage());
                 }
+            }
+        });
 
-                log.error("無法從 Gemini 回應中解析圖片處理結果: {}", responseBody);
-                return "圖片處理失敗: 無法解析回應";
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader {
+        String read(ResponseBody body) throws IOException;
+    }
+
+    /**
+     * 從 generateContent 回應中取出第一個候選結果的文字
+     */
+    private String parseCandidateText(String responseBody, String operation) throws IOException {
+        JsonNode jsonResponse = objectMapper.readTree(responseBody);
+
+        // 解析回應
+        JsonNode candidatesNode = jsonResponse.path("candidates");
+        if (candidatesNode.isArray() && candidatesNode.size() > 0) {
+            JsonNode contentNode = candidatesNode.get(0).path("content");
+            JsonNode partsNode = contentNode.path("parts");
+
+            if (partsNode.isArray() && partsNode.size() > 0) {
+                if ("MAX_TOKENS".equals(candidatesNode.get(0).path("finishReason").asText())) {
+                    log.warn("Gemini {}結果達到輸出 token 上限，以失敗處理", operation);
+                    return operation + "失敗: " + AiService.TRUNCATED_REASON;
+                }
+                return partsNode.get(0).path("text").asText().trim();
             }
-        } catch (IOException e) {
-            log.error("Gemini 圖片處理失敗: {}", e.getMessage());
-            return "圖片處理失敗: " + e.getMessage();
         }
+
+        log.error("無法從 Gemini 回應中解析{}結果: {}", operation, responseBody);
+        return operation + "失敗: 無法解析回應";
+    }
+
+    /**
+     * 建立翻譯請求的 JSON 內容
+     */
+    private String buildTranslationRequestBody(String text, String targetLanguage, String model) throws IOException {
+        return buildTranslationRequestBody("請將以下文本翻譯成" + targetLanguage + "。只需返回翻譯結果，不要添加任何解釋或額外信息。"
+                + AiService.placeholderInstruction(text), text, targetLanguage, model);
+    }
+
+    /**
+     * 建立翻譯請求的 JSON 內容，instruction 為放在文本前的任務說明，單筆與批次翻譯共用相同的翻譯設定
+     */
+    private String buildTranslationRequestBody(String instruction, String text, String targetLanguage, String model)
+            throws IOException {
+        // 建立提示
+        String prompt = instruction + "\n\n" + text;
+
+        // 建立請求體
+        ObjectNode requestBodyJson = objectMapper.createObjectNode();
+
+        // 添加內容部分
+        ArrayNode contentsArray = requestBodyJson.putArray("contents");
+        ObjectNode contentObject = contentsArray.addObject();
+        ArrayNode partsArray = contentObject.putArray("parts");
+        ObjectNode textPart = partsArray.addObject();
+        textPart.put("text", prompt);
+
+        // 添加生成配置
+        ModelSettings settings = modelSettings.get(model);
+        ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
+        generationConfig.put("temperature", settings.temperatureOr(0.2));
+        generationConfig.put("topK", 40);
+        generationConfig.put("topP", 0.95);
+        generationConfig.put("maxOutputTokens",
+                TokenEstimator.outputTokenLimit(getProviderName(), text, targetLanguage, settings.maxOutputTokensOr(MAX_OUTPUT_TOKENS)));
+
+        return objectMapper.writeValueAsString(requestBodyJson);
+    }
+
+    /**
+     * 建立圖片處理請求的 JSON 內容
+     */
+    private String buildImageRequestBody(String prompt, String imageUrl, String model) throws IOException {
+        // 建立請求體
+        ObjectNode requestBodyJson = objectMapper.createObjectNode();
+
+        // 添加內容部分
+        ArrayNode contentsArray = requestBodyJson.putArray("contents");
+        ObjectNode contentObject = contentsArray.addObject();
+        ArrayNode partsArray = contentObject.putArray("parts");
+
+        // 添加文本提示
+        ObjectNode textPart = partsArray.addObject();
+        textPart.put("text", prompt);
+
+        // 添加圖片
+        ObjectNode imagePart = partsArray.addObject();
+        ObjectNode inlineData = imagePart.putObject("inlineData");
+
+        // 從 data:image/jpeg;base64, 格式中提取 base64 部分
+        String base64Data = imageUrl;
+        if (imageUrl.contains(";base64,")) {
+            base64Data = imageUrl.split(";base64,")[1];
+        }
+
+        inlineData.put("data", base64Data);
+        inlineData.put("mimeType", "image/jpeg");
+
+        // 添加生成配置
+        ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
+        generationConfig.put("temperature", 0.1);
+        generationConfig.put("topK", 32);
+        generationConfig.put("topP", 0.95);
+        generationConfig.put("maxOutputTokens", modelSettings.get(model).maxOutputTokensOr(MAX_IMAGE_OUTPUT_TOKENS));
+
+        return objectMapper.writeValueAsString(requestBodyJson);
+    }
+
+    /**
+     * 建立文本生成請求的 JSON 內容
+     */
+    private String buildGenerateRequestBody(String prompt, String model) throws IOException {
+        // 建立請求體
+        ObjectNode requestBodyJson = objectMapper.createObjectNode();
+
+        // 添加內容部分
+        ArrayNode contentsArray = requestBodyJson.putArray("contents");
+        ObjectNode contentObject = contentsArray.addObject();
+        ArrayNode partsArray = contentObject.putArray("parts");
+        ObjectNode textPart = partsArray.addObject();
+        textPart.put("text", prompt);
+
+        // 添加生成配置
+        ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
+        generationConfig.put("temperature", 0.7);
+        generationConfig.put("topK", 40);
+        generationConfig.put("topP", 0.95);
+        generationConfig.put("maxOutputTokens",
+                TokenEstimator.outputTokenLimit(getProviderName(), prompt, modelSettings.get(model).maxOutputTokensOr(MAX_OUTPUT_TOKENS)));
+
+        return objectMapper.writeValueAsString(requestBodyJson);
+    }
+
+    /**
+     * 建立模型 API 的 POST 請求
+     *
+     * @param method API 方法，generateContent 或 streamGenerateContent（以 SSE 格式返回）
+     * @param model 模型名稱
+     * @param requestBody 請求的 JSON 內容
+     */
+    private Request buildRequest(String method, String model, String requestBody) {
+        String url = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":" + method + "?key=" + apiKey;
+        if ("streamGenerateContent".equals(method)) {
+            url += "&alt=sse";
+        }
+        return new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
+                .tag(ProviderRateLimiter.ModelTag.class, new ProviderRateLimiter.ModelTag(model))
+                .build();
     }
 
     @Override
@@ -192,76 +473,19 @@ public class GeminiService implements AiService {
     }
     
     /**
-     * 根據用戶資料取得模型名稱
-     * 
-     * @param userProfile 用戶資料
+     * 取得用戶偏好的模型，未指定或不在可用模型列表中時使用預設模型
+     *
+     * @param preferredModel 用戶偏好的 Gemini 模型，可為 null
      * @return 模型名稱
      */
-    public String getModelName(UserProfile userProfile) {
-        // 如果用戶有指定 Gemini 模型，則使用用戶指定的模型
-        String userModel = userProfile.getGeminiPreferredModel();
-        if (userModel != null && !userModel.isEmpty() && geminiConfig.getAvailableModels().contains(userModel)) {
-            return userModel;
+    public String resolveModel(String preferredModel) {
+        if (preferredModel != null && !preferredModel.isEmpty() && geminiConfig.getAvailableModels().contains(preferredModel)) {
+            return preferredModel;
         }
         return geminiConfig.getModelName();
     }
 
-    @Override
-    public String generateText(String prompt) {
-        try {
-            // 建立請求體
-            ObjectNode requestBodyJson = objectMapper.createObjectNode();
-
-            // 添加內容部分
-            ArrayNode contentsArray = requestBodyJson.putArray("contents");
-            ObjectNode contentObject = contentsArray.addObject();
-            ArrayNode partsArray = contentObject.putArray("parts");
-            ObjectNode textPart = partsArray.addObject();
-            textPart.put("text", prompt);
-
-            // 添加生成配置
-            ObjectNode generationConfig = requestBodyJson.putObject("generationConfig");
-            generationConfig.put("temperature", 0.7);
-            generationConfig.put("topK", 40);
-            generationConfig.put("topP", 0.95);
-            generationConfig.put("maxOutputTokens", 1024);
-
-            String requestBody = objectMapper.writeValueAsString(requestBodyJson);
-
-            // 建立請求
-            Request request = new Request.Builder()
-                    .url("https://generativelanguage.googleapis.com/v1beta/models/" + modelName + ":generateContent?key=" + apiKey)
-                    .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                    .build();
-
-            // 發送請求
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    log.error("Gemini API 請求失敗: {}", response);
-                    return "文本生成失敗: Gemini API 請求錯誤 " + response.code();
-                }
-
-                String responseBody = response.body().string();
-                JsonNode jsonResponse = objectMapper.readTree(responseBody);
-
-                // 解析回應
-                JsonNode candidatesNode = jsonResponse.path("candidates");
-                if (candidatesNode.isArray() && candidatesNode.size() > 0) {
-                    JsonNode contentNode = candidatesNode.get(0).path("content");
-                    JsonNode partsNode = contentNode.path("parts");
-
-                    if (partsNode.isArray() && partsNode.size() > 0) {
-                        String generatedText = partsNode.get(0).path("text").asText();
-                        return generatedText.trim();
-                    }
-                }
-
-                log.error("無法從 Gemini 回應中解析生成結果: {}", responseBody);
-                return "文本生成失敗: 無法解析回應";
-            }
-        } catch (IOException e) {
-            log.error("Gemini 文本生成失敗: {}", e.getMessage());
-            return "文本生成失敗: " + e.getMessage();
-        }
+    private String resolve(String model) {
+        return model != null ? model : modelName;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,256 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 對沖翻譯請求的 AI 服務包裝
+ * 先向主要提供者發出請求，超過 HedgingPolicy 的延遲門檻仍未回應時，再向次要提供者發出相同請求，
+ * 採用最先成功的回應並取消另一個請求。批次翻譯、合併檢測與翻譯、圖片處理與文本生成只使用主要提供者
+ */
+@Slf4j
+class HedgedAiService implements AiService {
+
+    private final AiService primary;
+    private final AiService secondary;
+    private final HedgingPolicy policy;
+
+    HedgedAiService(AiService primary, AiService secondary, HedgingPolicy policy) {
+        this.primary = primary;
+        this.secondary = secondary;
+        this.policy = policy;
+    }
+
+    @Override
+    public String translateText(String text, String targetLanguage, String model) {
+        return translateText(text, targetLanguage, model, null);
+    }
+
+    @Override
+    public String translateText(String text, String targetLanguage, String model, Consumer<ServedBy> onServedByOther) {
+        return translateTextAsync(text, targetLanguage, model, onServedByOther).join();
+    }
+
+    @Override
+    public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
+        return translateTextStreaming(text, targetLanguage, model, onDelta, null);
+    }
+
+    @Override
+    public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta,
+                                         Consumer<ServedBy> onServedByOther) {
+        // 對沖時無法確定哪一方的片段會被採用，只在完成後通知一次
+        String result = translateText(text, targetLanguage, model, onServedByOther);
+        if (onDelta != null && result != null) {
+            onDelta.accept(result);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+        return translateTextAsync(text, targetLanguage, model, null);
+    }
+
+    @Override
+    public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model,
+                                                        Consumer<ServedBy> onServedByOther) {
+        return new HedgedCall(text, targetLanguage, model, onServedByOther).start();
+    }
+
+    @Override
+    public CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                             String otherTarget, String model) {
+        return primary.detectAndTranslateAsync(text, targetRules, otherTarget, model);
+    }
+
+    @Override
+    public CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+        return primary.translateBatchAsync(textsJson, targetLanguage, model);
+    }
+
+    @Override
+    public String processImage(String prompt, String imageUrl, String model) {
+        return primary.processImage(prompt, imageUrl, model);
+    }
+
+    @Override
+    public CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+        return primary.processImageAsync(prompt, imageUrl, model);
+    }
+
+    @Override
+    public String getProviderName() {
+        return primary.getProviderName();
+    }
+
+    @Override
+    public String getModelName() {
+        return primary.getModelName();
+    }
+
+    @Override
+    public String generateText(String prompt, String model) {
+        return primary.generateText(prompt, model);
+    }
+
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, String model) {
+        return primary.generateTextAsync(prompt, model);
+    }
+
+    /**
+     * 一次對沖翻譯的狀態，所有狀態轉換都在同一個鎖內進行；
+     * 完成結果與取消請求在鎖外進行，避免後續階段在鎖內執行
+     */
+    private class HedgedCall {
+        private final String text;
+        private final String targetLanguage;
+        private final String model;
+        private final Consumer<ServedBy> onServedByOther;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+
+        private CompletableFuture<String> primaryCall;
+        private CompletableFuture<String> hedgeCall;
+        private ScheduledFuture<?> hedgeTimer;
+        private String primaryResult;
+        private boolean primaryDone;
+        private boolean hedgeDone;
+        private boolean finished;
+
+        HedgedCall(String text, String targetLanguage, String model, Consumer<ServedBy> onServedByOther) {
+            this.text = text;
+            this.targetLanguage = targetLanguage;
+            this.model = model;
+            this.onServedByOther = onServedByOther;
+        }
+
+        CompletableFuture<String> start() {
+            String provider = primary.getProviderName();
+            policy.recordRequest(provider);
+
+            synchronized (this) {
+                primaryCall = primary.translateTextAsync(text, targetLanguage, model);
+                if (!primaryCall.isDone()) {
+                    hedgeTimer = policy.schedule(this::startHedge, policy.hedgeDelay(provider));
+                }
+            }
+            primaryCall.whenComplete((value, error) -> onPrimary(value, error));
+
+            // 呼叫者取消時同時取消兩邊的請求
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    cancelAll();
+                }
+            });
+            return result;
+        }
+
+        private void startHedge() {
+            CompletableFuture<String> call;
+            long hedgeStartNanos = System.nanoTime();
+            synchronized (this) {
+                if (finished || result.isDone() || primaryDone || !policy.tryAcquireHedge(primary.getProviderName())) {
+                    return;
+                }
+                log.info("{} 超過 {} 仍未回應，對沖到 {}", primary.getProviderName(),
+                        policy.hedgeDelay(primary.getProviderName()), secondary.getProviderName());
+                // 指定的模型屬於主要提供者，次要提供者使用自己的預設模型
+                call = secondary.translateTextAsync(text, targetLanguage);
+                hedgeCall = call;
+            }
+            call.whenComplete((value, error) -> onHedge(value, error, hedgeStartNanos));
+        }
+
+        private void onPrimary(String value, Throwable error) {
+            String outcome;
+            boolean hedged;
+            synchronized (this) {
+                primaryDone = true;
+                primaryResult = error != null ? "翻譯失敗: " + error.getMessage() : value;
+                if (finished || result.isDone()) {
+                    return;
+                }
+
+                if (!HedgingPolicy.isFailure(primaryResult)) {
+                    policy.recordLatency(primary.getProviderName(), System.nanoTime() - startNanos);
+                } else if (hedgeCall != null && !hedgeDone) {
+                    // 等待對沖請求的結果
+                    return;
+                }
+                finished = true;
+                outcome = primaryResult;
+                hedged = hedgeCall != null;
+            }
+            finish(outcome, hedged, false, false);
+        }
+
+        private void onHedge(String value, Throwable error, long hedgeStartNanos) {
+            String outcome;
+            boolean hedgeWon;
+            boolean primaryPending;
+            synchronized (this) {
+                hedgeDone = true;
+                if (finished || result.isDone()) {
+                    return;
+                }
+
+                String hedgeResult = error != null ? "翻譯失敗: " + error.getMessage() : value;
+                if (!HedgingPolicy.isFailure(hedgeResult)) {
+                    policy.recordLatency(secondary.getProviderName(), System.nanoTime() - hedgeStartNanos);
+                    outcome = hedgeResult;
+                    hedgeWon = true;
+                } else if (primaryDone) {
+                    outcome = primaryResult;
+                    hedgeWon = false;
+                } else {
+                    return;
+                }
+                finished = true;
+                primaryPending = !primaryDone;
+            }
+            finish(outcome, true, hedgeWon, primaryPending);
+        }
+
+        private void finish(String value, boolean hedged, boolean hedgeWon, boolean primaryPending) {
+            if (hedged) {
+                policy.recordHedgedOutcome(primary.getProviderName(), hedgeWon);
+            }
+            if (hedgeWon && primaryPending) {
+                // 主要請求即將被取消，以已等待的時間作為其延遲的下限
+                policy.recordCensoredLatency(primary.getProviderName(), System.nanoTime() - startNanos);
+            }
+            if (hedgeWon && onServedByOther != null) {
+                // 在結果完成前通知，呼叫者的後續階段才能以實際的提供者快取與記錄
+                onServedByOther.accept(new ServedBy(secondary.getProviderName(), secondary.getModelName()));
+            }
+            result.complete(value);
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            ScheduledFuture<?> timer;
+            CompletableFuture<String> primaryPendingCall;
+            CompletableFuture<String> hedgePendingCall;
+            synchronized (this) {
+                timer = hedgeTimer;
+                primaryPendingCall = primaryCall;
+                hedgePendingCall = hedgeCall;
+            }
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (primaryPendingCall != null && !primaryPendingCall.isDone()) {
+                primaryPendingCall.cancel(true);
+            }
+            if (hedgePendingCall != null && !hedgePendingCall.isDone()) {
+                hedgePendingCall.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.linetranslate.bot.service.ai;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 跨提供者對沖請求的策略
+ * 主要提供者超過其近期延遲的指定百分位數仍未回應時，同時向次要提供者發出相同的翻譯請求。
+ * 對沖次數受預算限制：每個主要請求累積 budget-ratio 個額度，每次對沖消耗 1 個額度
+ */
+@Component
+@Slf4j
+public class HedgingPolicy implements MetricsReporter {
+
+    /** 額度上限，避免長時間低流量後累積過多額度造成突發對沖 */
+    private static final double MAX_BUDGET = 10.0;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final int windowSize;
+    private final int minSamples;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final double budgetRatio;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final Map<String, ProviderStats> statsByProvider = new ConcurrentSkipListMap<>();
+    private double budget = MAX_BUDGET;
+
+    @Autowired
+    public HedgingPolicy(
+            @Value("${app.ai.hedging.enabled:false}") boolean enabled,
+            @Value("${app.ai.hedging.percentile:95}") double percentile,
+            @Value("${app.ai.hedging.window-size:200}") int windowSize,
+            @Value("${app.ai.hedging.min-samples:20}") int minSamples,
+            @Value("${app.ai.hedging.initial-delay:3s}") Duration initialDelay,
+            @Value("${app.ai.hedging.min-delay:300ms}") Duration minDelay,
+            @Value("${app.ai.hedging.budget-ratio:0.1}") double budgetRatio) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.windowSize = windowSize;
+        this.minSamples = minSamples;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.budgetRatio = budgetRatio;
+
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ai-hedging-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        if (enabled) {
+            log.info("AI 對沖請求已啟用，延遲門檻: p{}, 預算比例: {}", percentile, budgetRatio);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 主要提供者的對沖等待時間，樣本不足時使用 initial-delay
+     *
+     * @param provider 主要提供者名稱
+     * @return 等待多久後發出對沖請求
+     */
+    public Duration hedgeDelay(String provider) {
+        long thresholdNanos = stats(provider).percentileNanos(percentile, minSamples);
+        if (thresholdNanos < 0) {
+            return initialDelay;
+        }
+        return Duration.ofNanos(Math.max(thresholdNanos, minDelay.toNanos()));
+    }
+
+    ScheduledFuture<?> schedule(Runnable task, Duration delay) {
+        return timer.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 記錄一次主要請求，並累積對沖額度
+     */
+    void recordRequest(String provider) {
+        stats(provider).requests.increment();
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+        }
+    }
+
+    /**
+     * 嘗試取得一次對沖額度
+     *
+     * @return 是否可以發出對沖請求
+     */
+    boolean tryAcquireHedge(String provider) {
+        boolean acquired;
+        synchronized (this) {
+            acquired = budget >= 1.0;
+            if (acquired) {
+                budget -= 1.0;
+            }
+        }
+        if (acquired) {
+            stats(provider).hedged.increment();
+        } else {
+            stats(provider).budgetDenied.increment();
+        }
+        return acquired;
+    }
+
+    /**
+     * 記錄成功回應的延遲，作為計算對沖門檻的樣本
+     */
+    void recordLatency(String provider, long latencyNanos) {
+        stats(provider).addSample(latencyNanos);
+    }
+
+    /**
+     * 記錄被取消的主要請求已等待的時間
+     * 對沖勝出後主要請求被取消，實際延遲至少為已等待的時間；若不記錄，樣本只剩較快的回應，
+     * 門檻會逐漸下降並造成越來越多對沖
+     */
+    void recordCensoredLatency(String provider, long elapsedNanos) {
+        ProviderStats stats = stats(provider);
+        stats.censored.increment();
+        stats.addSample(elapsedNanos);
+    }
+
+    /**
+     * 記錄對沖後勝出的一方
+     *
+     * @param primaryProvider 主要提供者名稱
+     * @param hedgeWon 是否由次要提供者勝出
+     */
+    void recordHedgedOutcome(String primaryProvider, boolean hedgeWon) {
+        ProviderStats stats = stats(primaryProvider);
+        if (hedgeWon) {
+            stats.hedgeWins.increment();
+        } else {
+            stats.primaryWins.increment();
+        }
+    }
+
+    /**
+     * 判斷 AI 服務的回應是否為錯誤訊息
+     */
+    static boolean isFailure(String result) {
+        return result == null || result.isBlank()
+                || result.startsWith("翻譯失敗") || result.startsWith("無法翻譯");
+    }
+
+    private ProviderStats stats(String provider) {
+        return statsByProvider.computeIfAbsent(provider, key -> new ProviderStats(windowSize));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "AI 對沖請求";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用");
+        synchronized (this) {
+            sb.append(String.format(", 剩餘額度: %.1f", budget));
+        }
+        for (Map.Entry<String, ProviderStats> entry : statsByProvider.entrySet()) {
+            ProviderStats stats = entry.getValue();
+            long requests = stats.requests.sum();
+            long hedged = stats.hedged.sum();
+            long hedgeWins = stats.hedgeWins.sum();
+            long primaryWins = stats.primaryWins.sum();
+            long thresholdNanos = stats.percentileNanos(percentile, minSamples);
+
+            sb.append("\n").append(entry.getKey()).append(": 請求 ").append(requests)
+              .append(", 對沖 ").append(hedged);
+            if (requests > 0) {
+                sb.append(String.format(" (%.1f%%)", hedged * 100.0 / requests));
+            }
+            sb.append(", 勝出 主要/次要 ").append(primaryWins).append("/").append(hedgeWins);
+            if (primaryWins + hedgeWins > 0) {
+                sb.append(String.format(" (次要勝率 %.1f%%)", hedgeWins * 100.0 / (primaryWins + hedgeWins)));
+            }
+            sb.append(", 預算不足 ").append(stats.budgetDenied.sum());
+            sb.append(", 取消樣本 ").append(stats.censored.sum());
+            sb.append(", p").append(String.format("%.0f", percentile)).append(" ")
+              .append(thresholdNanos < 0 ? "樣本不足" : (thresholdNanos / 1_000_000) + "ms");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 單一提供者的計數與最近的延遲樣本
+     */
+    private static class ProviderStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hedged = new LongAdder();
+        private final LongAdder primaryWins = new LongAdder();
+        private final LongAdder hedgeWins = new LongAdder();
+        private final LongAdder budgetDenied = new LongAdder();
+        private final LongAdder censored = new LongAdder();
+
+        private final long[] samples;
+        private int sampleCount;
+        private int nextSample;
+
+        ProviderStats(int windowSize) {
+            this.samples = new long[windowSize];
+        }
+
+        synchronized void addSample(long latencyNanos) {
+            samples[nextSample] = latencyNanos;
+            nextSample = (nextSample + 1) % samples.length;
+            sampleCount = Math.min(sampleCount + 1, samples.length);
+        }
+
+        /**
+         * @return 指定百分位數的延遲，樣本不足時返回 -1
+         */
+        synchronized long percentileNanos(double percentile, int minSamples) {
+            if (sampleCount == 0 || sampleCount < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 各模型的 API 價格表 (價格單位: $/1M tokens)
+ * 供費用統計與模型路由共用；Gemini 目前免費，未列出的 OpenAI 模型以 gpt-4o 的價格計算
+ */
+public final class ModelPricing {
+
+    private static final double[] DEFAULT_OPENAI_PRICE = {2.50, 10.00};
+    private static final Map<String, double[]> OPENAI_PRICES = new HashMap<>();
+
+    static {
+        // 最新模型價格
+        price(2.00, 8.00, "gpt-4.1", "gpt-4.1-2025-04-14");
+        price(0.40, 1.60, "gpt-4.1-mini", "gpt-4.1-mini-2025-04-14");
+        price(0.10, 0.40, "gpt-4.1-nano", "gpt-4.1-nano-2025-04-14");
+        price(75.00, 150.00, "gpt-4.5-preview", "gpt-4.5-preview-2025-02-27");
+        price(2.50, 10.00, "gpt-4o", "gpt-4o-2024-08-06");
+        price(0.15, 0.60, "gpt-4o-mini", "gpt-4o-mini-2024-07-18");
+        price(15.00, 60.00, "o1", "o1-2024-12-17");
+        price(150.00, 600.00, "o1-pro", "o1-pro-2025-03-19");
+        price(10.00, 40.00, "o3", "o3-2025-04-16");
+        price(1.10, 4.40, "o4-mini", "o4-mini-2025-04-16");
+        price(1.10, 4.40, "o3-mini", "o3-mini-2025-01-31");
+        price(1.10, 4.40, "o1-mini", "o1-mini-2024-09-12");
+        // 舊模型
+        price(30.00, 60.00, "gpt-4");
+        price(0.50, 1.50, "gpt-3.5-turbo");
+    }
+
+    private ModelPricing() {
+    }
+
+    private static void price(double input, double output, String... models) {
+        for (String model : models) {
+            OPENAI_PRICES.put(model, new double[] {input, output});
+        }
+    }
+
+    /**
+     * 估算一次呼叫的費用
+     *
+     * @param provider AI 提供者
+     * @param model 模型名稱
+     * @param inputTokens 輸入 token 數
+     * @param outputTokens 輸出 token 數
+     * @return 費用 (美元)
+     */
+    public static double estimateCost(String provider, String model, int inputTokens, int outputTokens) {
+        if (!"openai".equals(provider)) {
+            return 0.0;
+        }
+        double[] price = model != null ? OPENAI_PRICES.getOrDefault(model, DEFAULT_OPENAI_PRICE) : DEFAULT_OPENAI_PRICE;
+        return (inputTokens / 1_000_000.0) * price[0] + (outputTokens / 1_000_000.0) * price[1];
+    }
+}
@@ -0,0 +1,306 @@
+package com.linetranslate.bot.service.ai;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.line.UserPreferences;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 依成本與延遲為每個翻譯請求選擇模型
+ * 依輸入長度、語言組合、用戶偏好及各模型近期的延遲分佈，在提供者的小模型與大模型之間選擇：
+ * 短訊息使用小模型，長文本與圖片文字使用大模型；大模型的延遲超過 SLO 或估算費用超過預算時改用小模型
+ */
+@Component
+@Slf4j
+public class ModelRouter implements MetricsReporter {
+
+    private final boolean enabled;
+    private final boolean respectUserPreference;
+    private final int shortTextTokens;
+    private final int longTextTokens;
+    private final Duration latencySlo;
+    private final double latencyPercentile;
+    private final int minSamples;
+    private final Duration latencyWindow;
+    private final double maxCostPerRequest;
+    private final Set<String> largeModelLanguages;
+    private final Map<String, String[]> modelTiers;
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> decisions = new ConcurrentSkipListMap<>();
+    private final DoubleAdder estimatedSavings = new DoubleAdder();
+
+    @Autowired
+    public ModelRouter(
+            @Value("${app.ai.routing.enabled:false}") boolean enabled,
+            @Value("${app.ai.routing.respect-user-preference:true}") boolean respectUserPreference,
+            @Value("${app.ai.routing.short-text-tokens:40}") int shortTextTokens,
+            @Value("${app.ai.routing.long-text-tokens:400}") int longTextTokens,
+            @Value("${app.ai.routing.latency-slo:4s}") Duration latencySlo,
+            @Value("${app.ai.routing.latency-percentile:95}") double latencyPercentile,
+            @Value("${app.ai.routing.min-samples:20}") int minSamples,
+            @Value("${app.ai.routing.latency-window:5m}") Duration latencyWindow,
+            @Value("${app.ai.routing.max-cost-per-request:0.05}") double maxCostPerRequest,
+            @Value("${app.ai.routing.large-model-languages:}") String largeModelLanguages,
+            @Value("${app.ai.routing.openai.small-model:gpt-4o-mini}") String openAiSmallModel,
+            @Value("${app.ai.routing.openai.large-model:gpt-4o}") String openAiLargeModel,
+            @Value("${app.ai.routing.gemini.small-model:gemini-1.5-flash}") String geminiSmallModel,
+            @Value("${app.ai.routing.gemini.large-model:gemini-1.5-pro}") String geminiLargeModel) {
+        this.enabled = enabled;
+        this.respectUserPreference = respectUserPreference;
+        this.shortTextTokens = shortTextTokens;
+        this.longTextTokens = longTextTokens;
+        this.latencySlo = latencySlo;
+        this.latencyPercentile = latencyPercentile;
+        this.minSamples = minSamples;
+        this.latencyWindow = latencyWindow;
+        this.maxCostPerRequest = maxCostPerRequest;
+        this.largeModelLanguages = Arrays.stream(largeModelLanguages.split(","))
+                .map(String::trim)
+                .filter(code -> !code.isEmpty())
+                .collect(Collectors.toSet());
+        this.modelTiers = Map.of(
+                "openai", new String[] {openAiSmallModel, openAiLargeModel},
+                "gemini", new String[] {geminiSmallModel, geminiLargeModel});
+
+        log.info("AI 模型路由啟用: {}, 延遲 SLO: p{} {}, 每次請求預算: ${}", enabled, latencyPercentile, latencySlo, maxCostPerRequest);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否設定了依語言組合選擇大模型的規則，有規則時路由前需要先知道源語言
+     */
+    public boolean routesByLanguage() {
+        return enabled && !largeModelLanguages.isEmpty();
+    }
+
+    /**
+     * 為翻譯請求選擇模型
+     *
+     * @param baseline 依用戶偏好選擇的 AI 服務，其模型為未經路由時會使用的模型
+     * @param preferences 用戶偏好設定
+     * @param text 要翻譯的文本
+     * @param sourceLanguage 源語言，尚未檢測時為 null
+     * @param targetLanguage 目標語言
+     * @param imageText 文本是否來自圖片辨識
+     * @return 路由決策
+     */
+    public RoutingDecision route(AiService baseline, UserPreferences preferences, String text,
+                                 String sourceLanguage, String targetLanguage, boolean imageText) {
+        String provider = baseline.getProviderName();
+        String baselineModel = baseline.getModelName();
+        String[] tiers = modelTiers.get(provider);
+        if (!enabled || tiers == null) {
+            return RoutingDecision.unrouted(baselineModel);
+        }
+
+        String smallModel = tiers[0];
+        String largeModel = tiers[1];
+        int tokens = TokenEstimator.estimate(provider, text);
+
+        String model;
+        String reason;
+        if (respectUserPreference && hasPreferredModel(preferences, provider)) {
+            model = baselineModel;
+            reason = RoutingDecision.USER_PREFERENCE;
+        } else if (imageText) {
+            model = largeModel;
+            reason = RoutingDecision.IMAGE_TEXT;
+        } else if (largeModelLanguages.contains(sourceLanguage) || largeModelLanguages.contains(targetLanguage)) {
+            model = largeModel;
+            reason = RoutingDecision.LANGUAGE_PAIR;
+        } else if (tokens >= longTextTokens) {
+            model = largeModel;
+            reason = RoutingDecision.LONG_TEXT;
+        } else if (tokens <= shortTextTokens) {
+            model = smallModel;
+            reason = RoutingDecision.SHORT_TEXT;
+        } else {
+            model = baselineModel;
+            reason = RoutingDecision.DEFAULT;
+        }
+
+        // 用戶指定的模型不受 SLO 與預算限制
+        if (!RoutingDecision.USER_PREFERENCE.equals(reason) && !model.equals(smallModel)) {
+            if (exceedsSlo(provider, model) && !exceedsSlo(provider, smallModel)) {
+                model = smallModel;
+                reason = RoutingDecision.LATENCY_SLO;
+            } else if (estimateCost(provider, model, tokens) > maxCostPerRequest
+                    && estimateCost(provider, smallModel, tokens) < estimateCost(provider, model, tokens)) {
+                model = smallModel;
+                reason = RoutingDecision.BUDGET;
+            }
+        }
+
+        double cost = estimateCost(provider, model, tokens);
+        double baselineCost = estimateCost(provider, baselineModel, tokens);
+        decisions.computeIfAbsent(reason, key -> new LongAdder()).increment();
+        estimatedSavings.add(baselineCost - cost);
+        if (!model.equals(baselineModel)) {
+            log.debug("模型路由: {} -> {} ({}, 約 {} tokens)", baselineModel, model, reason, tokens);
+        }
+        return new RoutingDecision(model, baselineModel, reason, cost, baselineCost);
+    }
+
+    /**
+     * 記錄一次成功翻譯的延遲，作為之後路由的依據
+     *
+     * @param provider AI 提供者
+     * @param model 模型名稱
+     * @param latencyNanos 延遲（奈秒）
+     */
+    public void recordLatency(String provider, String model, long latencyNanos) {
+        if (enabled) {
+            histogram(provider, model).record(latencyNanos);
+        }
+    }
+
+    private static double estimateCost(String provider, String model, int inputTokens) {
+        // 翻譯的輸出長度與輸入相近
+        return ModelPricing.estimateCost(provider, model, inputTokens, inputTokens);
+    }
+
+    private static boolean hasPreferredModel(UserPreferences preferences, String provider) {
+        if (preferences == null) {
+            return false;
+        }
+        String preferred = "openai".equals(provider)
+                ? preferences.getOpenaiPreferredModel()
+                : preferences.getGeminiPreferredModel();
+        return preferred != null && !preferred.isEmpty();
+    }
+
+    private boolean exceedsSlo(String provider, String model) {
+        long percentileMillis = histogram(provider, model).percentileMillis(latencyPercentile, minSamples);
+        return percentileMillis > latencySlo.toMillis();
+    }
+
+    private LatencyHistogram histogram(String provider, String model) {
+        return latencies.computeIfAbsent(provider + "/" + model, key -> new LatencyHistogram(latencyWindow));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "AI 模型路由";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用")
+          .append(", 延遲 SLO: p").append(String.format("%.0f", latencyPercentile)).append(" ").append(latencySlo.toMillis()).append("ms")
+          .append(String.format(", 每次請求預算: $%.4f", maxCostPerRequest));
+        if (!decisions.isEmpty()) {
+            sb.append("\n決策: ").append(decisions.entrySet().stream()
+                    .map(entry -> entry.getKey() + " " + entry.getValue().sum())
+                    .collect(Collectors.joining(", ")));
+            sb.append(String.format("\n估算節省: $%.4f", estimatedSavings.sum()));
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            sb.append("\n").append(entry.getKey()).append(": ")
+              .append(histogram.sampleCount()).append(" 筆")
+              .append(", p50 ").append(formatMillis(histogram.percentileMillis(50, 1)))
+              .append(", p").append(String.format("%.0f", latencyPercentile)).append(" ")
+              .append(formatMillis(histogram.percentileMillis(latencyPercentile, 1)));
+        }
+        return sb.toString();
+    }
+
+    private static String formatMillis(long millis) {
+        if (millis < 0) {
+            return "-";
+        }
+        return millis == Long.MAX_VALUE ? ">" + LatencyHistogram.BOUNDS_MILLIS[LatencyHistogram.BOUNDS_MILLIS.length - 2] + "ms" : "≤" + millis + "ms";
+    }
+
+    /**
+     * 近期延遲的分桶直方圖
+     * 分成目前與上一個兩段時間窗口，每經過半個窗口輪替一次，百分位數以桶的上限表示
+     */
+    private static class LatencyHistogram {
+        private static final long[] BOUNDS_MILLIS = {
+                100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 4000, 6000, 8000, 12000, 20000, 30000, Long.MAX_VALUE};
+
+        private final long rotateNanos;
+        private long[] current = new long[BOUNDS_MILLIS.length];
+        private long[] previous = new long[BOUNDS_MILLIS.length];
+        private long rotatedAtNanos = System.nanoTime();
+
+        LatencyHistogram(Duration window) {
+            this.rotateNanos = Math.max(1, window.toNanos() / 2);
+        }
+
+        synchronized void record(long latencyNanos) {
+            rotateIfNeeded();
+            long millis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+            int bucket = 0;
+            while (millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            current[bucket]++;
+        }
+
+        /**
+         * @return 百分位數所在桶的上限（毫秒），樣本數不足時返回 -1
+         */
+        synchronized long percentileMillis(double percentile, int minSamples) {
+            rotateIfNeeded();
+            long total = sampleCountLocked();
+            if (total == 0 || total < minSamples) {
+                return -1;
+            }
+            long target = (long) Math.ceil(percentile / 100.0 * total);
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+                cumulative += current[i] + previous[i];
+                if (cumulative >= target) {
+                    return BOUNDS_MILLIS[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        synchronized long sampleCount() {
+            rotateIfNeeded();
+            return sampleCountLocked();
+        }
+
+        private long sampleCountLocked() {
+            long total = 0;
+            for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+                total += current[i] + previous[i];
+            }
+            return total;
+        }
+
+        private void rotateIfNeeded() {
+            long now = System.nanoTime();
+            long elapsed = now - rotatedAtNanos;
+            if (elapsed < rotateNanos) {
+                return;
+            }
+            // 超過兩個半窗口沒有輪替時，上一段的資料也已過期
+            previous = elapsed < 2 * rotateNanos ? current : new long[BOUNDS_MILLIS.length];
+            current = new long[BOUNDS_MILLIS.length];
+            rotatedAtNanos = now;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.linetranslate.bot.service.ai;
+
+import java.time.Duration;
+
+/**
+ * 單一模型的呼叫設定，未設定的項目為 null，使用提供者的預設值
+ *
+ * @param maxOutputTokens 最大輸出 token 數
+ * @param temperature 翻譯使用的溫度
+ * @param readTimeout HTTP 讀取逾時
+ */
+public record ModelSettings(Integer maxOutputTokens, Double temperature, Duration readTimeout) {
+
+    static final ModelSettings DEFAULTS = new ModelSettings(null, null, null);
+
+    public int maxOutputTokensOr(int defaultValue) {
+        return maxOutputTokens != null ? maxOutputTokens : defaultValue;
+    }
+
+    public double temperatureOr(double defaultValue) {
+        return temperature != null ? temperature : defaultValue;
+    }
+}
@@ -0,0 +1,58 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 各模型的呼叫設定（最大輸出 token 數、翻譯溫度、讀取逾時）
+ * 每次呼叫依實際使用的模型取得設定，未設定的模型使用提供者的預設值
+ */
+@Component
+@Slf4j
+public class ModelSettingsRegistry {
+
+    private final Map<String, ModelSettings> settings = new HashMap<>();
+
+    @Autowired
+    public ModelSettingsRegistry(@Value("${app.ai.model-settings:}") String settingsString) {
+        // 格式: 模型=最大輸出 token 數/溫度/讀取逾時，以逗號分隔，留空的項目使用預設值，
+        // 例如 gpt-4o-mini=1024/0.3/20s,gemini-1.5-flash=//15s
+        for (String entry : settingsString.split(",")) {
+            String[] modelAndValues = entry.trim().split("=", 2);
+            if (modelAndValues.length != 2) {
+                continue;
+            }
+            String[] values = modelAndValues[1].split("/", -1);
+            settings.put(modelAndValues[0].trim(), new ModelSettings(
+                    values.length > 0 && !values[0].isBlank() ? Integer.valueOf(values[0].trim()) : null,
+                    values.length > 1 && !values[1].isBlank() ? Double.valueOf(values[1].trim()) : null,
+                    values.length > 2 && !values[2].isBlank() ? DurationStyle.detectAndParse(values[2].trim()) : null));
+        }
+
+        log.info("模型設定: {}", settings);
+    }
+
+    /**
+     * 取得指定模型的設定
+     *
+     * @param model 模型名稱
+     * @return 模型設定，沒有設定時所有項目皆為 null
+     */
+    public ModelSettings get(String model) {
+        return model != null ? settings.getOrDefault(model, ModelSettings.DEFAULTS) : ModelSettings.DEFAULTS;
+    }
+
+    /**
+     * 是否有任何模型設定了讀取逾時，沒有時傳輸層不需要解析請求中的模型
+     */
+    boolean hasReadTimeouts() {
+        return settings.values().stream().anyMatch(s -> s.readTimeout() != null);
+    }
+}
@@ -1,6 +1,7 @@
 package com.linetranslate.bot.service.ai;
 
 import com.theokanning.openai.completion.chat.*;
+import io.reactivex.disposables.Disposable;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,8 +14,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import com.linetranslate.bot.model.UserProfile;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -22,12 +23,21 @@ public class OpenAiService implements AiService {
 
     private final com.theokanning.openai.service.OpenAiService openAiClient;
     private final String modelName;
+    private final StreamingMetrics streamingMetrics;
+    private final ModelSettingsRegistry modelSettings;
+
+    // 未設定模型上限時的最大輸出 token 數，翻譯時依輸入大小調整
+    private static final int MAX_OUTPUT_TOKENS = 4096;
+    private static final int MAX_IMAGE_OUTPUT_TOKENS = 4096;
 
     @Autowired
-    public OpenAiService(OpenAiConfig openAiConfig, @Qualifier("openAiClient") @Autowired(required = false) com.theokanning.openai.service.OpenAiService openAiClient) {
+    public OpenAiService(OpenAiConfig openAiConfig, @Qualifier("openAiClient") @Autowired(required = false) com.theokanning.openai.service.OpenAiService openAiClient,
+                         StreamingMetrics streamingMetrics, ModelSettingsRegistry modelSettings) {
         this.openAiClient = openAiClient;
         this.openAiConfig = openAiConfig;
         this.modelName = openAiConfig.getModelName();
+        this.streamingMetrics = streamingMetrics;
+        this.modelSettings = modelSettings;
 
         if (openAiClient != null) {
             log.info("OpenAI 服務初始化成功，使用模型: {}", modelName);
@@ -37,34 +47,20 @@ public class OpenAiService implements AiService {
     }
 
     @Override
-    public String translateText(String text, String targetLanguage) {
+    public String translateText(String text, String targetLanguage, String model) {
         if (openAiClient == null) {
             log.warn("OpenAI 客戶端未初始化，無法進行翻譯");
             return "翻譯失敗: OpenAI API 未正確配置";
         }
 
         try {
-            List<ChatMessage> messages = new ArrayList<>();
-
-            // 系統訊息設定翻譯任務
-            ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(),
-                    "你是一個專業的翻譯助手。請將用戶提供的文本翻譯成" + targetLanguage + "。只需返回翻譯結果，不要添加任何解釋或額外信息。");
-            messages.add(systemMessage);
-
-            // 用戶訊息包含要翻譯的文本
-            ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), text);
-            messages.add(userMessage);
-
-            // 建立請求
-            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                    .model(modelName)
-                    .messages(messages)
-                    .temperature(0.3)  // 較低的溫度使輸出更加確定性和準確
-                    .build();
-
             // 執行請求並獲取回應
-            String response = openAiClient.createChatCompletion(chatCompletionRequest)
-                    .getChoices().get(0).getMessage().getContent();
+            ChatCompletionChoice choice = openAiClient.createChatCompletion(buildTranslationRequest(text, targetLanguage, model))
+                    .getChoices().get(0);
+            if (isTruncated(choice.getFinishReason(), "翻譯")) {
+                return "翻譯失敗: " + AiService.TRUNCATED_REASON;
+            }
+            String response = choice.getMessage().getContent();
 
             return response.trim();
         } catch (Exception e) {
@@ -74,50 +70,183 @@ public class OpenAiService implements AiService {
     }
 
     @Override
-    public String processImage(String prompt, String imageUrl) {
+    public String translateTextStreaming(String text, String targetLanguage, String model, Consumer<String> onDelta) {
         if (openAiClient == null) {
-            log.warn("OpenAI 客戶端未初始化，無法處理圖片");
-            return "處理失敗: OpenAI API 未正確配置";
+            log.warn("OpenAI 客戶端未初始化，無法進行翻譯");
+            return "翻譯失敗: OpenAI API 未正確配置";
         }
 
+        ChatCompletionRequest request = buildTranslationRequest(text, targetLanguage, model);
+        StreamingTextAssembler assembler = streamingMetrics.start(getProviderName(), request.getModel(), onDelta);
         try {
-            List<ChatMessage> messages = new ArrayList<>();
+            // 每個串流片段的 delta 只包含新增的文字
+            openAiClient.streamChatCompletion(request)
+                    .blockingForEach(chunk -> appendChunk(assembler, chunk, "翻譯"));
+
+            if (!assembler.hasContent()) {
+                assembler.fail();
+                return "翻譯失敗: OpenAI 串流沒有返回內容";
+            }
+            return completeStream(assembler, "翻譯");
+        } catch (Exception e) {
+            assembler.fail();
+            log.error("OpenAI 串流翻譯失敗: {}", e.getMessage());
+            return "翻譯失敗: " + e.getMessage();
+        }
+    }
 
-            // 系統訊息設定OCR任務
-            ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(),
-                    "你是一個專業的OCR助手。請識別並提取圖片中的所有文字。只需返回文字內容，不要添加任何解釋或說明。");
-            messages.add(systemMessage);
+    @Override
+    public CompletableFuture<String> translateTextAsync(String text, String targetLanguage, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法進行翻譯");
+            return CompletableFuture.completedFuture("翻譯失敗: OpenAI API 未正確配置");
+        }
+        return completeAsync(buildTranslationRequest(text, targetLanguage, model), "翻譯");
+    }
 
-            // 用戶訊息包含提示
-            ChatMessage promptMessage = new ChatMessage(ChatMessageRole.USER.value(), prompt);
-            messages.add(promptMessage);
+    @Override
+    public CompletableFuture<String> detectAndTranslateAsync(String text, Map<String, String> targetRules,
+                                                             String otherTarget, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法進行翻譯");
+            return CompletableFuture.completedFuture("翻譯失敗: OpenAI API 未正確配置");
+        }
+        return completeAsync(buildTranslationRequest(AiService.detectAndTranslateInstruction(text, targetRules, otherTarget),
+                text, AiService.widestTargetLanguage(targetRules, otherTarget), model), "翻譯");
+    }
 
-            // 創建包含圖片URL的消息
-            List<MessageContent> contents = new ArrayList<>();
-            contents.add(new MessageContent(ContentType.TEXT.value(), prompt));
+    @Override
+    public CompletableFuture<String> translateBatchAsync(String textsJson, String targetLanguage, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法進行翻譯");
+            return CompletableFuture.completedFuture("翻譯失敗: OpenAI API 未正確配置");
+        }
+        return completeAsync(buildTranslationRequest(
+                AiService.batchTranslationInstruction(textsJson, targetLanguage), textsJson, targetLanguage, model), "翻譯");
+    }
 
-            Map<String, String> imageUrlMap = new HashMap<>();
-            imageUrlMap.put("url", imageUrl);
+    /**
+     * 非同步執行對話請求
+     * 串流端點由 OkHttp enqueue 驅動，等待與接收回應期間不佔用呼叫者執行緒；
+     * 失敗時以「{operation}失敗」開頭的錯誤訊息正常完成，Future 被取消時停止接收串流
+     *
+     * @param request 對話請求
+     * @param operation 操作名稱，用於錯誤訊息，例如「翻譯」
+     * @return 完成時包含回應文字
+     */
+    private CompletableFuture<String> completeAsync(ChatCompletionRequest request, String operation) {
+        StreamingTextAssembler assembler = streamingMetrics.start(getProviderName(), request.getModel(), null);
+        CompletableFuture<String> future = new CompletableFuture<>();
+
+        Disposable subscription = openAiClient.streamChatCompletion(request).subscribe(
+                chunk -> appendChunk(assembler, chunk, operation),
+                error -> {
+                    assembler.fail();
+                    log.error("OpenAI {}失敗: {}", operation, error.getMessage());
+                    future.complete(operation + "失敗: " + error.getMessage());
+                },
+                () -> {
+                    if (!assembler.hasContent()) {
+                        assembler.fail();
+                        future.complete(operation + "失敗: OpenAI 串流沒有返回內容");
+                        return;
+                    }
+                    future.complete(completeStream(assembler, operation));
+                });
+
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                subscription.dispose();
+            }
+        });
+        return future;
+    }
 
-            Map<String, Object> imageMap = new HashMap<>();
-            imageMap.put("image_url", imageUrlMap);
+    /**
+     * 每個串流片段的 delta 只包含新增的文字
+     */
+    private static void appendChunk(StreamingTextAssembler assembler, ChatCompletionChunk chunk, String operation) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return;
+        }
+        ChatCompletionChoice choice = chunk.getChoices().get(0);
+        if (choice.getMessage() != null) {
+            assembler.append(choice.getMessage().getContent());
+        }
+        // 最後一個片段帶有結束原因
+        if (isTruncated(choice.getFinishReason(), operation)) {
+            assembler.markTruncated();
+        }
+    }
+
+    /**
+     * 串流正常結束，輸出被截斷時返回錯誤訊息，避免不完整的結果被快取或記錄為成功
+     */
+    private static String completeStream(StreamingTextAssembler assembler, String operation) {
+        String result = assembler.complete();
+        return assembler.isTruncated() ? operation + "失敗: " + AiService.TRUNCATED_REASON : result;
+    }
+
+    /**
+     * 結束原因為 length 表示輸出達到 max_tokens 被截斷
+     */
+    private static boolean isTruncated(String finishReason, String operation) {
+        if ("length".equals(finishReason)) {
+            log.warn("OpenAI {}結果達到輸出 token 上限，以失敗處理", operation);
+            return true;
+        }
+        return false;
+    }
 
-            contents.add(new MessageContent(ContentType.IMAGE_URL.value(), imageMap));
+    /**
+     * 建立翻譯請求
+     */
+    private ChatCompletionRequest buildTranslationRequest(String text, String targetLanguage, String model) {
+        return buildTranslationRequest("請將用戶提供的文本翻譯成" + targetLanguage + "。只需返回翻譯結果，不要添加任何解釋或額外信息。"
+                + AiService.placeholderInstruction(text), text, targetLanguage, model);
+    }
 
-            ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), contents.toString());
-            messages.add(userMessage);
+    /**
+     * 建立翻譯請求，instruction 為系統訊息中的任務說明，單筆與批次翻譯共用相同的翻譯設定
+     */
+    private ChatCompletionRequest buildTranslationRequest(String instruction, String text, String targetLanguage, String model) {
+        List<ChatMessage> messages = new ArrayList<>();
+
+        // 系統訊息設定翻譯任務
+        ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(), "你是一個專業的翻譯助手。" + instruction);
+        messages.add(systemMessage);
+
+        // 用戶訊息包含要翻譯的文本
+        ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), text);
+        messages.add(userMessage);
+
+        // 建立請求
+        String actualModel = resolve(model);
+        ModelSettings settings = modelSettings.get(actualModel);
+        return ChatCompletionRequest.builder()
+                .model(actualModel)
+                .messages(messages)
+                .temperature(settings.temperatureOr(0.3))  // 較低的溫度使輸出更加確定性和準確
+                .maxTokens(TokenEstimator.outputTokenLimit(getProviderName(), text, targetLanguage,
+                        settings.maxOutputTokensOr(MAX_OUTPUT_TOKENS)))
+                .build();
+    }
 
-            // 建立請求
-            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                    .model(modelName)
-                    .messages(messages)
-                    .temperature(0.3)
-                    .maxTokens(1024)
-                    .build();
+    @Override
+    public String processImage(String prompt, String imageUrl, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法處理圖片");
+            return "處理失敗: OpenAI API 未正確配置";
+        }
 
+        try {
             // 執行請求並獲取回應
-            String response = openAiClient.createChatCompletion(chatCompletionRequest)
-                    .getChoices().get(0).getMessage().getContent();
+            ChatCompletionChoice choice = openAiClient.createChatCompletion(buildImageRequest(prompt, imageUrl, model))
+                    .getChoices().get(0);
+            if (isTruncated(choice.getFinishReason(), "圖片處理")) {
+                return "圖片處理失敗: " + AiService.TRUNCATED_REASON;
+            }
+            String response = choice.getMessage().getContent();
 
             return response.trim();
         } catch (Exception e) {
@@ -126,6 +255,55 @@ public class OpenAiService implements AiService {
         }
     }
 
+    @Override
+    public CompletableFuture<String> processImageAsync(String prompt, String imageUrl, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法處理圖片");
+            return CompletableFuture.completedFuture("處理失敗: OpenAI API 未正確配置");
+        }
+        return completeAsync(buildImageRequest(prompt, imageUrl, model), "圖片處理");
+    }
+
+    /**
+     * 建立圖片處理請求
+     */
+    private ChatCompletionRequest buildImageRequest(String prompt, String imageUrl, String model) {
+        List<ChatMessage> messages = new ArrayList<>();
+
+        // 系統訊息設定OCR任務
+        ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(),
+                "你是一個專業的OCR助手。請識別並提取圖片中的所有文字。只需返回文字內容，不要添加任何解釋或說明。");
+        messages.add(systemMessage);
+
+        // 用戶訊息包含提示
+        ChatMessage promptMessage = new ChatMessage(ChatMessageRole.USER.value(), prompt);
+        messages.add(promptMessage);
+
+        // 創建包含圖片URL的消息
+        List<MessageContent> contents = new ArrayList<>();
+        contents.add(new MessageContent(ContentType.TEXT.value(), prompt));
+
+        Map<String, String> imageUrlMap = new HashMap<>();
+        imageUrlMap.put("url", imageUrl);
+
+        Map<String, Object> imageMap = new HashMap<>();
+        imageMap.put("image_url", imageUrlMap);
+
+        contents.add(new MessageContent(ContentType.IMAGE_URL.value(), imageMap));
+
+        ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), contents.toString());
+        messages.add(userMessage);
+
+        // 建立請求
+        String actualModel = resolve(model);
+        return ChatCompletionRequest.builder()
+                .model(actualModel)
+                .messages(messages)
+                .temperature(0.3)
+                .maxTokens(modelSettings.get(actualModel).maxOutputTokensOr(MAX_IMAGE_OUTPUT_TOKENS))
+                .build();
+    }
+
     @Override
     public String getProviderName() {
         return "openai";
@@ -139,48 +317,37 @@ public class OpenAiService implements AiService {
     }
     
     /**
-     * 根據用戶資料取得模型名稱
-     * 
-     * @param userProfile 用戶資料
+     * 取得用戶偏好的模型，未指定或不在可用模型列表中時使用預設模型
+     *
+     * @param preferredModel 用戶偏好的 OpenAI 模型，可為 null
      * @return 模型名稱
      */
-    public String getModelName(UserProfile userProfile) {
-        // 如果用戶有指定 OpenAI 模型，則使用用戶指定的模型
-        String userModel = userProfile.getOpenaiPreferredModel();
-        if (userModel != null && !userModel.isEmpty() && openAiConfig.getAvailableModels().contains(userModel)) {
-            return userModel;
+    public String resolveModel(String preferredModel) {
+        if (preferredModel != null && !preferredModel.isEmpty() && openAiConfig.getAvailableModels().contains(preferredModel)) {
+            return preferredModel;
         }
         return openAiConfig.getModelName();
     }
+
+    private String resolve(String model) {
+        return model != null ? model : modelName;
+    }
+
     @Override
-    public String generateText(String prompt) {
+    public String generateText(String prompt, String model) {
         if (openAiClient == null) {
             log.warn("OpenAI 客戶端未初始化，無法生成文本");
             return "生成失敗: OpenAI API 未正確配置";
         }
 
         try {
-            List<ChatMessage> messages = new ArrayList<>();
-
-            // 系統訊息設定文本生成任務
-            ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(),
-                    "你是一個專業的語言助手。請根據用戶的提示生成回應。");
-            messages.add(systemMessage);
-
-            // 用戶訊息包含提示
-            ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), prompt);
-            messages.add(userMessage);
-
-            // 建立請求
-            ChatCompletionRequest chatCompletionRequest = ChatCompletionRequest.builder()
-                    .model(modelName)
-                    .messages(messages)
-                    .temperature(0.7)  // 適中的溫度使輸出更加多樣化
-                    .build();
-
             // 執行請求並獲取回應
-            String response = openAiClient.createChatCompletion(chatCompletionRequest)
-                    .getChoices().get(0).getMessage().getContent();
+            ChatCompletionChoice choice = openAiClient.createChatCompletion(buildGenerateRequest(prompt, model))
+                    .getChoices().get(0);
+            if (isTruncated(choice.getFinishReason(), "文本生成")) {
+                return "文本生成失敗: " + AiService.TRUNCATED_REASON;
+            }
+            String response = choice.getMessage().getContent();
 
             return response.trim();
         } catch (Exception e) {
@@ -189,6 +356,40 @@ public class OpenAiService implements AiService {
         }
     }
 
+    @Override
+    public CompletableFuture<String> generateTextAsync(String prompt, String model) {
+        if (openAiClient == null) {
+            log.warn("OpenAI 客戶端未初始化，無法生成文本");
+            return CompletableFuture.completedFuture("生成失敗: OpenAI API 未正確配置");
+        }
+        return completeAsync(buildGenerateRequest(prompt, model), "文本生成");
+    }
+
+    /**
+     * 建立文本生成請求
+     */
+    private ChatCompletionRequest buildGenerateRequest(String prompt, String model) {
+        List<ChatMessage> messages = new ArrayList<>();
+
+        // 系統訊息設定文本生成任務
+        ChatMessage systemMessage = new ChatMessage(ChatMessageRole.SYSTEM.value(),
+                "你是一個專業的語言助手。請根據用戶的提示生成回應。");
+        messages.add(systemMessage);
+
+        // 用戶訊息包含提示
+        ChatMessage userMessage = new ChatMessage(ChatMessageRole.USER.value(), prompt);
+        messages.add(userMessage);
+
+        // 建立請求
+        String actualModel = resolve(model);
+        return ChatCompletionRequest.builder()
+                .model(actualModel)
+                .messages(messages)
+                .temperature(0.7)  // 適中的溫度使輸出更加多樣化
+                .maxTokens(modelSettings.get(actualModel).maxOutputTokens())
+                .build();
+    }
+
     // 內部類用於處理消息內容
     private static class MessageContent {
         private String type;
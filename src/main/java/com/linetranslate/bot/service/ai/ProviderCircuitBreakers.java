@@ -0,0 +1,91 @@
+package com.linetranslate.bot.service.ai;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 依提供者與模型管理斷路器，AiServiceFactory 依斷路器狀態選擇提供者
+ */
+@Component
+@Slf4j
+public class ProviderCircuitBreakers {
+
+    private final boolean enabled;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenProbes;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    public ProviderCircuitBreakers(
+            @Value("${app.ai.circuit-breaker.enabled:true}") boolean enabled,
+            @Value("${app.ai.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${app.ai.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${app.ai.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${app.ai.circuit-breaker.open-duration:30s}") Duration openDuration,
+            @Value("${app.ai.circuit-breaker.half-open-probes:2}") int halfOpenProbes) {
+        this.enabled = enabled;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenProbes = halfOpenProbes;
+
+        log.info("AI 斷路器啟用: {}, 視窗: {} 次, 失敗率門檻: {}, 開啟時間: {}",
+                enabled, windowSize, failureRateThreshold, openDuration);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取得指定提供者與模型的斷路器
+     */
+    public CircuitBreaker get(String provider, String model) {
+        return breakers.computeIfAbsent(provider + "/" + model, name -> new CircuitBreaker(
+                name, windowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenProbes));
+    }
+
+    /**
+     * AI 服務目前是否可以接收流量，停用斷路器時永遠可用
+     */
+    public boolean isAvailable(AiService service) {
+        return !enabled || get(service.getProviderName(), service.getModelName()).isAvailable();
+    }
+
+    /**
+     * 以斷路器包裝 AI 服務，依每次呼叫實際使用的模型記錄結果
+     */
+    public AiService protect(AiService service) {
+        if (!enabled) {
+            return service;
+        }
+        return new CircuitBreakingAiService(service, this);
+    }
+
+    /**
+     * 所有斷路器的狀態，用於管理員狀態查詢
+     */
+    public String getStatusSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("斷路器: ").append(enabled ? "已啟用" : "已停用");
+        if (breakers.isEmpty()) {
+            sb.append("\n尚無呼叫記錄");
+        }
+        for (CircuitBreaker breaker : breakers.values()) {
+            sb.append("\n• ").append(breaker.getName()).append(": ").append(breaker.getSummary());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,354 @@
+package com.linetranslate.bot.service.ai;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * AI 提供者的客戶端速率限制
+ * 依提供者、模型與 API 金鑰各自維護一個令牌桶，同時限制每分鐘請求數與 token 數。
+ * 以 OkHttp 攔截器的形式加在共用傳輸層上，額度不足的請求先預約額度再等待（不持有令牌桶的鎖），
+ * 並依回應的 Retry-After 與 x-ratelimit-* 標頭調整本地額度
+ */
+@Component
+@Slf4j
+public class ProviderRateLimiter implements MetricsReporter {
+
+    private static final Pattern DURATION_PART_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+    /** 本地排隊逾時的錯誤訊息，斷路器依此區分提供者回應的 429 */
+    static final String QUEUE_TIMEOUT_MESSAGE = "本地速率限制排隊逾時";
+
+    private static final ThreadLocal<LongAdder> QUEUE_WAIT_SINK = new ThreadLocal<>();
+
+    private static final long CANCEL_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final boolean enabled;
+    private final Duration maxQueueWait;
+    private final Duration defaultRetryAfter;
+    private final int maxRetries;
+    private final int expectedOutputTokens;
+    private final Map<String, int[]> providerLimits = new HashMap<>();
+    private final Map<String, int[]> modelLimits = new HashMap<>();
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentSkipListMap<>();
+    private final Map<Call, LongAdder> queueWaitSinks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    @Autowired
+    public ProviderRateLimiter(
+            @Value("${app.ai.rate-limit.enabled:true}") boolean enabled,
+            @Value("${app.ai.rate-limit.max-queue-wait:10s}") Duration maxQueueWait,
+            @Value("${app.ai.rate-limit.default-retry-after:2s}") Duration defaultRetryAfter,
+            @Value("${app.ai.rate-limit.max-retries:1}") int maxRetries,
+            @Value("${app.ai.rate-limit.expected-output-tokens:256}") int expectedOutputTokens,
+            @Value("${app.ai.rate-limit.openai.requests-per-minute:500}") int openAiRequestsPerMinute,
+            @Value("${app.ai.rate-limit.openai.tokens-per-minute:30000}") int openAiTokensPerMinute,
+            @Value("${app.ai.rate-limit.gemini.requests-per-minute:360}") int geminiRequestsPerMinute,
+            @Value("${app.ai.rate-limit.gemini.tokens-per-minute:120000}") int geminiTokensPerMinute,
+            @Value("${app.ai.rate-limit.model-limits:}") String modelLimitsString) {
+        this.enabled = enabled;
+        this.maxQueueWait = maxQueueWait;
+        this.defaultRetryAfter = defaultRetryAfter;
+        this.maxRetries = maxRetries;
+        this.expectedOutputTokens = expectedOutputTokens;
+        providerLimits.put("openai", new int[] {openAiRequestsPerMinute, openAiTokensPerMinute});
+        providerLimits.put("gemini", new int[] {geminiRequestsPerMinute, geminiTokensPerMinute});
+
+        // 格式: 模型=每分鐘請求數/每分鐘 token 數，以逗號分隔，例如 gpt-4o=500/30000
+        for (String entry : modelLimitsString.split(",")) {
+            String[] parts = entry.trim().split("[=/]");
+            if (parts.length == 3) {
+                modelLimits.put(parts[0].trim(), new int[] {Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim())});
+            }
+        }
+
+        log.info("AI 速率限制啟用: {}, 最長排隊: {}, 模型設定: {}", enabled, maxQueueWait, modelLimits.keySet());
+    }
+
+    /**
+     * 建立指定提供者的速率限制攔截器，需在加入授權標頭的攔截器之後執行
+     *
+     * @param provider AI 提供者名稱
+     * @return OkHttp 攔截器
+     */
+    public Interceptor interceptorFor(String provider) {
+        return chain -> enabled ? intercept(provider, chain) : chain.proceed(chain.request());
+    }
+
+    private Response intercept(String provider, Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        TokenBucket bucket = bucket(provider, extractModel(request), apiKeyId(provider, request));
+        int estimatedTokens = estimateTokens(request);
+        long deadlineNanos = System.nanoTime() + maxQueueWait.toNanos();
+
+        for (int attempt = 0; ; attempt++) {
+            acquire(bucket, estimatedTokens, deadlineNanos, chain.call());
+            Response response = chain.proceed(request);
+            long retryAfterNanos = adapt(bucket, response);
+
+            // 429 且 Retry-After 在排隊期限內時，等待後重試，不把錯誤直接回給用戶
+            if (response.code() != 429 || attempt >= maxRetries
+                    || System.nanoTime() + retryAfterNanos > deadlineNanos) {
+                return response;
+            }
+            response.close();
+            bucket.retries.increment();
+            log.info("{} 回應 429，{}ms 後重試", bucket.getName(), retryAfterNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * 預約額度並在令牌桶的鎖外等待，等待期間請求被取消時歸還額度並中止
+     */
+    private void acquire(TokenBucket bucket, int tokens, long deadlineNanos, Call call) throws IOException {
+        long startNanos = System.nanoTime();
+        long delayNanos;
+        try {
+            delayNanos = bucket.reserve(tokens, deadlineNanos);
+        } catch (TimeoutException e) {
+            // 請求沒有送出，使用獨立的訊息，避免斷路器歸類為提供者的 429
+            throw new IOException(QUEUE_TIMEOUT_MESSAGE + ": " + e.getMessage());
+        }
+
+        try {
+            // 分段等待，Call.cancel() 不會中斷執行緒，需要自行檢查
+            long readyNanos = startNanos + delayNanos;
+            for (long remaining = delayNanos; remaining > 0; remaining = readyNanos - System.nanoTime()) {
+                if (call.isCanceled()) {
+                    bucket.cancel(tokens);
+                    throw new IOException("Canceled");
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, CANCEL_CHECK_INTERVAL_NANOS));
+            }
+        } catch (InterruptedException e) {
+            bucket.cancel(tokens);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待速率限制額度時被中斷");
+        }
+
+        long waited = System.nanoTime() - startNanos;
+        bucket.recordWait(waited);
+        LongAdder sink = queueWaitSinks.get(call);
+        if (sink != null) {
+            sink.add(waited);
+        }
+        if (waited > TimeUnit.MILLISECONDS.toNanos(100)) {
+            log.debug("{} 排隊等待速率限制 {}ms", bucket.getName(), waited / 1_000_000);
+        }
+    }
+
+    /**
+     * 執行 action，期間在目前執行緒建立的 AI 請求排隊等待額度的時間會累計到 sink
+     * 非同步請求在其他執行緒等待也會計入；由其他執行緒建立的請求（例如批次與對沖請求）不會計入
+     *
+     * @param sink 累計等待時間（奈秒）
+     * @param action 發出 AI 請求的動作
+     * @return action 的結果
+     */
+    public <T> T trackQueueWait(LongAdder sink, Supplier<T> action) {
+        LongAdder previous = QUEUE_WAIT_SINK.get();
+        QUEUE_WAIT_SINK.set(sink);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                QUEUE_WAIT_SINK.set(previous);
+            } else {
+                QUEUE_WAIT_SINK.remove();
+            }
+        }
+    }
+
+    /**
+     * 建立 HTTP 請求時呼叫（在建立請求的執行緒中），記錄請求的等待時間要累計到哪裡
+     */
+    void onCallCreated(Call call) {
+        LongAdder sink = QUEUE_WAIT_SINK.get();
+        if (sink != null) {
+            queueWaitSinks.put(call, sink);
+        }
+    }
+
+    /**
+     * 依回應標頭調整額度
+     *
+     * @return 429 時建議的等待時間（奈秒），其他情況為 0
+     */
+    private long adapt(TokenBucket bucket, Response response) {
+        bucket.syncRemaining(parseLong(response.header("x-ratelimit-remaining-requests")),
+                parseLong(response.header("x-ratelimit-remaining-tokens")));
+
+        if (response.code() == 429) {
+            bucket.rateLimited.increment();
+            long retryAfterNanos = parseRetryAfter(response);
+            bucket.pauseFor(retryAfterNanos);
+            return retryAfterNanos;
+        }
+
+        // 請求額度用完時，暫停到提供者回報的重置時間
+        if (parseLong(response.header("x-ratelimit-remaining-requests")) == 0) {
+            bucket.pauseFor(parseDuration(response.header("x-ratelimit-reset-requests")));
+        }
+        return 0;
+    }
+
+    private long parseRetryAfter(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException e) {
+                // HTTP 日期格式，使用預設值
+            }
+        }
+        long resetNanos = parseDuration(response.header("x-ratelimit-reset-requests"));
+        return resetNanos > 0 ? resetNanos : defaultRetryAfter.toNanos();
+    }
+
+    /**
+     * 解析 OpenAI 重置時間格式，例如 20ms、1s、6m0s
+     */
+    private static long parseDuration(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long nanos = 0;
+        Matcher matcher = DURATION_PART_PATTERN.matcher(value);
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            nanos += (long) switch (matcher.group(2)) {
+                case "ms" -> amount * 1_000_000;
+                case "s" -> amount * 1_000_000_000;
+                case "m" -> amount * 60_000_000_000L;
+                default -> amount * 3_600_000_000_000L;
+            };
+        }
+        return nanos;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 以請求內容長度粗略估算 token 數（約 4 bytes 一個 token），加上預期的輸出 token 數
+     */
+    private int estimateTokens(Request request) {
+        long contentLength = -1;
+        try {
+            contentLength = request.body() != null ? request.body().contentLength() : 0;
+        } catch (IOException e) {
+            // 無法取得長度時只計算輸出
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, contentLength) / 4 + expectedOutputTokens);
+    }
+
+    /**
+     * 請求使用的模型，由建立請求的服務以 tag 附加，攔截器不需要讀取請求內容
+     *
+     * @param model 模型名稱
+     */
+    record ModelTag(String model) {
+    }
+
+    /**
+     * 取得請求的模型名稱
+     * Gemini 的請求附有 ModelTag；OpenAI 的請求由 Retrofit 建立，從呼叫參數中的對話請求取得
+     */
+    static String extractModel(Request request) {
+        ModelTag tag = request.tag(ModelTag.class);
+        if (tag != null) {
+            return tag.model();
+        }
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null) {
+            for (Object argument : invocation.arguments()) {
+                if (argument instanceof ChatCompletionRequest chatRequest && chatRequest.getModel() != null) {
+                    return chatRequest.getModel();
+                }
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * API 金鑰的識別碼，只保留最後 4 個字元
+     */
+    private static String apiKeyId(String provider, Request request) {
+        String key = "gemini".equals(provider)
+                ? request.url().queryParameter("key")
+                : request.header("Authorization");
+        if (key == null || key.length() < 4) {
+            return "default";
+        }
+        return "…" + key.substring(key.length() - 4);
+    }
+
+    private TokenBucket bucket(String provider, String model, String keyId) {
+        return buckets.computeIfAbsent(provider + "/" + model + "/" + keyId, name -> {
+            int[] limits = modelLimits.getOrDefault(model, providerLimits.getOrDefault(provider, new int[] {60, 60000}));
+            return new TokenBucket(name, limits[0], limits[1]);
+        });
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "AI 速率限制";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用")
+          .append(", 最長排隊: ").append(maxQueueWait.toMillis()).append("ms");
+        for (TokenBucket bucket : buckets.values()) {
+            long acquired = bucket.acquired.sum();
+            sb.append("\n").append(bucket.getName()).append(": ").append(bucket.formatAvailable());
+            sb.append("\n  請求 ").append(acquired)
+              .append(", 排隊 ").append(bucket.queued.sum());
+            if (acquired > 0) {
+                sb.append(String.format(", 平均等待 %.1f ms", bucket.waitNanos.sum() / 1_000_000.0 / acquired))
+                  .append(String.format(", 最長 %.1f ms", bucket.maxWaitNanos.get() / 1_000_000.0));
+            }
+            sb.append(", 逾時 ").append(bucket.timeouts.sum())
+              .append(", 429 ").append(bucket.rateLimited.sum())
+              .append(", 重試 ").append(bucket.retries.sum());
+            long pauseNanos = bucket.getPauseRemainingNanos();
+            if (pauseNanos > 0) {
+                sb.append(", 暫停中 ").append(pauseNanos / 1_000_000).append("ms");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package com.linetranslate.bot.service.ai;
+
+/**
+ * 模型路由的決策結果
+ *
+ * @param model 實際使用的模型
+ * @param baselineModel 未經路由時會使用的模型（用戶偏好或預設模型）
+ * @param reason 選擇該模型的原因，未啟用路由時為 null
+ * @param estimatedCost 以實際模型估算的費用 (美元)
+ * @param baselineEstimatedCost 以原本模型估算的費用 (美元)
+ */
+public record RoutingDecision(String model, String baselineModel, String reason,
+                              double estimatedCost, double baselineEstimatedCost) {
+
+    public static final String USER_PREFERENCE = "user-preference";
+    public static final String SHORT_TEXT = "short-text";
+    public static final String LONG_TEXT = "long-text";
+    public static final String IMAGE_TEXT = "image-text";
+    public static final String LANGUAGE_PAIR = "language-pair";
+    public static final String LATENCY_SLO = "latency-slo";
+    public static final String BUDGET = "budget";
+    public static final String DEFAULT = "default";
+
+    static RoutingDecision unrouted(String model) {
+        return new RoutingDecision(model, model, null, 0.0, 0.0);
+    }
+
+    /**
+     * 路由結果是否與原本的模型不同
+     */
+    public boolean isRerouted() {
+        return !model.equals(baselineModel);
+    }
+}
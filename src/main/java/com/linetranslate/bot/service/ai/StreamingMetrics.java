@@ -0,0 +1,97 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+/**
+ * 串流回應的延遲統計，依提供者與模型分別記錄首個 token 時間 (TTFT) 與輸出速度
+ */
+@Component
+public class StreamingMetrics implements MetricsReporter {
+
+    private final Map<String, ModelStats> statsByModel = new ConcurrentSkipListMap<>();
+
+    /**
+     * 開始一次串流呼叫
+     *
+     * @param provider AI 提供者
+     * @param model 模型名稱
+     * @param listener 每收到一個文字片段時呼叫，可為 null
+     * @return 該次呼叫使用的文字組裝器
+     */
+    public StreamingTextAssembler start(String provider, String model, Consumer<String> listener) {
+        return new StreamingTextAssembler(provider, model, listener, this);
+    }
+
+    void record(String provider, String model, long ttftNanos, long totalNanos, int completionTokens) {
+        ModelStats stats = stats(provider, model);
+        stats.calls.increment();
+        if (ttftNanos >= 0) {
+            stats.ttftCount.increment();
+            stats.ttftNanos.add(ttftNanos);
+            stats.maxTtftNanos.accumulateAndGet(ttftNanos, Math::max);
+        }
+        // 輸出速度以首個 token 之後的生成時間計算
+        long generationNanos = ttftNanos >= 0 ? totalNanos - ttftNanos : 0;
+        if (completionTokens > 1 && generationNanos > 0) {
+            stats.generatedTokens.add(completionTokens);
+            stats.generationNanos.add(generationNanos);
+        }
+    }
+
+    void recordFailure(String provider, String model) {
+        stats(provider, model).failures.increment();
+    }
+
+    private ModelStats stats(String provider, String model) {
+        return statsByModel.computeIfAbsent(provider + "/" + model, key -> new ModelStats());
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "串流延遲";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        if (statsByModel.isEmpty()) {
+            return "尚無串流呼叫";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        statsByModel.forEach((key, stats) -> {
+            long ttftCount = stats.ttftCount.sum();
+            double generationSeconds = stats.generationNanos.sum() / 1_000_000_000.0;
+            sb.append(key).append(": ").append(stats.calls.sum()).append(" 次");
+            if (stats.failures.sum() > 0) {
+                sb.append(", 失敗 ").append(stats.failures.sum());
+            }
+            if (ttftCount > 0) {
+                sb.append(String.format(", TTFT 平均 %.0f ms / 最長 %.0f ms",
+                        stats.ttftNanos.sum() / 1_000_000.0 / ttftCount, stats.maxTtftNanos.get() / 1_000_000.0));
+            }
+            if (generationSeconds > 0) {
+                sb.append(String.format(", %.1f tokens/s", stats.generatedTokens.sum() / generationSeconds));
+            }
+            sb.append("\n");
+        });
+        return sb.toString().trim();
+    }
+
+    private static class ModelStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder ttftCount = new LongAdder();
+        private final LongAdder ttftNanos = new LongAdder();
+        private final AtomicLong maxTtftNanos = new AtomicLong();
+        private final LongAdder generatedTokens = new LongAdder();
+        private final LongAdder generationNanos = new LongAdder();
+    }
+}
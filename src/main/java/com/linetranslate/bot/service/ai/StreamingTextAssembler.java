@@ -0,0 +1,112 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.function.Consumer;
+
+/**
+ * 串流回應的增量文字組裝器
+ * 依序累積模型回傳的文字片段，並記錄首個片段到達時間 (TTFT) 與輸出 token 數，
+ * 完成時將延遲數據回報給 StreamingMetrics
+ */
+public class StreamingTextAssembler {
+
+    private final String provider;
+    private final String model;
+    private final Consumer<String> listener;
+    private final StreamingMetrics metrics;
+    private final StringBuilder text = new StringBuilder();
+    private final long startNanos = System.nanoTime();
+
+    private long firstDeltaNanos = -1;
+    private int deltaCount;
+    private int completionTokens = -1;
+    private boolean completed;
+    private boolean truncated;
+
+    StreamingTextAssembler(String provider, String model, Consumer<String> listener, StreamingMetrics metrics) {
+        this.provider = provider;
+        this.model = model;
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 加入一個文字片段並通知監聽者
+     *
+     * @param delta 模型新輸出的文字，空白片段會被忽略
+     */
+    public void append(String delta) {
+        if (delta == null || delta.isEmpty()) {
+            return;
+        }
+        if (firstDeltaNanos < 0) {
+            firstDeltaNanos = System.nanoTime();
+        }
+        deltaCount++;
+        text.append(delta);
+        if (listener != null) {
+            listener.accept(delta);
+        }
+    }
+
+    /**
+     * 設定提供者回報的輸出 token 數，未設定時以片段數估算
+     *
+     * @param completionTokens 輸出 token 數
+     */
+    public void setCompletionTokens(int completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    /**
+     * 標記輸出因達到 token 上限而被截斷
+     */
+    public void markTruncated() {
+        this.truncated = true;
+    }
+
+    /**
+     * 輸出是否被截斷，被截斷的結果不應作為成功的翻譯
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * 串流結束，回報延遲數據並返回完整文字
+     *
+     * @return 組裝完成的文字
+     */
+    public String complete() {
+        if (!completed) {
+            completed = true;
+            metrics.record(provider, model, getTimeToFirstTokenNanos(), System.nanoTime() - startNanos, getCompletionTokens());
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * 串流失敗，只記錄失敗次數
+     */
+    public void fail() {
+        if (!completed) {
+            completed = true;
+            metrics.recordFailure(provider, model);
+        }
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public boolean hasContent() {
+        return text.length() > 0;
+    }
+
+    long getTimeToFirstTokenNanos() {
+        return firstDeltaNanos < 0 ? -1 : firstDeltaNanos - startNanos;
+    }
+
+    int getCompletionTokens() {
+        return completionTokens >= 0 ? completionTokens : deltaCount;
+    }
+}
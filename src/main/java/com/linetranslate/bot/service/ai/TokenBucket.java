@@ -0,0 +1,180 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同時限制每分鐘請求數與每分鐘 token 數的令牌桶
+ * 兩種額度都以固定速率連續補充，上限為一分鐘的用量。
+ * 請求先預約額度再於鎖外等待，依預約順序取得額度，超過期限仍無法取得額度時放棄
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final String name;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private volatile long pausedUntilNanos;
+
+    final LongAdder acquired = new LongAdder();
+    final LongAdder queued = new LongAdder();
+    final LongAdder waitNanos = new LongAdder();
+    final AtomicLong maxWaitNanos = new AtomicLong();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder rateLimited = new LongAdder();
+    final LongAdder retries = new LongAdder();
+
+    TokenBucket(String name, int requestsPerMinute, int tokensPerMinute) {
+        this.name = name;
+        this.requestCapacity = requestsPerMinute;
+        this.tokenCapacity = tokensPerMinute;
+        this.availableRequests = requestsPerMinute;
+        this.availableTokens = tokensPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * 預約一個請求與指定數量的 token 額度，立即扣除並返回需要等待的時間
+     * 只在鎖內計算與扣除額度，等待由呼叫者在鎖外進行；額度可以暫時為負數，
+     * 之後的預約會依序等待更久，因此仍依到達順序取得額度
+     *
+     * @param tokens 預估使用的 token 數，超過每分鐘上限時以上限計算
+     * @param deadlineNanos 最晚等待到的 System.nanoTime()
+     * @return 發出請求前需要等待的時間（奈秒），0 表示可以立即發出
+     * @throws TimeoutException 在期限內無法取得額度，此時不扣除額度
+     */
+    long reserve(int tokens, long deadlineNanos) throws TimeoutException {
+        double tokensNeeded = Math.min(tokens, tokenCapacity);
+        long delayNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            delayNanos = Math.max(0, nanosUntilAvailable(tokensNeeded, now));
+            if (now + delayNanos - deadlineNanos > 0) {
+                timeouts.increment();
+                throw new TimeoutException(name + " 排隊超過期限");
+            }
+            availableRequests -= 1;
+            availableTokens -= tokensNeeded;
+        } finally {
+            lock.unlock();
+        }
+        return delayNanos;
+    }
+
+    /**
+     * 歸還尚未使用的預約額度，例如等待期間請求被取消
+     *
+     * @param tokens 預約時的 token 數
+     */
+    void cancel(int tokens) {
+        double tokensNeeded = Math.min(tokens, tokenCapacity);
+        lock.lock();
+        try {
+            availableRequests = Math.min(requestCapacity, availableRequests + 1);
+            availableTokens = Math.min(tokenCapacity, availableTokens + tokensNeeded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 記錄預約後實際等待的時間
+     *
+     * @param waitedNanos 從預約到發出請求的時間（奈秒）
+     */
+    void recordWait(long waitedNanos) {
+        acquired.increment();
+        if (waitedNanos > TimeUnit.MILLISECONDS.toNanos(1)) {
+            queued.increment();
+        }
+        waitNanos.add(waitedNanos);
+        maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+    }
+
+    /**
+     * 提供者要求暫停（例如 429 的 Retry-After），在指定時間前不發出新請求
+     */
+    void pauseFor(long nanos) {
+        long until = System.nanoTime() + nanos;
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+    }
+
+    /**
+     * 依提供者回報的剩餘額度校正本地額度，只會調低
+     *
+     * @param remainingRequests 剩餘請求數，未知時為負數
+     * @param remainingTokens 剩餘 token 數，未知時為負數
+     */
+    void syncRemaining(long remainingRequests, long remainingTokens) {
+        if (remainingRequests < 0 && remainingTokens < 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            if (remainingRequests >= 0) {
+                availableRequests = Math.min(availableRequests, remainingRequests);
+            }
+            if (remainingTokens >= 0) {
+                availableTokens = Math.min(availableTokens, remainingTokens);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getPauseRemainingNanos() {
+        return Math.max(0, pausedUntilNanos - System.nanoTime());
+    }
+
+    String formatAvailable() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            // 額度為負數表示已預約給排隊中的請求
+            return String.format("%.0f/%.0f 請求, %.0f/%.0f tokens",
+                    availableRequests, requestCapacity, availableTokens, tokenCapacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        availableRequests = Math.min(requestCapacity, availableRequests + requestCapacity * elapsed / NANOS_PER_MINUTE);
+        availableTokens = Math.min(tokenCapacity, availableTokens + tokenCapacity * elapsed / NANOS_PER_MINUTE);
+        lastRefillNanos = now;
+    }
+
+    private long nanosUntilAvailable(double tokensNeeded, long now) {
+        long delay = pausedUntilNanos - now;
+        if (availableRequests < 1) {
+            delay = Math.max(delay, (long) Math.ceil((1 - availableRequests) * NANOS_PER_MINUTE / requestCapacity));
+        }
+        if (availableTokens < tokensNeeded) {
+            delay = Math.max(delay, (long) Math.ceil((tokensNeeded - availableTokens) * NANOS_PER_MINUTE / tokenCapacity));
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,94 @@
+package com.linetranslate.bot.service.ai;
+
+import java.util.Set;
+
+import com.linetranslate.bot.util.LanguageCode;
+
+/**
+ * 依提供者粗略估算文本的 token 數
+ * 中日韓及泰文等文字每個字元約佔 1 個 token（Gemini 的詞彙表對這些文字較緊湊），
+ * 其他文字約每 4 個字元 1 個 token
+ */
+public final class TokenEstimator {
+
+    private static final double LATIN_CHARS_PER_TOKEN = 4.0;
+    private static final double OPENAI_DENSE_TOKENS_PER_CHAR = 1.0;
+    private static final double GEMINI_DENSE_TOKENS_PER_CHAR = 0.7;
+
+    /** 翻譯結果的長度可能比原文長（例如中文翻成泰文），輸出上限以輸入的倍數計算 */
+    private static final double OUTPUT_RATIO = 2.0;
+    private static final int OUTPUT_MARGIN_TOKENS = 64;
+    /** 輸出上限只限制最長長度，不影響費用；一般長度的訊息維持原本固定的 1024 */
+    private static final int MIN_OUTPUT_TOKENS = 1024;
+
+    /** 譯文以這些語言的文字書寫時，每個字元約佔 1 個 token */
+    private static final Set<String> DENSE_SCRIPT_LANGUAGES = Set.of("zh", "ja", "ko", "th");
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的 token 數
+     *
+     * @param provider AI 提供者
+     * @param text 文本
+     * @return 估算的 token 數
+     */
+    public static int estimate(String provider, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int denseChars = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            switch (Character.UnicodeScript.of(text.charAt(i))) {
+                case HAN, HIRAGANA, KATAKANA, HANGUL, THAI -> denseChars++;
+                default -> otherChars++;
+            }
+        }
+        double denseTokensPerChar = "gemini".equals(provider) ? GEMINI_DENSE_TOKENS_PER_CHAR : OPENAI_DENSE_TOKENS_PER_CHAR;
+        return (int) Math.ceil(denseChars * denseTokensPerChar + otherChars / LATIN_CHARS_PER_TOKEN);
+    }
+
+    /**
+     * 依輸入大小決定翻譯或生成的最大輸出 token 數
+     *
+     * @param provider AI 提供者
+     * @param input 輸入文本
+     * @param cap 模型允許的上限
+     * @return 最大輸出 token 數
+     */
+    public static int outputTokenLimit(String provider, String input, int cap) {
+        return outputTokenLimit(provider, input, null, cap);
+    }
+
+    /**
+     * 依輸入大小與目標語言的文字決定翻譯的最大輸出 token 數
+     * 拼音文字翻成中日韓或泰文時，譯文的 token 數可能遠超過原文，改以原文的字元數估算
+     *
+     * @param provider AI 提供者
+     * @param input 輸入文本
+     * @param targetLanguage 目標語言，未知時為 null
+     * @param cap 模型允許的上限
+     * @return 最大輸出 token 數
+     */
+    public static int outputTokenLimit(String provider, String input, String targetLanguage, int cap) {
+        double expected = estimate(provider, input);
+        if (input != null && isDenseScript(targetLanguage)) {
+            double denseTokensPerChar = "gemini".equals(provider) ? GEMINI_DENSE_TOKENS_PER_CHAR : OPENAI_DENSE_TOKENS_PER_CHAR;
+            expected = Math.max(expected, input.length() * denseTokensPerChar);
+        }
+        long sized = (long) Math.ceil(expected * OUTPUT_RATIO) + OUTPUT_MARGIN_TOKENS;
+        return (int) Math.min(cap, Math.max(MIN_OUTPUT_TOKENS, sized));
+    }
+
+    /**
+     * 目標語言是否為每個字元佔用較多 token 的文字（中日韓、泰文）
+     *
+     * @param language 語言代碼，未知時為 null
+     * @return 是否為高密度文字
+     */
+    public static boolean isDenseScript(String language) {
+        return language != null && DENSE_SCRIPT_LANGUAGES.contains(LanguageCode.of(language).getLanguage());
+    }
+}
@@ -0,0 +1,163 @@
+package com.linetranslate.bot.service.line;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.linecorp.bot.client.LineMessagingClient;
+import com.linecorp.bot.model.PushMessage;
+import com.linecorp.bot.model.ReplyMessage;
+import com.linecorp.bot.model.message.Message;
+import com.linecorp.bot.model.message.TextMessage;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+import com.linetranslate.bot.util.StripedExecutor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 非同步訊息處理與回覆
+ * webhook 收到事件後立即返回，實際處理在專用執行緒池中進行，
+ * 完成後優先使用 reply token 回覆；reply token 可能已逾時時改用 push 訊息。
+ * 同一用戶的訊息依序處理並回覆，不同用戶之間互不阻塞
+ */
+@Service
+@Slf4j
+public class LineReplyDispatcher implements MetricsReporter {
+
+    private static final String PROCESSING_ERROR_MESSAGE = "處理訊息時發生錯誤，請稍後再試。";
+    private static final String BUSY_MESSAGE = "您的訊息太多了，正在處理先前的訊息，請稍後再試。";
+
+    private final LineMessagingClient lineMessagingClient;
+    private final ThreadPoolTaskExecutor executor;
+    private final StripedExecutor userOrderedExecutor;
+    private final boolean enabled;
+    private final Duration replyTokenBudget;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder replied = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public LineReplyDispatcher(
+            LineMessagingClient lineMessagingClient,
+            @Qualifier("messageProcessingExecutor") ThreadPoolTaskExecutor executor,
+            @Qualifier("userOrderedExecutor") StripedExecutor userOrderedExecutor,
+            @Value("${app.line.async.enabled:false}") boolean enabled,
+            @Value("${app.line.async.reply-token-budget:50s}") Duration replyTokenBudget) {
+        this.lineMessagingClient = lineMessagingClient;
+        this.executor = executor;
+        this.userOrderedExecutor = userOrderedExecutor;
+        this.enabled = enabled;
+        this.replyTokenBudget = replyTokenBudget;
+
+        log.info("非同步訊息處理: {}, reply token 時間預算: {}", enabled ? "已啟用" : "已停用", replyTokenBudget);
+    }
+
+    /**
+     * 是否啟用非同步處理模式
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 將訊息處理提交到該用戶的 lane，完成後回覆用戶
+     * lane 佇列已滿時直接回覆忙碌訊息
+     *
+     * @param userId 用戶 ID，reply token 無法使用時作為 push 對象
+     * @param replyToken 事件的 reply token
+     * @param receivedAt 事件發生時間，用於計算 reply token 是否仍在有效期內
+     * @param handler 產生回覆訊息的處理函數，返回 null 表示不需要回覆
+     */
+    public void dispatch(String userId, String replyToken, Instant receivedAt, Supplier<Message> handler) {
+        dispatched.increment();
+        try {
+            userOrderedExecutor.execute(userId, () -> {
+                Message message;
+                try {
+                    message = handler.get();
+                } catch (Exception e) {
+                    log.error("處理用戶 {} 的訊息失敗: {}", userId, e.getMessage(), e);
+                    message = new TextMessage(PROCESSING_ERROR_MESSAGE);
+                }
+
+                if (message != null) {
+                    deliver(userId, replyToken, receivedAt, message);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("用戶 {} 的訊息佇列已滿，拒絕處理: {}", userId, e.getMessage());
+            deliver(userId, replyToken, receivedAt, new TextMessage(BUSY_MESSAGE));
+        }
+    }
+
+    /**
+     * 發送回覆訊息，reply token 超過時間預算或回覆失敗時改用 push
+     */
+    private void deliver(String userId, String replyToken, Instant receivedAt, Message message) {
+        Duration elapsed = Duration.between(receivedAt != null ? receivedAt : Instant.now(), Instant.now());
+
+        if (replyToken != null && elapsed.compareTo(replyTokenBudget) < 0) {
+            try {
+                lineMessagingClient.replyMessage(new ReplyMessage(replyToken, message)).get();
+                replied.increment();
+                return;
+            } catch (Exception e) {
+                log.warn("使用 reply token 回覆用戶 {} 失敗，改用 push 訊息: {}", userId, e.getMessage());
+            }
+        } else {
+            log.info("用戶 {} 的訊息處理耗時 {}ms，超過 reply token 時間預算，改用 push 訊息", userId, elapsed.toMillis());
+        }
+
+        if (userId == null) {
+            failed.increment();
+            log.error("無法推送訊息：缺少用戶 ID");
+            return;
+        }
+
+        try {
+            lineMessagingClient.pushMessage(new PushMessage(userId, message)).get();
+            pushed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("推送訊息給用戶 {} 失敗: {}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "非同步訊息處理";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用").append("\n");
+        ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+        sb.append("執行緒: ").append(pool.getActiveCount()).append(" 活動 / ")
+          .append(pool.getPoolSize()).append(" 已建立 / ").append(pool.getMaximumPoolSize()).append(" 上限\n");
+        sb.append("佇列: ").append(pool.getQueue().size())
+          .append(" / ").append(pool.getQueue().size() + pool.getQueue().remainingCapacity()).append("\n");
+        sb.append("用戶 lane: ").append(userOrderedExecutor.getActiveLanes()).append(" 活動 / ")
+          .append(userOrderedExecutor.getLaneCount()).append("\n");
+        sb.append("lane 排隊: 共 ").append(userOrderedExecutor.getQueuedTasks())
+          .append(", 最深 ").append(userOrderedExecutor.getMaxLaneDepth())
+          .append(" / ").append(userOrderedExecutor.getLaneCapacity())
+          .append(", 已拒絕 ").append(userOrderedExecutor.getRejectedCount()).append("\n");
+        sb.append("已提交: ").append(dispatched.sum())
+          .append(", reply: ").append(replied.sum())
+          .append(", push: ").append(pushed.sum())
+          .append(", 失敗: ").append(failed.sum());
+        return sb.toString();
+    }
+}
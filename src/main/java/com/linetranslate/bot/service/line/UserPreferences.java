@@ -0,0 +1,35 @@
+package com.linetranslate.bot.service.line;
+
+import com.linetranslate.bot.model.UserProfile;
+
+import lombok.Value;
+
+/**
+ * 翻譯流程所需的用戶偏好設定快照，建立後不可變更，可安全地在快取及多個執行緒間共用
+ */
+@Value
+public class UserPreferences {
+
+    String userId;
+    String preferredAiProvider;
+    String openaiPreferredModel;
+    String geminiPreferredModel;
+    String preferredLanguage;
+    String preferredChineseTargetLanguage;
+
+    /**
+     * 從用戶資料建立偏好設定快照
+     *
+     * @param userProfile 用戶資料
+     * @return 偏好設定快照
+     */
+    public static UserPreferences from(UserProfile userProfile) {
+        return new UserPreferences(
+                userProfile.getUserId(),
+                userProfile.getPreferredAiProvider(),
+                userProfile.getOpenaiPreferredModel(),
+                userProfile.getGeminiPreferredModel(),
+                userProfile.getPreferredLanguage(),
+                userProfile.getPreferredChineseTargetLanguage());
+    }
+}
@@ -0,0 +1,88 @@
+package com.linetranslate.bot.service.line;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.linetranslate.bot.repository.UserProfileRepository;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 用戶偏好設定的讀取快取，位於 UserProfileRepository 之前
+ * 未命中時以 touchUserProfile 載入（用戶不存在時會建立），偏好設定變更時必須呼叫 invalidate
+ */
+@Component
+@Slf4j
+public class UserProfileCache implements MetricsReporter {
+
+    private final UserProfileRepository userProfileRepository;
+    private final Cache<String, UserPreferences> cache;
+    private final long maxSize;
+
+    @Autowired
+    public UserProfileCache(
+            UserProfileRepository userProfileRepository,
+            @Value("${app.user-profile.cache.max-size:10000}") long maxSize,
+            @Value("${app.user-profile.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.userProfileRepository = userProfileRepository;
+        this.maxSize = maxSize;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+
+        log.info("用戶資料快取初始化完成，最大項目數: {}, 存活時間: {}", maxSize, expireAfterWrite);
+    }
+
+    /**
+     * 獲取用戶偏好設定，未命中時從資料庫載入
+     *
+     * @param userId 用戶 ID
+     * @return 偏好設定快照
+     */
+    public UserPreferences get(String userId) {
+        return cache.get(userId, id -> UserPreferences.from(userProfileRepository.touchUserProfile(id)));
+    }
+
+    /**
+     * 使某個用戶的快取失效，下次讀取時會重新載入
+     *
+     * @param userId 用戶 ID
+     */
+    public void invalidate(String userId) {
+        cache.invalidate(userId);
+    }
+
+    /**
+     * 清除所有用戶的快取
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "用戶資料快取";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        CacheStats stats = cache.stats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("項目數: ").append(cache.estimatedSize()).append(" / ").append(maxSize).append("\n");
+        sb.append("命中: ").append(stats.hitCount())
+          .append(", 未命中: ").append(stats.missCount())
+          .append(String.format(" (命中率 %.1f%%)", stats.hitRate() * 100)).append("\n");
+        sb.append("淘汰: ").append(stats.evictionCount())
+          .append(String.format(", 平均載入耗時 %.1f ms", stats.averageLoadPenalty() / 1_000_000.0));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.linetranslate.bot.service.metrics;
+
+/**
+ * 效能指標報告介面，由需要對外暴露運行指標的元件實作，
+ * 供管理員命令 /admin metrics 彙整顯示
+ */
+public interface MetricsReporter {
+
+    /**
+     * 獲取指標區塊的名稱
+     *
+     * @return 指標名稱 (如 "翻譯快取")
+     */
+    String getMetricsName();
+
+    /**
+     * 獲取目前的指標摘要
+     *
+     * @return 多行文字格式的指標摘要
+     */
+    String getMetricsSummary();
+}
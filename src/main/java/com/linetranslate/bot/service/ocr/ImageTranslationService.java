@@ -1,13 +1,8 @@
 package com.linetranslate.bot.service.ocr;
 
 
-import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Base64;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,15 +12,20 @@ import com.linecorp.bot.client.LineBlobClient;
 import com.linecorp.bot.client.MessageContentResponse;
 import com.linetranslate.bot.config.AppConfig;
 import com.linetranslate.bot.model.TranslationRecord;
-import com.linetranslate.bot.model.UserProfile;
-import com.linetranslate.bot.repository.TranslationRecordRepository;
 import com.linetranslate.bot.repository.UserProfileRepository;
 import com.linetranslate.bot.service.ai.AiService;
 import com.linetranslate.bot.service.ai.AiServiceFactory;
+import com.linetranslate.bot.service.ai.RoutingDecision;
+import com.linetranslate.bot.service.line.UserPreferences;
+import com.linetranslate.bot.service.line.UserProfileCache;
 import com.linetranslate.bot.service.storage.MinioStorageService;
 import com.linetranslate.bot.service.translation.LanguageDetectionService;
+import com.linetranslate.bot.service.translation.TranslationContext;
+import com.linetranslate.bot.service.translation.TranslationRecordWriter;
 import com.linetranslate.bot.service.translation.TranslationService;
+import com.linetranslate.bot.util.LanguageCode;
 import com.linetranslate.bot.util.LanguageUtils;
+import com.linetranslate.bot.util.TranslationDirectiveParser;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -38,16 +38,11 @@ public class ImageTranslationService {
     private final LanguageDetectionService languageDetectionService;
     private final AiServiceFactory aiServiceFactory;
     private final LineBlobClient lineBlobClient;
-    private final TranslationRecordRepository translationRecordRepository;
+    private final TranslationRecordWriter translationRecordWriter;
     private final UserProfileRepository userProfileRepository;
+    private final UserProfileCache userProfileCache;
     private final AppConfig appConfig;
     private final MinioStorageService minioStorageService;
-    
-    // 翻譯指令的正則表達式模式（中文語言名稱）
-    private static final Pattern TRANSLATION_COMMAND_PATTERN_CN = Pattern.compile("翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
-
-    // 翻譯指令的正則表達式模式（語言代碼）
-    private static final Pattern TRANSLATION_COMMAND_PATTERN_CODE = Pattern.compile("翻譯成([a-zA-Z\\-]+)\\s*(.*)");
 
     @Value("${app.ocr.enabled:true}")
     private boolean ocrEnabled;
@@ -68,8 +63,9 @@ public class ImageTranslationService {
             LanguageDetectionService languageDetectionService,
             AiServiceFactory aiServiceFactory,
             LineBlobClient lineBlobClient,
-            TranslationRecordRepository translationRecordRepository,
+            TranslationRecordWriter translationRecordWriter,
             UserProfileRepository userProfileRepository,
+            UserProfileCache userProfileCache,
             AppConfig appConfig,
             MinioStorageService minioStorageService) {
         this.ocrService = ocrService;
@@ -77,8 +73,9 @@ public class ImageTranslationService {
         this.languageDetectionService = languageDetectionService;
         this.aiServiceFactory = aiServiceFactory;
         this.lineBlobClient = lineBlobClient;
-        this.translationRecordRepository = translationRecordRepository;
+        this.translationRecordWriter = translationRecordWriter;
         this.userProfileRepository = userProfileRepository;
+        this.userProfileCache = userProfileCache;
         this.appConfig = appConfig;
         this.minioStorageService = minioStorageService;
     }
@@ -95,12 +92,13 @@ public class ImageTranslationService {
             return "OCR 功能目前已停用。請稍後再試。";
         }
 
-        Instant start = Instant.now();
+        TranslationContext context = TranslationContext.start(userId);
         log.info("處理用戶 {} 的圖片翻譯請求, 圖片 ID: {}", userId, messageId);
 
         try {
             // 獲取用戶資料
-            UserProfile userProfile = ensureUserProfileExists(userId);
+            UserPreferences preferences = userProfileCache.get(userId);
+            context.setPreferences(preferences);
 
             // 獲取圖片內容並轉換為Base64
             String recognizedText;
@@ -125,7 +123,7 @@ public class ImageTranslationService {
                     log.info("Google Vision不可用，使用AI模型識別圖片文字");
 
                     // 選擇AI服務
-                    AiService aiService = aiServiceFactory.getService(userProfile.getPreferredAiProvider());
+                    AiService aiService = aiServiceFactory.getService(preferences);
 
                     // 構建提示詞
                     String prompt = "請識別這張圖片中的所有文字，只返回文字內容，不要添加任何其他描述或解釋。";
@@ -147,55 +145,54 @@ public class ImageTranslationService {
 
             log.info("識別到的文字: {}", recognizedText);
 
-            // 檢測文字語言
-            String sourceLanguage = languageDetectionService.detectLanguage(recognizedText);
+            // 檢測文字語言，結果保存在上下文中
+            context.setSourceText(recognizedText);
+            String sourceLanguage = languageDetectionService.detectLanguage(context);
 
             // 確定目標語言
             String targetLanguage = null;
             
             // 檢查文字中是否包含「翻譯成XX文」的指令
-            Matcher matcherCN = TRANSLATION_COMMAND_PATTERN_CN.matcher(recognizedText);
-            Matcher matcherCode = TRANSLATION_COMMAND_PATTERN_CODE.matcher(recognizedText);
-            
-            if (matcherCN.find()) {
-                // 使用用戶指定的中文語言名稱
-                String languageName = matcherCN.group(1);
-                targetLanguage = LanguageUtils.toLanguageCode(languageName);
-                log.info("圖片文字中指定翻譯成: {} ({})", languageName, targetLanguage);
-            } else if (matcherCode.find()) {
-                // 使用用戶指定的語言代碼
-                String languageCode = matcherCode.group(1);
-                targetLanguage = languageCode.toLowerCase();
-                log.info("圖片文字中指定翻譯成: {} ({})", languageCode, LanguageUtils.toChineseName(targetLanguage));
+            TranslationDirectiveParser.Directive directive = TranslationDirectiveParser.find(recognizedText);
+            if (directive != null) {
+                targetLanguage = directive.targetLanguage();
+                log.info("圖片文字中指定翻譯成: {} ({})", directive.languageToken(),
+                        directive.languageName() ? targetLanguage : LanguageUtils.toChineseName(targetLanguage));
             }
             
             // 如果沒有在文字中指定目標語言，則使用默認的目標語言選擇邏輯
             if (targetLanguage == null) {
-                targetLanguage = getDefaultTargetLanguage(sourceLanguage, userProfile);
+                targetLanguage = getDefaultTargetLanguage(sourceLanguage, preferences);
             }
 
-            // 選擇 AI 服務
-            AiService aiService = aiServiceFactory.getService(userProfile.getPreferredAiProvider());
-
-            // 翻譯文字
-            String translatedText = translationService.translateWithService(aiService, recognizedText, targetLanguage);
+            // 翻譯文字，圖片文字依模型路由選擇模型
+            context.setTargetLanguage(targetLanguage);
+            AiService aiService = translationService.selectService(context, true);
+            long translationStartNanos = System.nanoTime();
+            String translatedText = translationService.translateWithService(aiService, recognizedText, targetLanguage,
+                    context::setServedBy);
+            context.recordTiming(TranslationContext.Stage.TRANSLATION, (System.nanoTime() - translationStartNanos) / 1_000_000);
 
             // 計算處理時間
-            long processingTimeMs = Duration.between(start, Instant.now()).toMillis();
+            long processingTimeMs = context.getElapsedMs();
 
             // 獲取圖片 URL
             String storedImageUrl = ImageContext.getCurrentImageUrl();
             
             // 保存翻譯記錄
-            saveTranslationRecord(userId, recognizedText, sourceLanguage, targetLanguage,
-                    translatedText, aiService.getProviderName(), aiService.getModelName(),
-                    processingTimeMs, true, storedImageUrl);
+            // 對沖請求由次要提供者勝出時，記錄實際產生譯文的提供者與模型
+            AiService.ServedBy servedBy = context.getServedBy();
+            saveTranslationRecord(userId, recognizedText, sourceLanguage, targetLanguage, translatedText,
+                    servedBy != null ? servedBy.provider() : aiService.getProviderName(),
+                    servedBy != null ? servedBy.model() : aiService.getModelName(),
+                    processingTimeMs, true, storedImageUrl, context.getRoutingDecision());
             
             // 清除圖片上下文
             ImageContext.clear();
 
             // 更新用戶資料
-            updateUserProfileAfterImageTranslation(userProfile);
+            updateUserProfileAfterImageTranslation(userId);
+            log.info("用戶 {} 的圖片翻譯處理完成，總耗時 {}ms ({})", userId, context.getElapsedMs(), context.formatTimings());
 
             // 構建響應消息
             StringBuilder resultBuilder = new StringBuilder();
@@ -204,8 +201,8 @@ public class ImageTranslationService {
             resultBuilder.append("翻譯結果：\n").append(translatedText);
             
             // 添加偵測到的語言資訊和翻譯目標語言
-            String sourceLanguageName = com.linetranslate.bot.util.LanguageUtils.toChineseName(sourceLanguage);
-            String targetLanguageName = com.linetranslate.bot.util.LanguageUtils.toChineseName(targetLanguage);
+            String sourceLanguageName = LanguageUtils.toChineseName(sourceLanguage);
+            String targetLanguageName = LanguageUtils.toChineseName(targetLanguage);
             resultBuilder.append("\n\n[偵測到: ").append(sourceLanguageName)
                       .append(" | 翻譯成: ").append(targetLanguageName).append("]");
 
@@ -220,15 +217,15 @@ public class ImageTranslationService {
     /**
      * 根據源語言和用戶資料選擇默認的目標語言
      */
-    private String getDefaultTargetLanguage(String sourceLanguage, UserProfile userProfile) {
+    private String getDefaultTargetLanguage(String sourceLanguage, UserPreferences preferences) {
         log.info("源語言: {}, 檢查是否為中文", sourceLanguage);
         // 檢查源語言是否為中文（包括 zh, zh-CN, zh-TW 等）
-        boolean isChinese = sourceLanguage != null && sourceLanguage.startsWith("zh");
+        boolean isChinese = LanguageCode.of(sourceLanguage).isChinese();
         
         String targetLanguage;
         if (isChinese) {
             // 如果是中文，先檢查用戶是否設置了偏好的中文翻譯目標語言
-            String preferredChineseTargetLanguage = userProfile.getPreferredChineseTargetLanguage();
+            String preferredChineseTargetLanguage = preferences.getPreferredChineseTargetLanguage();
             if (preferredChineseTargetLanguage != null && !preferredChineseTargetLanguage.isEmpty()) {
                 targetLanguage = preferredChineseTargetLanguage;
                 log.info("使用用戶偏好的中文翻譯目標語言: {}", targetLanguage);
@@ -238,7 +235,7 @@ public class ImageTranslationService {
             }
         } else {
             // 如果不是中文，先檢查用戶是否設置了偏好的語言
-            String preferredLanguage = userProfile.getPreferredLanguage();
+            String preferredLanguage = preferences.getPreferredLanguage();
             if (preferredLanguage != null && !preferredLanguage.isEmpty()) {
                 targetLanguage = preferredLanguage;
                 log.info("使用用戶偏好的目標語言: {}", targetLanguage);
@@ -251,32 +248,13 @@ public class ImageTranslationService {
         return targetLanguage;
     }
 
-    /**
-     * 確保用戶資料存在
-     */
-    private UserProfile ensureUserProfileExists(String userId) {
-        Optional<UserProfile> userProfileOptional = userProfileRepository.findByUserId(userId);
-
-        if (userProfileOptional.isPresent()) {
-            UserProfile userProfile = userProfileOptional.get();
-            userProfile.setLastInteractionAt(LocalDateTime.now());
-            return userProfileRepository.save(userProfile);
-        } else {
-            UserProfile newUserProfile = UserProfile.builder()
-                    .userId(userId)
-                    .firstInteractionAt(LocalDateTime.now())
-                    .lastInteractionAt(LocalDateTime.now())
-                    .build();
-            return userProfileRepository.save(newUserProfile);
-        }
-    }
-
     /**
      * 保存翻譯記錄
      */
     private void saveTranslationRecord(String userId, String sourceText, String sourceLanguage,
                                        String targetLanguage, String translatedText, String aiProvider,
-                                       String modelName, double processingTimeMs, boolean isImageTranslation, String imageUrl) {
+                                       String modelName, double processingTimeMs, boolean isImageTranslation, String imageUrl,
+                                       RoutingDecision routingDecision) {
 
         TranslationRecord record = TranslationRecord.builder()
                 .userId(userId)
@@ -290,19 +268,18 @@ public class ImageTranslationService {
                 .processingTimeMs(processingTimeMs)
                 .isImageTranslation(isImageTranslation)
                 .imageUrl(imageUrl)
+                .routingReason(routingDecision != null ? routingDecision.reason() : null)
+                .baselineModel(routingDecision != null ? routingDecision.baselineModel() : null)
                 .build();
 
-        translationRecordRepository.save(record);
-        log.info("已保存用戶 {} 的圖片翻譯記錄", userId);
+        translationRecordWriter.write(record);
+        log.info("已提交用戶 {} 的圖片翻譯記錄", userId);
     }
 
     /**
      * 更新用戶資料
      */
-    private void updateUserProfileAfterImageTranslation(UserProfile userProfile) {
-        userProfile.setLastInteractionAt(LocalDateTime.now());
-        userProfile.setTotalTranslations(userProfile.getTotalTranslations() + 1);
-        userProfile.setImageTranslations(userProfile.getImageTranslations() + 1);
-        userProfileRepository.save(userProfile);
+    private void updateUserProfileAfterImageTranslation(String userId) {
+        userProfileRepository.recordTranslation(userId, true, null, null);
     }
 }
\ No newline at end of file
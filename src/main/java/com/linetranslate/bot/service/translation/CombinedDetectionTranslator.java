@@ -0,0 +1,188 @@
+package com.linetranslate.bot.service.translation;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linetranslate.bot.service.ai.AiService;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+import com.linetranslate.bot.util.LanguageCode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 合併語言檢測與翻譯
+ * 需要 AI 模型檢測語言的訊息，以一次呼叫同時取得源語言與翻譯結果，
+ * 並驗證模型選擇的目標語言與本地規則一致；驗證失敗時由呼叫者改用檢測後再翻譯的兩步驟流程
+ */
+@Component
+@Slf4j
+public class CombinedDetectionTranslator implements MetricsReporter {
+
+    private static final Pattern LANGUAGE_CODE = Pattern.compile("[a-z]{2,3}(-[a-z0-9]{2,8})*");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PlaceholderMasker placeholderMasker;
+    private final boolean enabled;
+    private final String defaultChineseType;
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder combined = new LongAdder();
+    private final LongAdder targetMismatches = new LongAdder();
+    private final LongAdder invalidResponses = new LongAdder();
+
+    @Autowired
+    public CombinedDetectionTranslator(
+            PlaceholderMasker placeholderMasker,
+            @Value("${app.translation.combined-detection.enabled:true}") boolean enabled,
+            @Value("${app.language-detection.default-chinese:zh-tw}") String defaultChineseType) {
+        this.placeholderMasker = placeholderMasker;
+        this.enabled = enabled;
+        this.defaultChineseType = defaultChineseType;
+
+        log.info("合併語言檢測與翻譯啟用: {}", enabled);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 合併檢測與翻譯的結果
+     *
+     * @param sourceLanguage 模型檢測到的源語言
+     * @param targetLanguage 依本地規則決定的目標語言
+     * @param translation 翻譯結果；模型選擇的目標語言與規則不一致時為 null，只能沿用檢測結果
+     */
+    public record Result(String sourceLanguage, String targetLanguage, String translation) {
+
+        public boolean isTranslated() {
+            return translation != null;
+        }
+    }
+
+    /**
+     * 以一次呼叫檢測源語言並翻譯
+     * 網址、程式碼等片段與一般翻譯相同，以佔位符取代後再送給模型
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetRules 提供給模型的源語言與目標語言對照表
+     * @param otherTarget 對照表未列出的源語言使用的目標語言
+     * @param targetResolver 依源語言決定目標語言的本地規則，用於驗證模型的選擇
+     * @return 完成時包含結果；回應無法解析時為 null
+     */
+    public CompletableFuture<Result> detectAndTranslate(AiService aiService, String text, Map<String, String> targetRules,
+                                                        String otherTarget, UnaryOperator<String> targetResolver) {
+        attempts.increment();
+        PlaceholderMasker.Masked masked = placeholderMasker.mask(aiService.getProviderName(), text);
+        CompletableFuture<String> response;
+        try {
+            response = aiService.detectAndTranslateAsync(masked != null ? masked.text() : text, targetRules, otherTarget);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.handle((body, error) -> {
+            if (error != null) {
+                log.warn("合併檢測與翻譯失敗: {}", error.getMessage());
+                invalidResponses.increment();
+                return null;
+            }
+            return validate(body, masked, targetResolver);
+        });
+    }
+
+    private Result validate(String response, PlaceholderMasker.Masked masked, UnaryOperator<String> targetResolver) {
+        JsonNode node = parseObject(response);
+        String sourceLanguage = node != null ? normalizeLanguageCode(node.path("sourceLanguage").asText(null)) : null;
+        String modelTarget = node != null ? normalizeLanguageCode(node.path("targetLanguage").asText(null)) : null;
+        String translation = node != null && node.path("translation").isTextual() ? node.path("translation").asText().trim() : null;
+
+        if (sourceLanguage == null || modelTarget == null || translation == null || translation.isEmpty()) {
+            log.warn("合併檢測與翻譯的回應格式不正確，改用兩步驟流程: {}", response);
+            invalidResponses.increment();
+            return null;
+        }
+
+        String expectedTarget = targetResolver.apply(sourceLanguage);
+        if (!sameLanguage(modelTarget, expectedTarget)) {
+            // 檢測結果仍可使用，只需以正確的目標語言重新翻譯
+            log.info("模型選擇的目標語言 {} 與規則 {} 不一致 (源語言 {})", modelTarget, expectedTarget, sourceLanguage);
+            targetMismatches.increment();
+            return new Result(sourceLanguage, expectedTarget, null);
+        }
+
+        if (masked != null) {
+            translation = placeholderMasker.unmask(masked, translation);
+            if (translation == null) {
+                // 檢測結果仍可使用，由兩步驟流程以原文重新翻譯
+                return new Result(sourceLanguage, expectedTarget, null);
+            }
+        }
+
+        combined.increment();
+        return new Result(sourceLanguage, expectedTarget, translation);
+    }
+
+    /**
+     * 解析模型返回的 JSON 物件，容許前後包含 markdown 程式碼區塊等文字
+     */
+    private JsonNode parseObject(String response) {
+        if (response == null || !TranslationCache.isCacheable(response)) {
+            return null;
+        }
+        int start = response.indexOf('{');
+        int end = response.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(response.substring(start, end + 1));
+            return node.isObject() ? node : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String normalizeLanguageCode(String code) {
+        if (code == null) {
+            return null;
+        }
+        String normalized = code.trim().toLowerCase().replace('_', '-');
+        if (!LANGUAGE_CODE.matcher(normalized).matches()) {
+            return null;
+        }
+        return normalized.startsWith("zh") && !normalized.contains("-") ? defaultChineseType : normalized;
+    }
+
+    private static boolean sameLanguage(String modelTarget, String expectedTarget) {
+        return LanguageCode.of(modelTarget).equals(LanguageCode.of(expectedTarget));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "合併語言檢測與翻譯";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long total = attempts.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用").append("\n");
+        sb.append("嘗試: ").append(total).append(" 次, 成功合併: ").append(combined.sum());
+        if (total > 0) {
+            sb.append(String.format(" (%.1f%%)", combined.sum() * 100.0 / total));
+        }
+        sb.append("\n目標語言不一致: ").append(targetMismatches.sum())
+          .append(", 回應無效: ").append(invalidResponses.sum());
+        return sb.toString();
+    }
+}
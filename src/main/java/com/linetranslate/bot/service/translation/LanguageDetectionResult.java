@@ -0,0 +1,54 @@
+package com.linetranslate.bot.service.translation;
+
+import lombok.Value;
+
+/**
+ * 語言檢測結果，包含語言代碼、信心分數以及產生結果的檢測層級
+ */
+@Value
+public class LanguageDetectionResult {
+
+    /**
+     * 產生檢測結果的層級
+     */
+    public enum Tier {
+        SCRIPT("字元集"),
+        NGRAM("n-gram"),
+        AI("AI 模型"),
+        FALLBACK("預設");
+
+        private final String displayName;
+
+        Tier(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static final LanguageDetectionResult UNKNOWN = new LanguageDetectionResult("unknown", 0.0, Tier.FALLBACK);
+
+    String languageCode;
+    double confidence;
+    Tier tier;
+
+    /**
+     * 無法檢測時的結果
+     *
+     * @return 語言代碼為 "unknown" 的結果
+     */
+    public static LanguageDetectionResult unknown() {
+        return UNKNOWN;
+    }
+
+    /**
+     * 是否成功檢測出語言
+     *
+     * @return 語言代碼不是 "unknown" 時返回 true
+     */
+    public boolean isKnown() {
+        return !"unknown".equals(languageCode);
+    }
+}
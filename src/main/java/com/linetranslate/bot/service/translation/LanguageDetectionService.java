@@ -1,13 +1,17 @@
 package com.linetranslate.bot.service.translation;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+import com.linetranslate.bot.util.TextNormalizer;
+import com.optimaize.langdetect.DetectedLanguage;
 import com.optimaize.langdetect.LanguageDetector;
 import com.optimaize.langdetect.LanguageDetectorBuilder;
-import com.optimaize.langdetect.i18n.LdLocale;
 import com.optimaize.langdetect.ngram.NgramExtractors;
 import com.optimaize.langdetect.profiles.LanguageProfile;
 import com.optimaize.langdetect.profiles.LanguageProfileReader;
 import com.optimaize.langdetect.text.CommonTextObjectFactories;
-import com.optimaize.langdetect.text.TextObject;
 import com.optimaize.langdetect.text.TextObjectFactory;
 
 import jakarta.annotation.PostConstruct;
@@ -17,17 +21,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 @Slf4j
-public class LanguageDetectionService {
+public class LanguageDetectionService implements MetricsReporter {
+
+    // AI 模型不提供機率，成功返回語言代碼時視為高信心
+    private static final double AI_DETECTION_CONFIDENCE = 0.9;
+
+    // 漢字與假名中假名所佔的最低比例，達到時判斷為日文
+    private static final double KANA_SHARE_FOR_JAPANESE = 0.1;
 
     private LanguageDetector languageDetector;
     private TextObjectFactory textObjectFactory;
+    private Cache<Long, LanguageDetectionResult> detectionCache;
+    private final Map<LanguageDetectionResult.Tier, LongAdder> tierCounters = new EnumMap<>(LanguageDetectionResult.Tier.class);
     
     @Autowired
     private AiLanguageDetectionService aiLanguageDetectionService;
@@ -38,21 +55,52 @@ public class LanguageDetectionService {
     @Value("${app.language-detection.default-chinese:zh-tw}")
     private String defaultChineseType;
 
+    // 單一文字系統佔所有字母的比例達到此值時，直接以字元集判斷語言
+    @Value("${app.language-detection.script-threshold:0.3}")
+    private double scriptThreshold;
+
+    // n-gram 前兩名候選的機率差距低於此值時，才使用 AI 模型檢測
+    @Value("${app.language-detection.ai-confidence-margin:0.3}")
+    private double aiConfidenceMargin;
+
+    // n-gram 檢測器載入的語言檔案，只載入機器人支援的語言以避免短文本誤判為冷門語言
+    @Value("${app.language-detection.ngram-languages:en,ja,ko,zh-CN,zh-TW,fr,de,es,pt,it,ru,uk,ar,th,vi,id,ms,nl,el,pl,tr,cs,sv,da,fi,no,hi,he,tl}")
+    private List<String> ngramLanguages;
+
+    // 檢測結果快取，以正規化文本的 64 位元指紋為鍵
+    @Value("${app.language-detection.cache.max-size:20000}")
+    private long cacheMaxSize;
+
+    @Value("${app.language-detection.cache.expire-after-write:24h}")
+    private Duration cacheExpireAfterWrite;
+
     @PostConstruct
     public void init() {
+        for (LanguageDetectionResult.Tier tier : LanguageDetectionResult.Tier.values()) {
+            tierCounters.put(tier, new LongAdder());
+        }
+        detectionCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheExpireAfterWrite)
+                .recordStats()
+                .build();
+
         try {
             // 加載預訓練的語言檔案
-            List<LanguageProfile> languageProfiles = new LanguageProfileReader().readAllBuiltIn();
+            LanguageProfileReader profileReader = new LanguageProfileReader();
+            List<LanguageProfile> languageProfiles = ngramLanguages == null || ngramLanguages.isEmpty()
+                    ? profileReader.readAllBuiltIn()
+                    : profileReader.read(ngramLanguages);
 
             // 建立語言檢測器
             languageDetector = LanguageDetectorBuilder.create(NgramExtractors.standard())
                     .withProfiles(languageProfiles)
                     .build();
 
-            // 建立文本工廠
-            textObjectFactory = CommonTextObjectFactories.forDetectingOnLargeText();
+            // 建立文本工廠，聊天訊息多為短文本
+            textObjectFactory = CommonTextObjectFactories.forDetectingShortCleanText();
 
-            log.info("語言檢測服務初始化成功");
+            log.info("語言檢測服務初始化成功，載入 {} 種語言檔案", languageProfiles.size());
         } catch (IOException e) {
             log.error("語言檢測服務初始化失敗: {}", e.getMessage());
         }
@@ -65,57 +113,272 @@ public class LanguageDetectionService {
      * @return 檢測到的語言代碼，如果無法檢測則返回 "unknown"
      */
     public String detectLanguage(String text) {
+        return detect(text).getLanguageCode();
+    }
+
+    /**
+     * 檢測翻譯上下文中源文本的語言
+     * 檢測結果會保存在上下文中，同一則訊息重複呼叫不會再次檢測
+     *
+     * @param context 翻譯上下文
+     * @return 檢測到的語言代碼，如果無法檢測則返回 "unknown"
+     */
+    public String detectLanguage(TranslationContext context) {
+        if (context.getDetection() == null) {
+            long startNanos = System.nanoTime();
+            context.setDetection(detect(context.getSourceText()));
+            context.recordTiming(TranslationContext.Stage.DETECTION, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        return context.getDetectedLanguage();
+    }
+
+    /**
+     * 檢測文本的語言並返回信心分數
+     * 相同的正規化文本直接使用快取結果，未命中時依序嘗試三個層級：Unicode 字元集快速判斷、
+     * n-gram 檢測器，只有當 n-gram 前兩名候選的機率差距小於設定值時才呼叫 AI 模型
+     *
+     * @param text 要檢測的文本
+     * @return 檢測結果，如果無法檢測則語言代碼為 "unknown"
+     */
+    public LanguageDetectionResult detect(String text) {
+        return detect(text, true);
+    }
+
+    /**
+     * 只使用快取、字元集及 n-gram 檢測翻譯上下文中源文本的語言，需要 AI 模型才能確定時不檢測
+     * 供合併檢測與翻譯的流程判斷是否需要由翻譯請求一併檢測語言
+     *
+     * @param context 翻譯上下文
+     * @return 成功檢測並保存在上下文中時返回 true；需要 AI 模型檢測時返回 false
+     */
+    public boolean detectLanguageWithoutAi(TranslationContext context) {
+        if (context.getDetection() != null) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        LanguageDetectionResult result = detect(context.getSourceText(), false);
+        context.recordTiming(TranslationContext.Stage.DETECTION, (System.nanoTime() - startNanos) / 1_000_000);
+        if (result == null) {
+            return false;
+        }
+        context.setDetection(result);
+        return true;
+    }
+
+    /**
+     * 記錄由其他 AI 請求（例如合併檢測與翻譯）得到的語言檢測結果，並寫入檢測快取
+     *
+     * @param text 檢測的文本
+     * @param languageCode AI 模型返回的語言代碼
+     * @return 檢測結果
+     */
+    public LanguageDetectionResult recordAiDetection(String text, String languageCode) {
+        LanguageDetectionResult result = new LanguageDetectionResult(normalizeChinese(languageCode),
+                AI_DETECTION_CONFIDENCE, LanguageDetectionResult.Tier.AI);
+        tierCounters.get(result.getTier()).increment();
+        detectionCache.put(TextNormalizer.fingerprint64(text), result);
+        return result;
+    }
+
+    /**
+     * 檢測文本的語言，allowAi 為 false 時需要 AI 模型才能確定的文本返回 null
+     */
+    private LanguageDetectionResult detect(String text, boolean allowAi) {
         if (StringUtils.isBlank(text)) {
-            return "unknown";
+            return LanguageDetectionResult.unknown();
+        }
+
+        long fingerprint = TextNormalizer.fingerprint64(text);
+        LanguageDetectionResult cached = detectionCache.getIfPresent(fingerprint);
+        if (cached != null) {
+            log.debug("語言檢測快取命中: {} ({})", cached.getLanguageCode(), cached.getTier().getDisplayName());
+            return cached;
         }
 
+        LanguageDetectionResult result = detectUncached(text, allowAi);
+        if (result == null) {
+            return null;
+        }
+        tierCounters.get(result.getTier()).increment();
+
+        // 預設結果通常代表 AI 檢測暫時失敗，不寫入快取以便下次重試
+        if (result.isKnown() && result.getTier() != LanguageDetectionResult.Tier.FALLBACK) {
+            detectionCache.put(fingerprint, result);
+        }
+        return result;
+    }
+
+    /**
+     * 清除所有快取的語言檢測結果
+     */
+    public void invalidateCache() {
+        detectionCache.invalidateAll();
+    }
+
+    private LanguageDetectionResult detectUncached(String text, boolean allowAi) {
         try {
-            // 如果啟用 AI 語言檢測，則使用 AI 模型進行檢測
+            // 第一層：根據 Unicode 字元集判斷
+            ScriptProfile scriptProfile = ScriptProfile.of(text);
+            LanguageDetectionResult scriptResult = detectByScript(scriptProfile);
+            if (scriptResult != null) {
+                log.debug("字元集檢測到的語言: {} ({})", scriptResult.getLanguageCode(), scriptResult.getConfidence());
+                return scriptResult;
+            }
+
+            // 第二層：n-gram 語言檢測器
+            List<DetectedLanguage> candidates = languageDetector.getProbabilities(textObjectFactory.forText(text));
+            double topProbability = candidates.isEmpty() ? 0.0 : candidates.get(0).getProbability();
+            double secondProbability = candidates.size() > 1 ? candidates.get(1).getProbability() : 0.0;
+
+            if (!candidates.isEmpty() && topProbability - secondProbability >= aiConfidenceMargin) {
+                String detectedLanguage = normalizeChinese(candidates.get(0).getLocale().getLanguage());
+                log.debug("n-gram 檢測到的語言: {} ({})", detectedLanguage, topProbability);
+                return new LanguageDetectionResult(detectedLanguage, topProbability, LanguageDetectionResult.Tier.NGRAM);
+            }
+
+            // 第三層：候選語言差距不足時才使用 AI 模型
+            if (useAiDetection && !allowAi) {
+                return null;
+            }
             if (useAiDetection) {
-                log.debug("使用 AI 模型進行語言檢測");
+                log.debug("n-gram 候選差距 {} 低於 {}，使用 AI 模型進行語言檢測",
+                        topProbability - secondProbability, aiConfidenceMargin);
                 String aiDetectedLanguage = aiLanguageDetectionService.detectLanguage(text);
-                
-                // 如果 AI 檢測失敗，則使用傳統方法
-                if ("unknown".equals(aiDetectedLanguage)) {
-                    log.debug("AI 語言檢測失敗，使用傳統方法");
-                } else {
+
+                if (!"unknown".equals(aiDetectedLanguage)) {
                     log.info("AI 檢測到的語言: {}", aiDetectedLanguage);
-                    return aiDetectedLanguage;
+                    return new LanguageDetectionResult(aiDetectedLanguage, AI_DETECTION_CONFIDENCE, LanguageDetectionResult.Tier.AI);
                 }
+                log.debug("AI 語言檢測失敗，使用預設結果");
             }
-            
-            // 傳統方法：計算中文字符的比例
-            double chineseRatio = calculateChineseCharacterRatio(text);
-            log.debug("文本中中文字符的比例: {}", chineseRatio);
-            
-            // 如果中文字符比例超過 30%，則認為是中文
-            if (chineseRatio > 0.3) {
-                return defaultChineseType;
+
+            // 無法確定時：優先使用字元集提示，其次是 n-gram 最高候選，最後預設為英文
+            if (scriptProfile.getHintLanguage() != null) {
+                return new LanguageDetectionResult(scriptProfile.getHintLanguage(),
+                        scriptProfile.getHintShare(), LanguageDetectionResult.Tier.FALLBACK);
             }
+            if (!candidates.isEmpty()) {
+                return new LanguageDetectionResult(normalizeChinese(candidates.get(0).getLocale().getLanguage()),
+                        topProbability, LanguageDetectionResult.Tier.FALLBACK);
+            }
+            return new LanguageDetectionResult("en", 0.0, LanguageDetectionResult.Tier.FALLBACK);
+        } catch (Exception e) {
+            log.error("語言檢測失敗: {}", e.getMessage());
+            return LanguageDetectionResult.unknown();
+        }
+    }
 
-            // 使用語言檢測器進行檢測
-            TextObject textObject = textObjectFactory.forText(text);
-            String detectedLanguage = languageDetector.detect(textObject)
-                    .or(LdLocale.fromString("en"))
-                    .getLanguage();
+    /**
+     * 根據字元集判斷語言，只處理不需要 n-gram 就能確定的文字系統
+     *
+     * @return 檢測結果，無法僅憑字元集確定時返回 null
+     */
+    private LanguageDetectionResult detectByScript(ScriptProfile profile) {
+        if (profile.getLetters() == 0) {
+            return null;
+        }
 
-            // 處理各種中文變體
-            if (detectedLanguage.startsWith("zh")) {
-                return defaultChineseType;
+        double letters = profile.getLetters();
+        double kana = profile.getKana();
+        double cjk = kana + profile.getHan();
+
+        // 含有假名的漢字文本視為日文
+        if (kana > 0 && cjk / letters >= scriptThreshold && kana / cjk >= KANA_SHARE_FOR_JAPANESE) {
+            return new LanguageDetectionResult("ja", cjk / letters, LanguageDetectionResult.Tier.SCRIPT);
+        }
+        if (profile.getHangul() / letters >= scriptThreshold) {
+            return new LanguageDetectionResult("ko", profile.getHangul() / letters, LanguageDetectionResult.Tier.SCRIPT);
+        }
+        if (profile.getHan() / letters >= scriptThreshold) {
+            return new LanguageDetectionResult(defaultChineseType, profile.getHan() / letters, LanguageDetectionResult.Tier.SCRIPT);
+        }
+        if (profile.getThai() / letters >= scriptThreshold) {
+            return new LanguageDetectionResult("th", profile.getThai() / letters, LanguageDetectionResult.Tier.SCRIPT);
+        }
+
+        // 西里爾字母和阿拉伯字母對應多種語言，交給 n-gram 區分
+        return null;
+    }
+
+    // 處理各種中文變體
+    private String normalizeChinese(String languageCode) {
+        return languageCode.startsWith("zh") ? defaultChineseType : languageCode;
+    }
+
+    /**
+     * 文本中各種文字系統的字母數量統計
+     */
+    @Getter
+    private static class ScriptProfile {
+        private int letters;
+        private int han;
+        private int kana;
+        private int hangul;
+        private int thai;
+        private int cyrillic;
+        private int arabic;
+
+        static ScriptProfile of(String text) {
+            ScriptProfile profile = new ScriptProfile();
+            text.codePoints().forEach(codePoint -> {
+                if (!Character.isLetter(codePoint)) {
+                    return;
+                }
+                profile.letters++;
+                switch (Character.UnicodeScript.of(codePoint)) {
+                    case HAN -> profile.han++;
+                    case HIRAGANA, KATAKANA -> profile.kana++;
+                    case HANGUL -> profile.hangul++;
+                    case THAI -> profile.thai++;
+                    case CYRILLIC -> profile.cyrillic++;
+                    case ARABIC -> profile.arabic++;
+                    default -> {
+                    }
+                }
+            });
+            return profile;
+        }
+
+        /**
+         * 西里爾字母或阿拉伯字母為主時，在其他層級無法確定的情況下使用的提示語言
+         */
+        String getHintLanguage() {
+            if (letters == 0) {
+                return null;
+            }
+            if (cyrillic * 2 >= letters) {
+                return "ru";
+            }
+            if (arabic * 2 >= letters) {
+                return "ar";
             }
+            return null;
+        }
 
-            return detectedLanguage;
-        } catch (Exception e) {
-            log.error("語言檢測失敗: {}", e.getMessage());
-            return "unknown";
+        double getHintShare() {
+            return letters == 0 ? 0.0 : (double) Math.max(cyrillic, arabic) / letters;
         }
     }
 
-    // 計算中文字符的比例
-    private double calculateChineseCharacterRatio(String text) {
-        long chineseCount = text.codePoints().filter(codepoint ->
-                Character.UnicodeScript.of(codepoint) == Character.UnicodeScript.HAN).count();
-        return (double) chineseCount / text.length();
+    @Override
+    public String getMetricsName() {
+        return "語言檢測";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        CacheStats stats = detectionCache.stats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("快取項目數: ").append(detectionCache.estimatedSize())
+          .append(" / ").append(cacheMaxSize).append("\n");
+        sb.append("命中: ").append(stats.hitCount())
+          .append(", 未命中: ").append(stats.missCount())
+          .append(String.format(" (命中率 %.1f%%)", stats.hitRate() * 100)).append("\n");
+        sb.append("淘汰: ").append(stats.evictionCount()).append(" 項\n");
+        sb.append("實際檢測層級: ");
+        tierCounters.forEach((tier, counter) ->
+                sb.append(tier.getDisplayName()).append(" ").append(counter.sum()).append(" "));
+        return sb.toString().trim();
     }
 
     /**
@@ -0,0 +1,215 @@
+package com.linetranslate.bot.service.translation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.ai.TokenEstimator;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 翻譯前以佔位符取代不需要翻譯的片段，翻譯後還原
+ * 網址、電子郵件、程式碼、@提及及較長的數字以 {{n}} 取代，減少送給模型的 token 數，
+ * 也避免模型改寫這些內容；翻譯結果中的佔位符不完整時，由呼叫者改用原文翻譯
+ */
+@Component
+@Slf4j
+public class PlaceholderMasker implements MetricsReporter {
+
+    // 依序為程式碼區塊、行內程式碼、網址、電子郵件、@提及、數字
+    private static final Pattern PROTECTED_SPAN = Pattern.compile(
+            "```.*?```"
+            + "|`[^`\\n]+`"
+            + "|(?:https?://|www\\.)[^\\s\\u3000-\\u303F\\uFF00-\\uFFEF]+"
+            + "|[\\w.+-]+@[\\w-]+(?:\\.[\\w-]+)+"
+            + "|@[A-Za-z0-9_.-]+"
+            + "|\\d[\\d,.:/-]*\\d",
+            Pattern.DOTALL);
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{\\s*(\\d+)\\s*\\}\\}");
+
+    // 網址、電子郵件、提及結尾的英文標點通常屬於句子
+    private static final String TRAILING_PUNCTUATION = ".,;:!?)]}'\"";
+
+    private final boolean enabled;
+    private final int minNumberDigits;
+
+    private final LongAdder maskedRequests = new LongAdder();
+    private final LongAdder maskedSpans = new LongAdder();
+    private final LongAdder savedTokens = new LongAdder();
+    private final LongAdder skippedRequests = new LongAdder();
+    private final LongAdder skippedTokens = new LongAdder();
+    private final LongAdder restoreFailures = new LongAdder();
+
+    @Autowired
+    public PlaceholderMasker(
+            @Value("${app.translation.masking.enabled:true}") boolean enabled,
+            @Value("${app.translation.masking.min-number-digits:4}") int minNumberDigits) {
+        this.enabled = enabled;
+        this.minNumberDigits = minNumberDigits;
+
+        log.info("翻譯片段遮罩啟用: {}, 數字最少位數: {}", enabled, minNumberDigits);
+    }
+
+    /**
+     * 遮罩後的文本
+     *
+     * @param text 以佔位符取代後要送去翻譯的文本
+     * @param originals 依佔位符編號排列的原始片段
+     * @param savedTokens 估算節省的輸入 token 數
+     */
+    public record Masked(String text, List<String> originals, int savedTokens) {
+    }
+
+    /**
+     * 以佔位符取代文本中的保護片段
+     *
+     * @param provider AI 提供者，用於估算 token 數
+     * @param text 要翻譯的文本
+     * @return 遮罩後的文本；沒有需要保護的片段或估算無法節省 token 時返回 null
+     */
+    public Masked mask(String provider, String text) {
+        // 原文本身含有佔位符格式時無法可靠還原
+        if (!enabled || text == null || text.contains("{{")) {
+            return null;
+        }
+
+        Matcher matcher = PROTECTED_SPAN.matcher(text);
+        StringBuilder sb = null;
+        List<String> originals = new ArrayList<>();
+        int last = 0;
+        while (matcher.find()) {
+            int end = matcher.end();
+            String span = matcher.group();
+            if (Character.isDigit(span.charAt(0))) {
+                if (countDigits(span) < minNumberDigits) {
+                    continue;
+                }
+            } else if (!span.startsWith("`")) {
+                while (end > matcher.start() + 1 && TRAILING_PUNCTUATION.indexOf(text.charAt(end - 1)) >= 0) {
+                    end--;
+                }
+                span = text.substring(matcher.start(), end);
+            }
+
+            // 不比佔位符長的片段取代後反而更長
+            String placeholder = "{{" + originals.size() + "}}";
+            if (span.length() <= placeholder.length()) {
+                continue;
+            }
+
+            if (sb == null) {
+                sb = new StringBuilder(text.length());
+            }
+            sb.append(text, last, matcher.start()).append(placeholder);
+            originals.add(span);
+            last = end;
+        }
+        if (sb == null) {
+            return null;
+        }
+        sb.append(text, last, text.length());
+
+        String masked = sb.toString();
+        int saved = TokenEstimator.estimate(provider, text) - TokenEstimator.estimate(provider, masked);
+        if (saved <= 0) {
+            // 佔位符與片段的 token 數相近時遮罩沒有好處，還多了還原失敗的風險
+            skippedRequests.increment();
+            skippedTokens.add(saved);
+            log.debug("遮罩 {} 個片段估算節省 {} tokens，不進行遮罩", originals.size(), saved);
+            return null;
+        }
+        maskedRequests.increment();
+        maskedSpans.add(originals.size());
+        // 模型會在譯文中原樣輸出這些片段，輸出 token 大致節省相同數量
+        savedTokens.add(saved * 2L);
+        log.info("遮罩 {} 個片段，估算節省輸入 {} tokens、輸出約 {} tokens", originals.size(), saved, saved);
+        return new Masked(masked, List.copyOf(originals), saved);
+    }
+
+    /**
+     * 還原翻譯結果中的佔位符
+     * 每個佔位符都必須出現且編號有效，錯誤訊息原樣返回
+     *
+     * @param masked 遮罩結果
+     * @param translated 模型返回的翻譯結果
+     * @return 還原後的翻譯結果；佔位符遺失或無效時返回 null
+     */
+    public String unmask(Masked masked, String translated) {
+        if (!TranslationCache.isCacheable(translated)) {
+            return translated;
+        }
+
+        List<String> originals = masked.originals();
+        boolean[] restored = new boolean[originals.size()];
+        Matcher matcher = PLACEHOLDER.matcher(translated);
+        StringBuilder sb = new StringBuilder(translated.length() + masked.text().length());
+        int last = 0;
+        while (matcher.find()) {
+            int index;
+            try {
+                index = Integer.parseInt(matcher.group(1));
+            } catch (NumberFormatException e) {
+                index = -1;
+            }
+            if (index < 0 || index >= originals.size()) {
+                return restoreFailed("無效的佔位符 " + matcher.group());
+            }
+            sb.append(translated, last, matcher.start()).append(originals.get(index));
+            restored[index] = true;
+            last = matcher.end();
+        }
+        for (int i = 0; i < restored.length; i++) {
+            if (!restored[i]) {
+                return restoreFailed("遺失佔位符 {{" + i + "}}");
+            }
+        }
+        sb.append(translated, last, translated.length());
+        return sb.toString();
+    }
+
+    private String restoreFailed(String detail) {
+        restoreFailures.increment();
+        log.warn("翻譯結果的佔位符無法還原 ({})，改用原文翻譯", detail);
+        return null;
+    }
+
+    private static int countDigits(String span) {
+        int digits = 0;
+        for (int i = 0; i < span.length(); i++) {
+            if (Character.isDigit(span.charAt(i))) {
+                digits++;
+            }
+        }
+        return digits;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "翻譯片段遮罩";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long requests = maskedRequests.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用").append("\n");
+        sb.append("遮罩請求: ").append(requests).append(" 次, 片段: ").append(maskedSpans.sum()).append(" 個\n");
+        sb.append("估算節省: ").append(savedTokens.sum()).append(" tokens");
+        if (requests > 0) {
+            sb.append(String.format(" (平均每次 %.1f)", (double) savedTokens.sum() / requests));
+        }
+        sb.append("\n略過遮罩: ").append(skippedRequests.sum()).append(" 次 (估算節省 ")
+          .append(skippedTokens.sum()).append(" tokens)");
+        sb.append("\n還原失敗: ").append(restoreFailures.sum()).append(" 次");
+        return sb.toString();
+    }
+}
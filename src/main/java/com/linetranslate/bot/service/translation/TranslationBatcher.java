@@ -0,0 +1,280 @@
+package com.linetranslate.bot.service.translation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.linetranslate.bot.service.ai.AiService;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 翻譯請求的微批次處理
+ * 在短時間窗口內收集相同提供者、模型與目標語言的短文本，合併成一個要求返回 JSON 陣列的提示，
+ * 以一次 LLM 呼叫完成，再把結果分配回各自的 Future。解析失敗或數量不符時，逐筆改用一般翻譯
+ */
+@Component
+@Slf4j
+public class TranslationBatcher implements MetricsReporter {
+
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxItems;
+    private final int maxTextLength;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final Map<String, PendingBatch> pending = new HashMap<>();
+
+    private final LongAdder directCalls = new LongAdder();
+    private final LongAdder batchCalls = new LongAdder();
+    private final LongAdder batchedItems = new LongAdder();
+    private final LongAdder fallbackItems = new LongAdder();
+
+    @Autowired
+    public TranslationBatcher(
+            @Value("${app.translation.batching.enabled:false}") boolean enabled,
+            @Value("${app.translation.batching.window:30ms}") Duration window,
+            @Value("${app.translation.batching.max-items:16}") int maxItems,
+            @Value("${app.translation.batching.max-text-length:500}") int maxTextLength) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxItems = maxItems;
+        this.maxTextLength = maxTextLength;
+
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "translation-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        log.info("翻譯微批次啟用: {}, 窗口: {}, 每批上限: {} 筆", enabled, window, maxItems);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 翻譯文本，短文本會與同一窗口內的其他請求合併
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @return 完成時包含翻譯結果
+     */
+    public CompletableFuture<String> translate(AiService aiService, String text, String targetLanguage) {
+        return translate(aiService, text, targetLanguage, null);
+    }
+
+    /**
+     * 翻譯文本，結果由其他提供者產生時（例如對沖請求）通知呼叫者
+     * 合併的批次呼叫只使用指定的服務，不會觸發通知
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param onServedByOther 結果由其他提供者產生時的回呼，可為 null
+     * @return 完成時包含翻譯結果
+     */
+    public CompletableFuture<String> translate(AiService aiService, String text, String targetLanguage,
+                                               Consumer<AiService.ServedBy> onServedByOther) {
+        if (!enabled || text.length() > maxTextLength) {
+            directCalls.increment();
+            return aiService.translateTextAsync(text, targetLanguage, aiService.getModelName(), onServedByOther);
+        }
+
+        String key = aiService.getProviderName() + "/" + aiService.getModelName() + "/" + targetLanguage;
+        CompletableFuture<String> future = new CompletableFuture<>();
+        PendingBatch full = null;
+
+        synchronized (pending) {
+            PendingBatch batch = pending.computeIfAbsent(key, k -> new PendingBatch(aiService, targetLanguage));
+            batch.texts.add(text);
+            batch.futures.add(future);
+            batch.servedByCallbacks.add(onServedByOther);
+
+            if (batch.texts.size() == 1) {
+                batch.timer = timer.schedule(() -> flush(key, batch), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            if (batch.texts.size() >= maxItems) {
+                pending.remove(key);
+                batch.timer.cancel(false);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void flush(String key, PendingBatch batch) {
+        synchronized (pending) {
+            if (pending.get(key) != batch) {
+                return;
+            }
+            pending.remove(key);
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(PendingBatch batch) {
+        int size = batch.texts.size();
+        if (size == 1) {
+            directCalls.increment();
+            forward(translateSingle(batch, 0), batch.futures.get(0));
+            return;
+        }
+
+        batchCalls.increment();
+        batchedItems.add(size);
+        log.debug("合併 {} 筆翻譯請求 ({} -> {})", size, batch.service.getProviderName(), batch.targetLanguage);
+
+        String textsJson;
+        try {
+            textsJson = objectMapper.writeValueAsString(batch.texts);
+        } catch (Exception e) {
+            fallback(batch, 0, size);
+            return;
+        }
+
+        // 使用翻譯的溫度與模型設定，而不是文本生成的設定
+        CompletableFuture<String> call = batch.service.translateBatchAsync(textsJson, batch.targetLanguage,
+                batch.service.getModelName());
+        call.whenComplete((response, error) -> {
+            List<String> results = error == null ? parseResults(response, size) : null;
+            if (results == null) {
+                log.warn("無法解析批次翻譯結果，{} 筆改為逐筆翻譯", size);
+                fallback(batch, 0, size);
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                String result = results.get(i);
+                if (result == null || result.isBlank()) {
+                    fallback(batch, i, i + 1);
+                } else {
+                    batch.futures.get(i).complete(result.trim());
+                }
+            }
+        });
+    }
+
+    /**
+     * 逐筆改用一般翻譯
+     */
+    private void fallback(PendingBatch batch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            fallbackItems.increment();
+            forward(translateSingle(batch, i), batch.futures.get(i));
+        }
+    }
+
+    private static CompletableFuture<String> translateSingle(PendingBatch batch, int index) {
+        return batch.service.translateTextAsync(batch.texts.get(index), batch.targetLanguage,
+                batch.service.getModelName(), batch.servedByCallbacks.get(index));
+    }
+
+    private static void forward(CompletableFuture<String> source, CompletableFuture<String> target) {
+        source.whenComplete((result, error) -> {
+            if (error != null) {
+                target.complete("翻譯失敗: " + error.getMessage());
+            } else {
+                target.complete(result);
+            }
+        });
+    }
+
+    /**
+     * 解析模型返回的 JSON 陣列，容許前後包含 markdown 程式碼區塊等文字
+     *
+     * @return 翻譯結果，格式或數量不符時返回 null
+     */
+    private List<String> parseResults(String response, int expectedSize) {
+        if (response == null) {
+            return null;
+        }
+        int start = response.indexOf('[');
+        int end = response.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+
+        try {
+            JsonNode array = objectMapper.readTree(response.substring(start, end + 1));
+            if (!array.isArray() || array.size() != expectedSize) {
+                return null;
+            }
+            List<String> results = new ArrayList<>(expectedSize);
+            for (JsonNode node : array) {
+                results.add(node.isTextual() ? node.asText() : null);
+            }
+            return results;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "翻譯微批次";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long batches = batchCalls.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用")
+          .append(", 窗口: ").append(window.toMillis()).append("ms")
+          .append(", 每批上限: ").append(maxItems).append("\n");
+        sb.append("批次呼叫: ").append(batches)
+          .append(", 合併請求: ").append(batchedItems.sum());
+        if (batches > 0) {
+            sb.append(String.format(", 平均 %.1f 筆", (double) batchedItems.sum() / batches));
+        }
+        sb.append("\n單筆呼叫: ").append(directCalls.sum())
+          .append(", 逐筆備援: ").append(fallbackItems.sum());
+        return sb.toString();
+    }
+
+    /**
+     * 尚未送出的批次
+     */
+    private static class PendingBatch {
+        private final AiService service;
+        private final String targetLanguage;
+        private final List<String> texts = new ArrayList<>();
+        private final List<CompletableFuture<String>> futures = new ArrayList<>();
+        private final List<Consumer<AiService.ServedBy>> servedByCallbacks = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+
+        PendingBatch(AiService service, String targetLanguage) {
+            this.service = service;
+            this.targetLanguage = targetLanguage;
+        }
+    }
+}
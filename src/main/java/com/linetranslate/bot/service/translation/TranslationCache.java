@@ -0,0 +1,356 @@
+package com.linetranslate.bot.service.translation;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 翻譯結果快取，位於 AiService.translateText 之前
+ * 使用 Caffeine 的 W-TinyLFU 淘汰策略，以字元數作為權重限制容量，並設定存活時間。
+ * 相同鍵的請求在載入期間會共用同一次呼叫（single-flight），不會在快取寫入前重複呼叫 LLM
+ */
+@Component
+@Slf4j
+public class TranslationCache implements MetricsReporter {
+
+    private final boolean enabled;
+    private final Cache<TranslationCacheKey, String> cache;
+    private final ConcurrentStatsCounter statsCounter = new ConcurrentStatsCounter();
+
+    private final boolean singleFlightEnabled;
+    private final ConcurrentHashMap<TranslationCacheKey, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder flightLeaders = new LongAdder();
+    private final LongAdder collapsedCalls = new LongAdder();
+
+    public TranslationCache(
+            @Value("${app.translation.cache.enabled:true}") boolean enabled,
+            @Value("${app.translation.cache.max-weight:2000000}") long maxWeight,
+            @Value("${app.translation.cache.expire-after-write:6h}") Duration expireAfterWrite,
+            @Value("${app.translation.cache.single-flight:true}") boolean singleFlightEnabled) {
+        this.enabled = enabled;
+        this.singleFlightEnabled = singleFlightEnabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((TranslationCacheKey key, String value) -> key.getText().length() + value.length())
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats(() -> statsCounter)
+                .build();
+
+        log.info("翻譯快取初始化完成，啟用: {}, 最大權重: {} 字元, 存活時間: {}, 合併相同請求: {}",
+                enabled, maxWeight, expireAfterWrite, singleFlightEnabled);
+    }
+
+    /**
+     * 從快取獲取翻譯結果，未命中時呼叫載入函數並將成功的結果寫入快取
+     *
+     * @param key 快取鍵
+     * @param loader 實際執行翻譯的函數，可透過 Load 改變結果寫入的快取鍵
+     * @return 翻譯結果
+     */
+    public String get(TranslationCacheKey key, Function<Load, String> loader) {
+        String cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (!singleFlightEnabled) {
+            return load(key, loader);
+        }
+
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            collapsedCalls.increment();
+            log.debug("合併進行中的翻譯請求: {} -> {}", key.getProvider(), key.getTargetLanguage());
+            try {
+                return existing.result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        // 載入函數拋出 Error 時也要結束 single-flight，否則之後相同鍵的請求會一直等待
+        try {
+            String result = loadAsLeader(key, loader);
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 非同步版本的 get，命中時返回已完成的 Future，未命中時在載入完成後寫入快取
+     *
+     * @param key 快取鍵
+     * @param loader 返回翻譯結果 Future 的函數，可透過 Load 改變結果寫入的快取鍵
+     * @return 翻譯結果
+     */
+    public CompletableFuture<String> getAsync(TranslationCacheKey key, Function<Load, CompletableFuture<String>> loader) {
+        String cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (!singleFlightEnabled) {
+            return loadAsync(key, loader);
+        }
+
+        Flight flight = new Flight();
+        while (true) {
+            Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                break;
+            }
+            CompletableFuture<String> waiter = existing.join();
+            if (waiter != null) {
+                collapsedCalls.increment();
+                log.debug("合併進行中的翻譯請求: {} -> {}", key.getProvider(), key.getTargetLanguage());
+                return waiter;
+            }
+            // 所有等待者都已取消的載入不再共用
+            inFlight.remove(key, existing);
+        }
+
+        CompletableFuture<String> leader = flight.join();
+        flightLeaders.increment();
+        String loaded = enabled ? cache.asMap().get(key) : null;
+        CompletableFuture<String> source;
+        try {
+            source = loaded != null ? CompletableFuture.completedFuture(loaded) : loadAsync(key, loader);
+        } catch (RuntimeException e) {
+            source = CompletableFuture.failedFuture(e);
+        } catch (Error e) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        source.whenComplete((result, error) -> {
+            // 先寫入快取再移除，之後的請求會直接命中快取
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.result.completeExceptionally(error);
+            } else {
+                flight.result.complete(result);
+            }
+        });
+        flight.start(source);
+        return leader;
+    }
+
+    /**
+     * 寫入由其他途徑（例如合併檢測與翻譯）取得的翻譯結果，錯誤訊息不會寫入
+     *
+     * @param key 快取鍵
+     * @param result 翻譯結果
+     */
+    public void put(TranslationCacheKey key, String result) {
+        if (enabled && isCacheable(result)) {
+            cache.put(key, result);
+        }
+    }
+
+    private String lookup(TranslationCacheKey key) {
+        if (!enabled) {
+            return null;
+        }
+        String cached = cache.getIfPresent(key);
+        if (cached != null) {
+            log.debug("翻譯快取命中: {} -> {}", key.getProvider(), key.getTargetLanguage());
+        }
+        return cached;
+    }
+
+    /**
+     * 取得 single-flight 後再檢查一次快取，前一次載入可能剛好在查詢與取得之間完成
+     */
+    private String loadAsLeader(TranslationCacheKey key, Function<Load, String> loader) {
+        flightLeaders.increment();
+        String loaded = enabled ? cache.asMap().get(key) : null;
+        return loaded != null ? loaded : load(key, loader);
+    }
+
+    private String load(TranslationCacheKey key, Function<Load, String> loader) {
+        // 不在 Caffeine 的 compute 中執行 LLM 呼叫，避免長時間佔用雜湊桶鎖
+        long startNanos = System.nanoTime();
+        Load load = new Load(key);
+        String result = loader.apply(load);
+        long loadNanos = System.nanoTime() - startNanos;
+
+        if (!enabled) {
+            return result;
+        }
+        if (isCacheable(result)) {
+            statsCounter.recordLoadSuccess(loadNanos);
+            cache.put(load.storeKey, result);
+        } else {
+            statsCounter.recordLoadFailure(loadNanos);
+        }
+        return result;
+    }
+
+    private CompletableFuture<String> loadAsync(TranslationCacheKey key, Function<Load, CompletableFuture<String>> loader) {
+        Load load = new Load(key);
+        if (!enabled) {
+            return loader.apply(load);
+        }
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<String> call = loader.apply(load);
+        CompletableFuture<String> loaded = call.whenComplete((result, error) -> {
+            long loadNanos = System.nanoTime() - startNanos;
+            if (error == null && isCacheable(result)) {
+                statsCounter.recordLoadSuccess(loadNanos);
+                cache.put(load.storeKey, result);
+            } else {
+                statsCounter.recordLoadFailure(loadNanos);
+            }
+        });
+        // 取消衍生的 Future 不會傳遞到原本的呼叫，需要手動取消
+        loaded.whenComplete((result, error) -> {
+            if (loaded.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * 一次載入的寫入設定
+     * 結果實際由其他提供者或模型產生時（例如對沖請求由次要提供者勝出），
+     * 載入函數可改以對應的快取鍵保存，避免之後查詢原本的模型時取得其他模型的譯文
+     */
+    public static final class Load {
+        private volatile TranslationCacheKey storeKey;
+
+        private Load(TranslationCacheKey key) {
+            this.storeKey = key;
+        }
+
+        /**
+         * 改以指定的快取鍵保存載入結果，需在載入完成前呼叫
+         *
+         * @param key 實際產生結果的提供者與模型對應的快取鍵
+         */
+        public void storeUnder(TranslationCacheKey key) {
+            this.storeKey = key;
+        }
+    }
+
+    /**
+     * 一次進行中的非同步載入
+     * 每個呼叫者取得結果的副本，個別呼叫者取消時不影響其他等待者；所有等待者都取消時才取消實際的 LLM 呼叫
+     */
+    private static final class Flight {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private CompletableFuture<String> source;
+        private int waiters;
+        private boolean abandoned;
+
+        /**
+         * 加入等待
+         *
+         * @return 結果的副本；載入已因所有等待者取消而放棄時返回 null
+         */
+        synchronized CompletableFuture<String> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<String> waiter = result.copy();
+            waiter.whenComplete((value, error) -> {
+                if (waiter.isCancelled()) {
+                    leave();
+                }
+            });
+            return waiter;
+        }
+
+        void start(CompletableFuture<String> source) {
+            boolean cancel;
+            synchronized (this) {
+                this.source = source;
+                cancel = abandoned;
+            }
+            if (cancel) {
+                source.cancel(true);
+            }
+        }
+
+        private void leave() {
+            CompletableFuture<String> toCancel;
+            synchronized (this) {
+                if (--waiters > 0 || result.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                toCancel = source;
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 清除所有快取的翻譯結果
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 判斷翻譯結果是否可以快取，AI 服務回傳的錯誤訊息不應被快取
+     */
+    static boolean isCacheable(String result) {
+        if (result == null || result.isBlank()) {
+            return false;
+        }
+        return !result.startsWith("翻譯失敗") && !result.startsWith("無法翻譯");
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "翻譯快取";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        CacheStats stats = cache.stats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用").append("\n");
+        sb.append("項目數: ").append(cache.estimatedSize()).append("\n");
+        cache.policy().eviction().ifPresent(eviction -> {
+            sb.append("權重: ").append(eviction.weightedSize().orElse(0L))
+              .append(" / ").append(eviction.getMaximum()).append("\n");
+        });
+        sb.append("命中: ").append(stats.hitCount())
+          .append(", 未命中: ").append(stats.missCount())
+          .append(String.format(" (命中率 %.1f%%)", stats.hitRate() * 100)).append("\n");
+        sb.append("淘汰: ").append(stats.evictionCount())
+          .append(" 項 (權重 ").append(stats.evictionWeight()).append(")\n");
+        sb.append("載入: 成功 ").append(stats.loadSuccessCount())
+          .append(", 未快取 ").append(stats.loadFailureCount())
+          .append(String.format(", 平均耗時 %.1f ms", stats.averageLoadPenalty() / 1_000_000.0)).append("\n");
+        sb.append("合併相同請求: ").append(singleFlightEnabled ? "已啟用" : "已停用")
+          .append(", 實際呼叫 ").append(flightLeaders.sum())
+          .append(", 合併 ").append(collapsedCalls.sum())
+          .append(", 進行中 ").append(inFlight.size());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.linetranslate.bot.service.translation;
+
+import com.linetranslate.bot.util.LanguageCode;
+import com.linetranslate.bot.util.TextNormalizer;
+
+import lombok.Value;
+
+/**
+ * 翻譯快取鍵，由正規化文本、目標語言、AI 提供者與實際使用的模型組成
+ */
+@Value
+public class TranslationCacheKey {
+
+    String text;
+    String targetLanguage;
+    String provider;
+    String model;
+
+    /**
+     * 建立快取鍵
+     *
+     * @param text 原始文本
+     * @param targetLanguage 目標語言
+     * @param provider AI 提供者名稱
+     * @param model 模型名稱
+     * @return 快取鍵
+     */
+    public static TranslationCacheKey of(String text, String targetLanguage, String provider, String model) {
+        return new TranslationCacheKey(
+                TextNormalizer.normalizeForKey(text),
+                LanguageCode.of(targetLanguage).getTag(),
+                provider != null ? provider : "",
+                model != null ? model : "");
+    }
+}
@@ -0,0 +1,266 @@
+package com.linetranslate.bot.service.translation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.ai.TokenEstimator;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 長文本的分段翻譯
+ * 依提供者估算 token 數，超過單段上限的文本先以段落、再以句子為界切分，
+ * 各段以有上限的並行數翻譯，最後依原本的順序與分隔符號組合
+ */
+@Component
+@Slf4j
+public class TranslationChunker implements MetricsReporter {
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[。！？!?])|(?<=[.;；])\\s+|\\n");
+
+    private final boolean enabled;
+    private final int maxChunkTokens;
+    private final int maxParallel;
+
+    private final LongAdder chunkedRequests = new LongAdder();
+    private final LongAdder totalChunks = new LongAdder();
+    private final AtomicLong maxChunks = new AtomicLong();
+
+    @Autowired
+    public TranslationChunker(
+            @Value("${app.translation.chunking.enabled:true}") boolean enabled,
+            @Value("${app.translation.chunking.max-chunk-tokens:800}") int maxChunkTokens,
+            @Value("${app.translation.chunking.max-parallel:4}") int maxParallel) {
+        this.enabled = enabled;
+        this.maxChunkTokens = maxChunkTokens;
+        this.maxParallel = Math.max(1, maxParallel);
+
+        log.info("長文本分段翻譯啟用: {}, 每段上限: {} tokens, 並行數: {}", enabled, maxChunkTokens, maxParallel);
+    }
+
+    /**
+     * 文本是否需要分段翻譯
+     *
+     * @param provider AI 提供者
+     * @param text 要翻譯的文本
+     */
+    public boolean needsChunking(String provider, String text) {
+        return enabled && TokenEstimator.estimate(provider, text) > maxChunkTokens;
+    }
+
+    /**
+     * 分段翻譯長文本
+     *
+     * @param provider AI 提供者，用於估算 token 數
+     * @param text 要翻譯的文本
+     * @param translator 翻譯單一段落的函數
+     * @return 完成時包含依原順序組合的翻譯結果；任何一段失敗時返回該段的錯誤訊息
+     */
+    public CompletableFuture<String> translate(String provider, String text, Function<String, CompletableFuture<String>> translator) {
+        List<Chunk> chunks = split(provider, text);
+        if (chunks.size() == 1) {
+            return translator.apply(text);
+        }
+
+        chunkedRequests.increment();
+        totalChunks.add(chunks.size());
+        maxChunks.accumulateAndGet(chunks.size(), Math::max);
+        log.info("長文本分成 {} 段翻譯，並行數: {}", chunks.size(), Math.min(maxParallel, chunks.size()));
+
+        List<CompletableFuture<String>> results = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+
+        // 同時最多執行 maxParallel 段，每完成一段就開始下一段
+        AtomicInteger next = new AtomicInteger();
+        for (int i = 0; i < Math.min(maxParallel, chunks.size()); i++) {
+            launchNext(chunks, results, next, translator);
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> assemble(chunks, results));
+    }
+
+    private void launchNext(List<Chunk> chunks, List<CompletableFuture<String>> results, AtomicInteger next,
+                            Function<String, CompletableFuture<String>> translator) {
+        int index = next.getAndIncrement();
+        if (index >= chunks.size()) {
+            return;
+        }
+
+        CompletableFuture<String> translation;
+        try {
+            translation = translator.apply(chunks.get(index).text());
+        } catch (RuntimeException e) {
+            translation = CompletableFuture.failedFuture(e);
+        }
+        translation.whenComplete((result, error) -> {
+            results.get(index).complete(error != null ? "翻譯失敗: " + error.getMessage() : result);
+            launchNext(chunks, results, next, translator);
+        });
+    }
+
+    private static String assemble(List<Chunk> chunks, List<CompletableFuture<String>> results) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            String translated = results.get(i).join();
+            if (!TranslationCache.isCacheable(translated)) {
+                return translated;
+            }
+            sb.append(translated).append(chunks.get(i).separator());
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * 將文本切分成不超過 token 上限的段落，保留每段之後的分隔符號
+     */
+    List<Chunk> split(String provider, String text) {
+        List<Chunk> pieces = new ArrayList<>();
+        for (Chunk paragraph : splitBy(PARAGRAPH_BREAK, text)) {
+            if (TokenEstimator.estimate(provider, paragraph.text()) <= maxChunkTokens) {
+                pieces.add(paragraph);
+                continue;
+            }
+            // 段落過長時以句子為界，單一句子仍過長時依字元數切分
+            List<Chunk> sentences = splitBy(SENTENCE_END, paragraph.text());
+            Chunk last = sentences.remove(sentences.size() - 1);
+            sentences.add(new Chunk(last.text(), last.separator() + paragraph.separator()));
+            for (Chunk sentence : sentences) {
+                pieces.addAll(splitHard(provider, sentence));
+            }
+        }
+        return pack(provider, pieces);
+    }
+
+    /**
+     * 依序合併相鄰的片段，直到再加入下一個片段就會超過上限
+     */
+    private List<Chunk> pack(String provider, List<Chunk> pieces) {
+        List<Chunk> chunks = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        String separator = "";
+        for (Chunk piece : pieces) {
+            if (text.length() > 0
+                    && TokenEstimator.estimate(provider, text + separator + piece.text()) > maxChunkTokens) {
+                chunks.add(new Chunk(text.toString(), separator));
+                text.setLength(0);
+            } else if (text.length() > 0) {
+                text.append(separator);
+            }
+            text.append(piece.text());
+            separator = piece.separator();
+        }
+        if (text.length() > 0 || chunks.isEmpty()) {
+            chunks.add(new Chunk(text.toString(), separator));
+        }
+        return chunks;
+    }
+
+    private List<Chunk> splitHard(String provider, Chunk sentence) {
+        String text = sentence.text();
+        if (TokenEstimator.estimate(provider, text) <= maxChunkTokens) {
+            return List.of(sentence);
+        }
+        // 依估算比例決定每段字元數的上限，高密度與拉丁文字混合時再縮短到實際不超過上限
+        int charsPerChunk = Math.max(1, (int) ((long) text.length() * maxChunkTokens / TokenEstimator.estimate(provider, text)));
+        List<Chunk> parts = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = fittingEnd(provider, text, start, Math.min(text.length(), start + charsPerChunk));
+            // 不在代理對（例如表情符號）中間切開
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))
+                    && Character.isLowSurrogate(text.charAt(end))) {
+                end = end - 1 > start ? end - 1 : end + 1;
+            }
+            parts.add(new Chunk(text.substring(start, end), end == text.length() ? sentence.separator() : ""));
+            start = end;
+        }
+        return parts;
+    }
+
+    /**
+     * 以二分搜尋找出 start 之後不超過 token 上限的最遠位置，估算值隨長度單調增加；
+     * 切得較短的片段之後會由 pack 合併
+     */
+    private int fittingEnd(String provider, String text, int start, int maxEnd) {
+        int low = start + 1;
+        int high = maxEnd;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (TokenEstimator.estimate(provider, text.substring(start, mid)) <= maxChunkTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static List<Chunk> splitBy(Pattern pattern, String text) {
+        List<Chunk> chunks = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.end() == 0 || matcher.start() == start && matcher.end() == start) {
+                continue;
+            }
+            String piece = text.substring(start, matcher.start());
+            String separator = matcher.group();
+            if (piece.isBlank()) {
+                // 連續的分隔符號併入前一段
+                if (!chunks.isEmpty()) {
+                    Chunk previous = chunks.remove(chunks.size() - 1);
+                    chunks.add(new Chunk(previous.text(), previous.separator() + piece + separator));
+                }
+            } else {
+                chunks.add(new Chunk(piece, separator));
+            }
+            start = matcher.end();
+        }
+        if (start < text.length() || chunks.isEmpty()) {
+            chunks.add(new Chunk(text.substring(start), ""));
+        }
+        return chunks;
+    }
+
+    /**
+     * 一段文本及其後的分隔符號
+     */
+    record Chunk(String text, String separator) {
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "長文本分段翻譯";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long requests = chunkedRequests.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用")
+          .append(", 每段上限: ").append(maxChunkTokens).append(" tokens")
+          .append(", 並行數: ").append(maxParallel).append("\n");
+        sb.append("分段翻譯: ").append(requests).append(" 次");
+        if (requests > 0) {
+            sb.append(String.format(", 平均 %.1f 段", (double) totalChunks.sum() / requests))
+              .append(", 最多 ").append(maxChunks.get()).append(" 段");
+        }
+        return sb.toString();
+    }
+}
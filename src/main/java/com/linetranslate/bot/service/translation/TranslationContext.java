@@ -0,0 +1,119 @@
+package com.linetranslate.bot.service.translation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.linetranslate.bot.service.ai.AiService;
+import com.linetranslate.bot.service.ai.RoutingDecision;
+import com.linetranslate.bot.service.line.UserPreferences;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 單一訊息的翻譯上下文，在整個處理流程中傳遞檢測結果、目標語言及各階段耗時，
+ * 確保每則訊息最多只進行一次語言檢測
+ */
+@Getter
+@Setter
+public class TranslationContext {
+
+    /**
+     * 處理階段，用於記錄各階段耗時
+     */
+    public enum Stage {
+        PROFILE("用戶資料"),
+        DETECTION("語言檢測"),
+        RATE_LIMIT("限流排隊"),
+        TRANSLATION("翻譯"),
+        PERSISTENCE("記錄保存");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final String userId;
+    private final Instant startedAt;
+    private final Map<Stage, Long> stageTimings = new EnumMap<>(Stage.class);
+
+    private UserPreferences preferences;
+    private String sourceText;
+    private String targetLanguage;
+    private LanguageDetectionResult detection;
+    private RoutingDecision routingDecision;
+    // 翻譯結果由所選服務以外的提供者產生時（例如對沖請求）的實際提供者與模型
+    private AiService.ServedBy servedBy;
+
+    private TranslationContext(String userId, Instant startedAt) {
+        this.userId = userId;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * 建立新的翻譯上下文
+     *
+     * @param userId 用戶 ID
+     * @return 翻譯上下文
+     */
+    public static TranslationContext start(String userId) {
+        return new TranslationContext(userId, Instant.now());
+    }
+
+    /**
+     * 獲取已檢測的源語言代碼
+     *
+     * @return 語言代碼，尚未檢測時返回 null
+     */
+    public String getDetectedLanguage() {
+        return detection != null ? detection.getLanguageCode() : null;
+    }
+
+    /**
+     * 獲取檢測信心分數
+     *
+     * @return 信心分數，尚未檢測時返回 0
+     */
+    public double getDetectionConfidence() {
+        return detection != null ? detection.getConfidence() : 0.0;
+    }
+
+    /**
+     * 累加某個階段的耗時
+     *
+     * @param stage 處理階段
+     * @param elapsedMs 耗時（毫秒）
+     */
+    public void recordTiming(Stage stage, long elapsedMs) {
+        stageTimings.merge(stage, elapsedMs, Long::sum);
+    }
+
+    /**
+     * 從建立上下文到現在經過的時間
+     *
+     * @return 經過的毫秒數
+     */
+    public long getElapsedMs() {
+        return Duration.between(startedAt, Instant.now()).toMillis();
+    }
+
+    /**
+     * 以文字形式輸出各階段耗時，用於日誌
+     *
+     * @return 各階段耗時字串
+     */
+    public String formatTimings() {
+        return stageTimings.entrySet().stream()
+                .map(entry -> entry.getKey().getDisplayName() + "=" + entry.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+    }
+}
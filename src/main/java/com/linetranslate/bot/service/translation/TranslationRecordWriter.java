@@ -0,0 +1,272 @@
+package com.linetranslate.bot.service.translation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.model.TranslationRecord;
+import com.linetranslate.bot.repository.TranslationRecordRepository;
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 翻譯記錄的延遲批次寫入
+ * 記錄先放入有上限的記憶體佇列，由背景執行緒在累積到批次大小或超過刷新間隔時以 bulk insert 寫入 MongoDB，
+ * 讓資料庫寫入延遲不影響用戶等待回覆的時間。應用程式關閉時會寫入所有排隊中的記錄
+ */
+@Component
+@Slf4j
+public class TranslationRecordWriter implements MetricsReporter {
+
+    /**
+     * 佇列已滿時的處理方式
+     */
+    public enum OverflowPolicy {
+        /** 在呼叫者執行緒中同步寫入，不遺失記錄 */
+        SYNC,
+        /** 丟棄新記錄 */
+        DROP_NEWEST,
+        /** 丟棄佇列中最舊的記錄 */
+        DROP_OLDEST
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final TranslationRecordRepository translationRecordRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<TranslationRecord> queue;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder writtenInline = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    @Autowired
+    public TranslationRecordWriter(
+            MongoTemplate mongoTemplate,
+            TranslationRecordRepository translationRecordRepository,
+            @Value("${app.translation.record-writer.enabled:true}") boolean enabled,
+            @Value("${app.translation.record-writer.capacity:10000}") int capacity,
+            @Value("${app.translation.record-writer.batch-size:500}") int batchSize,
+            @Value("${app.translation.record-writer.flush-interval:200ms}") Duration flushInterval,
+            @Value("${app.translation.record-writer.shutdown-timeout:10s}") Duration shutdownTimeout,
+            @Value("${app.translation.record-writer.overflow-policy:sync}") String overflowPolicy) {
+        this.mongoTemplate = mongoTemplate;
+        this.translationRecordRepository = translationRecordRepository;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase().replace('-', '_'));
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("翻譯記錄批次寫入已停用，記錄將同步寫入");
+            return;
+        }
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "translation-record-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("翻譯記錄批次寫入已啟動，佇列上限: {}, 批次大小: {}, 刷新間隔: {}, 溢出策略: {}",
+                queue.remainingCapacity(), batchSize, flushInterval, overflowPolicy);
+    }
+
+    /**
+     * 寫入翻譯記錄，正常情況下只放入佇列並立即返回
+     *
+     * @param record 翻譯記錄
+     */
+    public void write(TranslationRecord record) {
+        if (!running) {
+            writeInline(record);
+            return;
+        }
+
+        if (queue.offer(record)) {
+            enqueued.increment();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case SYNC -> writeInline(record);
+            case DROP_NEWEST -> {
+                dropped.increment();
+                log.warn("翻譯記錄佇列已滿，丟棄用戶 {} 的記錄", record.getUserId());
+            }
+            case DROP_OLDEST -> {
+                if (queue.poll() != null) {
+                    dropped.increment();
+                }
+                if (queue.offer(record)) {
+                    enqueued.increment();
+                } else {
+                    dropped.increment();
+                }
+                log.warn("翻譯記錄佇列已滿，丟棄最舊的記錄");
+            }
+        }
+    }
+
+    private void writeInline(TranslationRecord record) {
+        try {
+            translationRecordRepository.save(record);
+            writtenInline.increment();
+        } catch (Exception e) {
+            failed.increment();
+            log.error("同步寫入用戶 {} 的翻譯記錄失敗: {}", record.getUserId(), e.getMessage());
+        }
+    }
+
+    private void runWriter() {
+        List<TranslationRecord> batch = new ArrayList<>(batchSize);
+        long intervalNanos = flushInterval.toNanos();
+
+        while (running || !queue.isEmpty()) {
+            try {
+                TranslationRecord first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // 累積到批次大小或等待超過刷新間隔為止
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    TranslationRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch, batchSize - batch.size());
+                flush(batch);
+                break;
+            }
+
+            flush(batch);
+        }
+    }
+
+    private void flush(List<TranslationRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            // 無序批次寫入，單筆失敗不影響其他記錄
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TranslationRecord.class)
+                    .insert(batch)
+                    .execute();
+            written.add(batch.size());
+        } catch (BulkOperationException e) {
+            // 無序寫入時其他記錄仍會寫入，只計算實際失敗的筆數
+            int errors = e.getErrors().size();
+            written.add(batch.size() - errors);
+            failed.add(errors);
+            log.error("批次寫入 {} 筆翻譯記錄時 {} 筆失敗: {}", batch.size(), errors, e.getMessage());
+        } catch (Exception e) {
+            failed.add(batch.size());
+            log.error("批次寫入 {} 筆翻譯記錄失敗: {}", batch.size(), e.getMessage());
+        } finally {
+            long elapsed = System.nanoTime() - startNanos;
+            flushCount.increment();
+            flushNanos.add(elapsed);
+            maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+            log.debug("已批次寫入 {} 筆翻譯記錄，耗時 {}ms", batch.size(), elapsed / 1_000_000);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 停止接收新記錄並等待佇列中的記錄寫入完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+
+        running = false;
+        try {
+            writerThread.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            writerThread.interrupt();
+            log.warn("翻譯記錄寫入執行緒未能在 {} 內完成，剩餘 {} 筆記錄", shutdownTimeout, queue.size());
+        } else {
+            // 寫入停止期間才進入佇列的記錄
+            List<TranslationRecord> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            flush(remaining);
+            log.info("翻譯記錄批次寫入已停止，共寫入 {} 筆記錄", written.sum());
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "翻譯記錄寫入";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long flushes = flushCount.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(running ? "批次寫入" : "同步寫入")
+          .append(", 溢出策略: ").append(overflowPolicy).append("\n");
+        sb.append("佇列: ").append(queue.size()).append(" / ").append(queue.size() + queue.remainingCapacity()).append("\n");
+        sb.append("已排隊: ").append(enqueued.sum())
+          .append(", 批次寫入: ").append(written.sum())
+          .append(", 同步寫入: ").append(writtenInline.sum()).append("\n");
+        sb.append("丟棄: ").append(dropped.sum()).append(", 失敗: ").append(failed.sum()).append("\n");
+        sb.append("批次: ").append(flushes);
+        if (flushes > 0) {
+            sb.append(String.format(", 平均 %.1f 筆", (double) written.sum() / flushes))
+              .append(String.format(", 平均耗時 %.1f ms", flushNanos.sum() / 1_000_000.0 / flushes))
+              .append(String.format(", 最長 %.1f ms", maxFlushNanos.get() / 1_000_000.0));
+        }
+        return sb.toString();
+    }
+}
@@ -1,29 +1,36 @@
 package com.linetranslate.bot.service.translation;
 
-import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.linetranslate.bot.config.AppConfig;
 import com.linetranslate.bot.model.TranslationRecord;
 import com.linetranslate.bot.model.UserProfile;
-import com.linetranslate.bot.repository.TranslationRecordRepository;
 import com.linetranslate.bot.repository.UserProfileRepository;
 import com.linetranslate.bot.service.ai.AiService;
 import com.linetranslate.bot.service.ai.AiServiceFactory;
+import com.linetranslate.bot.service.ai.ModelRouter;
+import com.linetranslate.bot.service.ai.ProviderRateLimiter;
+import com.linetranslate.bot.service.ai.RoutingDecision;
+import com.linetranslate.bot.service.line.UserPreferences;
+import com.linetranslate.bot.service.line.UserProfileCache;
 import com.linetranslate.bot.service.translation.LanguageDetectionService;
+import com.linetranslate.bot.util.LanguageCode;
 import com.linetranslate.bot.util.LanguageUtils;
+import com.linetranslate.bot.util.TranslationDirectiveParser;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -32,38 +39,52 @@ public class TranslationService {
 
     private final LanguageDetectionService languageDetectionService;
     private final AiServiceFactory aiServiceFactory;
-    private final TranslationRecordRepository translationRecordRepository;
+    private final TranslationRecordWriter translationRecordWriter;
     private final UserProfileRepository userProfileRepository;
     private final AppConfig appConfig;
-
-    // 翻譯指令的正則表達式模式（中文語言名稱）
-    private static final Pattern TRANSLATION_COMMAND_PATTERN_CN = Pattern.compile("翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
-
-    // 翻譯指令的正則表達式模式（語言代碼）
-    private static final Pattern TRANSLATION_COMMAND_PATTERN_CODE = Pattern.compile("翻譯成([a-zA-Z\\-]+)\\s*(.*)");
-    
-    // 處理「文本 翻譯成XX文」格式的模式（中文語言名稱）
-    private static final Pattern TEXT_THEN_TRANSLATION_PATTERN_CN = Pattern.compile("(.+?)\\s+翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
-    
-    // 處理「文本 翻譯成XX」格式的模式（語言代碼）
-    private static final Pattern TEXT_THEN_TRANSLATION_PATTERN_CODE = Pattern.compile("(.+?)\\s+翻譯成([a-zA-Z\\-]+)\\s*(.*)");
-
-    // 多行翻譯指令的正則表達式模式（處理 "xxx\n翻譯成yyy" 的情況）
-    private static final Pattern MULTILINE_TRANSLATION_PATTERN_CN = Pattern.compile("(.*?)\\n翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
-    private static final Pattern MULTILINE_TRANSLATION_PATTERN_CODE = Pattern.compile("(.*?)\\n翻譯成([a-zA-Z\\-]+)\\s*(.*)");
+    private final TranslationCache translationCache;
+    private final UserProfileCache userProfileCache;
+    private final TranslationBatcher translationBatcher;
+    private final ModelRouter modelRouter;
+    private final TranslationChunker translationChunker;
+    private final CombinedDetectionTranslator combinedDetectionTranslator;
+    private final UntranslatableMessageClassifier untranslatableMessageClassifier;
+    private final PlaceholderMasker placeholderMasker;
+    private final ProviderRateLimiter rateLimiter;
+    private final boolean streamingEnabled;
 
     @Autowired
     public TranslationService(
             LanguageDetectionService languageDetectionService,
             AiServiceFactory aiServiceFactory,
-            TranslationRecordRepository translationRecordRepository,
+            TranslationRecordWriter translationRecordWriter,
             UserProfileRepository userProfileRepository,
-            AppConfig appConfig) {
+            AppConfig appConfig,
+            TranslationCache translationCache,
+            UserProfileCache userProfileCache,
+            TranslationBatcher translationBatcher,
+            ModelRouter modelRouter,
+            TranslationChunker translationChunker,
+            CombinedDetectionTranslator combinedDetectionTranslator,
+            UntranslatableMessageClassifier untranslatableMessageClassifier,
+            PlaceholderMasker placeholderMasker,
+            ProviderRateLimiter rateLimiter,
+            @Value("${app.ai.streaming.enabled:true}") boolean streamingEnabled) {
         this.languageDetectionService = languageDetectionService;
         this.aiServiceFactory = aiServiceFactory;
-        this.translationRecordRepository = translationRecordRepository;
+        this.translationRecordWriter = translationRecordWriter;
         this.userProfileRepository = userProfileRepository;
         this.appConfig = appConfig;
+        this.translationCache = translationCache;
+        this.userProfileCache = userProfileCache;
+        this.translationBatcher = translationBatcher;
+        this.modelRouter = modelRouter;
+        this.translationChunker = translationChunker;
+        this.combinedDetectionTranslator = combinedDetectionTranslator;
+        this.untranslatableMessageClassifier = untranslatableMessageClassifier;
+        this.placeholderMasker = placeholderMasker;
+        this.rateLimiter = rateLimiter;
+        this.streamingEnabled = streamingEnabled;
     }
 
     /**
@@ -74,177 +95,181 @@ public class TranslationService {
      * @return 翻譯結果
      */
     public String processTranslationRequest(String userId, String text) {
-        Instant start = Instant.now();
+        TranslationContext context = TranslationContext.start(userId);
         log.info("收到用戶 {} 的翻譯請求: {}", userId, text);
 
         // 檢查用戶是否已存在，如果不存在則創建
-        UserProfile userProfile = ensureUserProfileExists(userId);
+        loadUserPreferences(context);
+
+        // 單次掃描解析「翻譯成XX」指令：翻譯成日文 你好 / 你好 翻譯成日文 / 你好\n翻譯成日文
+        TranslationDirectiveParser.Directive directive = TranslationDirectiveParser.parse(text);
+        if (directive == null) {
+            // 只有符號、網址等不需要翻譯的訊息直接在本地回覆
+            UntranslatableMessageClassifier.Reason skipReason = untranslatableMessageClassifier.classify(text);
+            if (skipReason != null) {
+                return untranslatableMessageClassifier.reply(skipReason, text, null);
+            }
+            // 沒有指令或格式不符合任何模式，使用默認翻譯處理
+            return handleDefaultTranslation(context, text);
+        }
 
-        // 檢查是否是多行翻譯指令格式 (例如：你好\n翻譯成日文)
-        Matcher multilineMatcherCN = MULTILINE_TRANSLATION_PATTERN_CN.matcher(text);
-        Matcher multilineMatcherCode = MULTILINE_TRANSLATION_PATTERN_CODE.matcher(text);
+        String sourceText = directive.sourceText();
+        String targetLanguage = directive.targetLanguage();
+        String languageToken = directive.languageToken();
 
-        String sourceText;
-        String targetLanguage;
+        if (sourceText.isEmpty()) {
+            return directive.form() == TranslationDirectiveParser.Form.PREFIX
+                    ? "請在「翻譯成" + languageToken + "」後面輸入要翻譯的文字。"
+                    : "請提供要翻譯成" + languageToken + "的文字。";
+        }
 
-        // 處理多行翻譯格式
-        if (multilineMatcherCN.find()) {
-            sourceText = multilineMatcherCN.group(1).trim();
-            String languageName = multilineMatcherCN.group(2);
-            targetLanguage = LanguageUtils.toLanguageCode(languageName);
-            String additionalText = multilineMatcherCN.group(3).trim();
+        UntranslatableMessageClassifier.Reason skipReason = untranslatableMessageClassifier.classify(sourceText);
+        if (skipReason != null) {
+            return untranslatableMessageClassifier.reply(skipReason, sourceText, targetLanguage);
+        }
 
-            // 如果有額外文本，添加到源文本
-            if (!additionalText.isEmpty()) {
-                sourceText += " " + additionalText;
-            }
+        log.info("{} 格式翻譯，用戶指定翻譯成: {} ({}), 原文: {}", directive.form(), languageToken,
+                directive.languageName() ? targetLanguage : LanguageUtils.toChineseName(targetLanguage), sourceText);
 
-            if (sourceText.isEmpty()) {
-                return "請提供要翻譯成" + languageName + "的文字。";
-            }
+        // 進行實際的翻譯處理
+        context.setSourceText(sourceText);
+        context.setTargetLanguage(targetLanguage);
+        return performTranslation(context);
+    }
 
-            log.info("多行格式翻譯，用戶指定翻譯成: {} ({}), 原文: {}", languageName, targetLanguage, sourceText);
+    /**
+     * 處理默認的翻譯情況（無指定目標語言）
+     */
+    private String handleDefaultTranslation(TranslationContext context, String text) {
+        // 使用自動檢測語言並選擇目標語言，檢測結果保存在上下文中供後續使用
+        UserPreferences preferences = context.getPreferences();
+        context.setSourceText(text);
+
+        // 本地檢測無法確定時，以一次 AI 呼叫同時檢測與翻譯，失敗時改用兩步驟流程
+        if (combinedDetectionTranslator.isEnabled() && !languageDetectionService.detectLanguageWithoutAi(context)) {
+            String combined = translateWithCombinedDetection(context);
+            if (combined != null) {
+                return combined;
+            }
         }
-        else if (multilineMatcherCode.find()) {
-            sourceText = multilineMatcherCode.group(1).trim();
-            String languageCode = multilineMatcherCode.group(2);
-            targetLanguage = languageCode.toLowerCase();
-            String additionalText = multilineMatcherCode.group(3).trim();
 
-            // 如果有額外文本，添加到源文本
-            if (!additionalText.isEmpty()) {
-                sourceText += " " + additionalText;
-            }
+        String sourceLanguage = languageDetectionService.detectLanguage(context);
+        String targetLanguage = resolveTargetLanguage(sourceLanguage, preferences);
 
-            if (sourceText.isEmpty()) {
-                return "請提供要翻譯成" + languageCode + "的文字。";
-            }
+        log.info("自動檢測語言: {} (信心 {}), 目標語言: {}", sourceLanguage,
+                String.format("%.2f", context.getDetectionConfidence()), targetLanguage);
+
+        context.setTargetLanguage(targetLanguage);
+        return performTranslation(context);
+    }
 
-            log.info("多行格式翻譯，用戶指定翻譯成: {} ({}), 原文: {}", languageCode, LanguageUtils.toChineseName(targetLanguage), sourceText);
+    /**
+     * 以一次 AI 呼叫同時檢測源語言並翻譯
+     * 模型選擇的目標語言與規則不一致時只保留檢測結果，返回 null 由呼叫者以正確的目標語言翻譯。
+     * 需要分段的長文本不走合併路徑，單次回應會超過輸出上限，改由兩步驟流程分段翻譯
+     *
+     * @return 翻譯結果；需要改用兩步驟流程時返回 null
+     */
+    private String translateWithCombinedDetection(TranslationContext context) {
+        UserPreferences preferences = context.getPreferences();
+        AiService aiService = selectService(context, false);
+        if (translationChunker.needsChunking(aiService.getProviderName(), context.getSourceText())) {
+            log.debug("文本需要分段翻譯，略過合併檢測與翻譯");
+            return null;
         }
-        // 處理「文本 翻譯成XX文」格式
-        else if (text.contains("翻譯成")) {
-            Matcher textThenTranslationMatcherCN = TEXT_THEN_TRANSLATION_PATTERN_CN.matcher(text);
-            Matcher textThenTranslationMatcherCode = TEXT_THEN_TRANSLATION_PATTERN_CODE.matcher(text);
-            
-            if (textThenTranslationMatcherCN.find()) {
-                // 使用用戶指定的中文語言名稱
-                sourceText = textThenTranslationMatcherCN.group(1).trim();
-                String languageName = textThenTranslationMatcherCN.group(2);
-                targetLanguage = LanguageUtils.toLanguageCode(languageName);
-                String additionalText = textThenTranslationMatcherCN.group(3).trim();
-                
-                // 如果有額外文本，添加到源文本
-                if (!additionalText.isEmpty()) {
-                    sourceText += " " + additionalText;
-                }
-                
-                log.info("文本後翻譯格式，用戶指定翻譯成: {} ({}), 原文: {}", languageName, targetLanguage, sourceText);
-            } else if (textThenTranslationMatcherCode.find()) {
-                // 使用用戶指定的語言代碼
-                sourceText = textThenTranslationMatcherCode.group(1).trim();
-                String languageCode = textThenTranslationMatcherCode.group(2);
-                targetLanguage = languageCode.toLowerCase();
-                String additionalText = textThenTranslationMatcherCode.group(3).trim();
-                
-                // 如果有額外文本，添加到源文本
-                if (!additionalText.isEmpty()) {
-                    sourceText += " " + additionalText;
-                }
-                
-                log.info("文本後翻譯格式，用戶指定翻譯成: {} ({}), 原文: {}", languageCode, LanguageUtils.toChineseName(targetLanguage), sourceText);
-            }
-            // 檢查是否是單行翻譯指令格式 (例如：翻譯成日文 你好)
-            else if (text.startsWith("翻譯成")) {
-                Matcher matcherCN = TRANSLATION_COMMAND_PATTERN_CN.matcher(text);
-                Matcher matcherCode = TRANSLATION_COMMAND_PATTERN_CODE.matcher(text);
-
-                if (matcherCN.find()) {
-                    // 使用用戶指定的中文語言名稱
-                    String languageName = matcherCN.group(1);
-                    targetLanguage = LanguageUtils.toLanguageCode(languageName);
-                    sourceText = matcherCN.group(2).trim();
-
-                    if (sourceText.isEmpty()) {
-                        return "請在「翻譯成" + languageName + "」後面輸入要翻譯的文字。";
-                    }
-
-                    log.info("用戶指定翻譯成: {} ({}), 原文: {}", languageName, targetLanguage, sourceText);
-                } else if (matcherCode.find()) {
-                    // 使用用戶指定的語言代碼
-                    String languageCode = matcherCode.group(1);
-                    targetLanguage = languageCode.toLowerCase();
-                    sourceText = matcherCode.group(2).trim();
-
-                    if (sourceText.isEmpty()) {
-                        return "請在「翻譯成" + languageCode + "」後面輸入要翻譯的文字。";
-                    }
-
-                    log.info("用戶指定翻譯成: {} ({}), 原文: {}", languageCode, LanguageUtils.toChineseName(targetLanguage), sourceText);
-                } else {
-                    // 如果格式不正確，使用默認翻譯處理
-                    return handleDefaultTranslation(userId, text, userProfile, start);
-                }
-            } else {
-                // 如果包含「翻譯成」但格式不符合任何模式，使用默認翻譯處理
-                return handleDefaultTranslation(userId, text, userProfile, start);
-            }
-        } else {
-            // 使用默認翻譯處理
-            return handleDefaultTranslation(userId, text, userProfile, start);
+
+        long startNanos = System.nanoTime();
+        CombinedDetectionTranslator.Result result;
+        try {
+            result = combinedDetectionTranslator.detectAndTranslate(aiService, context.getSourceText(),
+                    targetLanguageRules(preferences), otherTargetLanguage(preferences),
+                    source -> resolveTargetLanguage(source, preferences)).join();
+        } catch (Exception e) {
+            log.error("合併檢測與翻譯失敗: {}", e.getMessage());
+            result = null;
         }
+        context.recordTiming(TranslationContext.Stage.TRANSLATION, (System.nanoTime() - startNanos) / 1_000_000);
 
-        // 進行實際的翻譯處理
-        return performTranslation(userId, userProfile, sourceText, targetLanguage, start);
+        if (result == null) {
+            return null;
+        }
+        context.setDetection(languageDetectionService.recordAiDetection(context.getSourceText(), result.sourceLanguage()));
+        if (!result.isTranslated()) {
+            return null;
+        }
+
+        log.info("合併檢測與翻譯: {} -> {}", result.sourceLanguage(), result.targetLanguage());
+        context.setTargetLanguage(result.targetLanguage());
+        // 檢測結果已寫入檢測快取，相同訊息下次會走一般翻譯流程並命中翻譯快取
+        translationCache.put(TranslationCacheKey.of(context.getSourceText(), result.targetLanguage(),
+                aiService.getProviderName(), aiService.getModelName()), result.translation());
+        persistTranslation(context, aiService, result.translation());
+        return formatTranslationResult(result.translation(), context.getDetectedLanguage(), result.targetLanguage());
     }
 
     /**
-     * 處理默認的翻譯情況（無指定目標語言）
+     * 依源語言與用戶偏好決定自動翻譯的目標語言
+     *
+     * @param sourceLanguage 源語言
+     * @param preferences 用戶偏好設定
+     * @return 目標語言代碼
      */
-    private String handleDefaultTranslation(String userId, String text, UserProfile userProfile, Instant start) {
-        // 使用自動檢測語言並選擇目標語言
-        String sourceText = text;
-        String sourceLanguage = languageDetectionService.detectLanguage(sourceText);
-        String targetLanguage;
-
-        // 決定目標語言
-        if (userProfile.getPreferredLanguage() != null && !userProfile.getPreferredLanguage().isEmpty()) {
+    private String resolveTargetLanguage(String sourceLanguage, UserPreferences preferences) {
+        String preferredLanguage = preferences.getPreferredLanguage();
+        if (preferredLanguage != null && !preferredLanguage.isEmpty()) {
             // 如果用戶有偏好設置，但輸入的語言與偏好語言相同，則使用默認規則
-            if (sourceLanguage.equals(userProfile.getPreferredLanguage()) ||
-                    (sourceLanguage.startsWith("zh") && userProfile.getPreferredLanguage().startsWith("zh"))) {
-                targetLanguage = getDefaultTargetLanguage(sourceLanguage, userProfile);
-            } else {
-                // 使用用戶的偏好語言
-                targetLanguage = userProfile.getPreferredLanguage();
+            if (LanguageCode.of(sourceLanguage).sameLanguageAs(LanguageCode.of(preferredLanguage))) {
+                return getDefaultTargetLanguage(sourceLanguage, preferences);
             }
-        } else {
-            // 如果沒有偏好，使用默認規則
-            targetLanguage = getDefaultTargetLanguage(sourceLanguage, userProfile);
+            // 使用用戶的偏好語言
+            return preferredLanguage;
         }
+        // 如果沒有偏好，使用默認規則
+        return getDefaultTargetLanguage(sourceLanguage, preferences);
+    }
 
-        log.info("自動檢測語言: {}, 目標語言: {}", sourceLanguage, targetLanguage);
+    /**
+     * 提供給合併檢測與翻譯請求的目標語言對照表，列出結果與其他語言不同的源語言
+     */
+    private Map<String, String> targetLanguageRules(UserPreferences preferences) {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("zh", resolveTargetLanguage("zh", preferences));
+        String preferredLanguage = preferences.getPreferredLanguage();
+        if (preferredLanguage != null && !preferredLanguage.isEmpty() && !LanguageCode.of(preferredLanguage).isChinese()) {
+            rules.put(preferredLanguage, resolveTargetLanguage(preferredLanguage, preferences));
+        }
+        return rules;
+    }
 
-        return performTranslation(userId, userProfile, sourceText, targetLanguage, start);
+    /**
+     * 非中文且不是偏好語言的源語言所使用的目標語言
+     */
+    private String otherTargetLanguage(UserPreferences preferences) {
+        String preferredLanguage = preferences.getPreferredLanguage();
+        if (preferredLanguage != null && !preferredLanguage.isEmpty()) {
+            return preferredLanguage;
+        }
+        return appConfig.getDefaultTargetLanguageForOthers();
     }
 
     /**
      * 根據源語言選擇默認的目標語言
      *
      * @param sourceLanguage 源語言
-     * @param userProfile 用戶資料
+     * @param preferences 用戶偏好設定
      * @return 目標語言代碼
      */
-    private String getDefaultTargetLanguage(String sourceLanguage, UserProfile userProfile) {
+    private String getDefaultTargetLanguage(String sourceLanguage, UserPreferences preferences) {
         // 如果是中文，且用戶設置了偏好的中文翻譯目標語言
-        if (sourceLanguage != null && (sourceLanguage.startsWith("zh") || "zh".equals(sourceLanguage))) {
-            String preferredChineseTargetLanguage = userProfile.getPreferredChineseTargetLanguage();
+        if (LanguageCode.of(sourceLanguage).isChinese()) {
+            String preferredChineseTargetLanguage = preferences.getPreferredChineseTargetLanguage();
             if (preferredChineseTargetLanguage != null && !preferredChineseTargetLanguage.isEmpty()) {
                 return preferredChineseTargetLanguage;
             }
             return appConfig.getDefaultTargetLanguageForChinese();
         } else {
             // 如果不是中文，使用用戶偏好的語言或默認設置
-            String preferredLanguage = userProfile.getPreferredLanguage();
+            String preferredLanguage = preferences.getPreferredLanguage();
             if (preferredLanguage != null && !preferredLanguage.isEmpty()) {
                 return preferredLanguage;
             }
@@ -255,28 +280,40 @@ public class TranslationService {
     /**
      * 執行翻譯並處理相關記錄
      */
-    private String performTranslation(String userId, UserProfile userProfile, String sourceText, String targetLanguage, Instant start) {
-        // 選擇 AI 服務
-        AiService aiService = aiServiceFactory.getService(userProfile.getPreferredAiProvider());
+    private String performTranslation(TranslationContext context) {
+        String targetLanguage = context.getTargetLanguage();
+
+        // 本地檢測已能確定源語言時，已是目標語言的文字不需要呼叫 AI 模型
+        if (untranslatableMessageClassifier.isEnabled() && languageDetectionService.detectLanguageWithoutAi(context)) {
+            UntranslatableMessageClassifier.Reason skipReason =
+                    untranslatableMessageClassifier.classify(context.getDetection(), targetLanguage);
+            if (skipReason != null) {
+                return untranslatableMessageClassifier.reply(skipReason, context.getSourceText(), targetLanguage);
+            }
+        }
 
-        // 先偵測源語言
-        String detectedLanguage = languageDetectionService.detectLanguage(sourceText);
-        
-        // 執行翻譯
-        String translatedText = translateWithService(aiService, sourceText, targetLanguage);
+        // 選擇 AI 服務與模型
+        detectForRouting(context);
+        AiService aiService = selectService(context, false);
 
-        // 計算處理時間
-        long processingTimeMs = Duration.between(start, Instant.now()).toMillis();
+        // 先發出翻譯請求，等待回應期間在目前執行緒偵測源語言（若預設流程已檢測過，直接沿用上下文中的結果）
+        long translationStartNanos = System.nanoTime();
+        LongAdder queueWait = new LongAdder();
+        CompletableFuture<String> translation = rateLimiter.trackQueueWait(queueWait, () -> translateWithServiceAsync(
+                aiService, context.getSourceText(), targetLanguage, context::setServedBy));
+        String detectedLanguage = languageDetectionService.detectLanguage(context);
+        String translatedText = awaitTranslation(context, translation, translationStartNanos, queueWait);
 
-        // 保存翻譯記錄
-        saveTranslationRecord(userId, sourceText, detectedLanguage,
-                targetLanguage, translatedText, aiService.getProviderName(),
-                aiService.getModelName(), processingTimeMs, false, null);
+        // 保存翻譯記錄並更新用戶資料
+        persistTranslation(context, aiService, translatedText);
 
-        // 更新用戶資料
-        updateUserProfileAfterTranslation(userProfile, translatedText, targetLanguage);
+        return formatTranslationResult(translatedText, detectedLanguage, targetLanguage);
+    }
 
-        // 在翻譯結果中添加偵測到的語言資訊和翻譯目標語言
+    /**
+     * 在翻譯結果中添加偵測到的語言資訊和翻譯目標語言
+     */
+    private static String formatTranslationResult(String translatedText, String detectedLanguage, String targetLanguage) {
         String sourceLanguageName = LanguageUtils.toChineseName(detectedLanguage);
         String targetLanguageName = LanguageUtils.toChineseName(targetLanguage);
         return translatedText + "\n\n[偵測到: " + sourceLanguageName + " | 翻譯成: " + targetLanguageName + "]";
@@ -295,28 +332,28 @@ public class TranslationService {
             return "不支持的語言代碼：" + targetLanguageCode;
         }
 
-        Instant start = Instant.now();
-        UserProfile userProfile = ensureUserProfileExists(userId);
+        TranslationContext context = TranslationContext.start(userId);
+        loadUserPreferences(context);
 
         String standardLanguageCode = LanguageUtils.toLanguageCode(targetLanguageCode);
         log.info("快速翻譯請求: 用戶 {}, 目標語言: {}, 文本長度: {}", userId, standardLanguageCode, text.length());
+        context.setSourceText(text);
+        context.setTargetLanguage(standardLanguageCode);
 
-        // 選擇 AI 服務
-        AiService aiService = aiServiceFactory.getService(userProfile.getPreferredAiProvider());
-
-        // 執行翻譯
-        String translatedText = translateWithService(aiService, text, standardLanguageCode);
-
-        // 計算處理時間
-        long processingTimeMs = Duration.between(start, Instant.now()).toMillis();
+        // 選擇 AI 服務與模型
+        detectForRouting(context);
+        AiService aiService = selectService(context, false);
 
-        // 保存翻譯記錄
-        saveTranslationRecord(userId, text, languageDetectionService.detectLanguage(text),
-                standardLanguageCode, translatedText, aiService.getProviderName(),
-                aiService.getModelName(), processingTimeMs, false, null);
+        // 執行翻譯，等待回應期間檢測源語言（僅用於翻譯記錄）
+        long translationStartNanos = System.nanoTime();
+        LongAdder queueWait = new LongAdder();
+        CompletableFuture<String> translation = rateLimiter.trackQueueWait(queueWait,
+                () -> translateWithServiceAsync(aiService, text, standardLanguageCode, context::setServedBy));
+        languageDetectionService.detectLanguage(context);
+        String translatedText = awaitTranslation(context, translation, translationStartNanos, queueWait);
 
-        // 更新用戶資料
-        updateUserProfileAfterTranslation(userProfile, translatedText, standardLanguageCode);
+        // 保存翻譯記錄並更新用戶資料
+        persistTranslation(context, aiService, translatedText);
 
         return translatedText;
     }
@@ -340,58 +377,299 @@ public class TranslationService {
             return processTranslationRequest(userId, text);
         }
 
-        Instant start = Instant.now();
-        UserProfile userProfile = ensureUserProfileExists(userId);
+        UntranslatableMessageClassifier.Reason skipReason = untranslatableMessageClassifier.classify(text);
+        if (skipReason != null) {
+            return untranslatableMessageClassifier.reply(skipReason, text, null);
+        }
+
+        TranslationContext context = TranslationContext.start(userId);
+        UserPreferences preferences = loadUserPreferences(context);
 
         // 檢測原文語言
-        String sourceLanguage = languageDetectionService.detectLanguage(text);
+        context.setSourceText(text);
+        String sourceLanguage = languageDetectionService.detectLanguage(context);
 
         // 確定目標語言
-        String targetLanguage;
-        if (userProfile.getPreferredLanguage() != null && !userProfile.getPreferredLanguage().isEmpty()) {
-            // 如果用戶偏好與源語言相同，使用默認規則
-            if (sourceLanguage.equals(userProfile.getPreferredLanguage()) ||
-                    (sourceLanguage.startsWith("zh") && userProfile.getPreferredLanguage().startsWith("zh"))) {
-                targetLanguage = getDefaultTargetLanguage(sourceLanguage, userProfile);
-            } else {
-                targetLanguage = userProfile.getPreferredLanguage();
-            }
-        } else {
-            targetLanguage = getDefaultTargetLanguage(sourceLanguage, userProfile);
-        }
+        context.setTargetLanguage(resolveTargetLanguage(sourceLanguage, preferences));
 
-        // 選擇 AI 服務
-        AiService aiService = aiServiceFactory.getService(userProfile.getPreferredAiProvider());
+        // 選擇 AI 服務與模型
+        AiService aiService = selectService(context, false);
 
         // 執行翻譯
-        String translatedText = translateWithService(aiService, text, targetLanguage);
+        String translatedText = translateWithContext(context, aiService);
 
-        // 計算處理時間
-        long processingTimeMs = Duration.between(start, Instant.now()).toMillis();
+        // 保存翻譯記錄並更新用戶資料
+        persistTranslation(context, aiService, translatedText);
 
-        // 保存翻譯記錄
-        saveTranslationRecord(userId, text, sourceLanguage, targetLanguage,
-                translatedText, aiService.getProviderName(),
-                aiService.getModelName(), processingTimeMs, false, null);
+        return translatedText;
+    }
 
-        // 更新用戶資料
-        updateUserProfileAfterTranslation(userProfile, translatedText, targetLanguage);
+    /**
+     * 依用戶偏好選擇 AI 服務，啟用模型路由時依文本長度、語言組合與近期延遲選擇模型，
+     * 路由決策保存在上下文中，隨翻譯記錄一併寫入
+     *
+     * @param context 翻譯上下文，需已設定用戶偏好、源文本及目標語言
+     * @param imageText 文本是否來自圖片辨識
+     * @return AI 服務
+     */
+    public AiService selectService(TranslationContext context, boolean imageText) {
+        AiService baseline = aiServiceFactory.getService(context.getPreferences());
+        RoutingDecision decision = modelRouter.route(baseline, context.getPreferences(), context.getSourceText(),
+                context.getDetectedLanguage(), context.getTargetLanguage(), imageText);
+        context.setRoutingDecision(decision);
+        if (!decision.isRerouted()) {
+            return baseline;
+        }
+        return aiServiceFactory.getService(baseline.getProviderName(), decision.model());
+    }
 
-        return translatedText;
+    /**
+     * 路由前先取得源語言，讓語言組合規則生效
+     * 本地檢測無法確定時，只有設定了語言組合規則才等待 AI 檢測，否則仍在等待翻譯期間檢測
+     */
+    private void detectForRouting(TranslationContext context) {
+        if (!modelRouter.isEnabled() || languageDetectionService.detectLanguageWithoutAi(context)) {
+            return;
+        }
+        if (modelRouter.routesByLanguage()) {
+            languageDetectionService.detectLanguage(context);
+        }
     }
 
     /**
-     * 使用指定的 AI 服務進行翻譯
+     * 使用指定的 AI 服務進行翻譯，結果會經過翻譯快取
      *
      * @param aiService AI 服務
      * @param text 要翻譯的文本
      * @param targetLanguage 目標語言
      * @return 翻譯結果
      */
-    @Cacheable(value = "translations", key = "{#text, #targetLanguage, #aiService.providerName}")
     public String translateWithService(AiService aiService, String text, String targetLanguage) {
-        log.info("使用 {} 翻譯成 {}", aiService.getProviderName(), targetLanguage);
-        return aiService.translateText(text, targetLanguage);
+        return translateWithService(aiService, text, targetLanguage, null);
+    }
+
+    /**
+     * 使用指定的 AI 服務進行翻譯，結果由其他提供者產生時（例如對沖請求由次要提供者勝出）通知呼叫者
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param onServedByOther 結果由其他提供者產生時的回呼，可為 null；命中快取時不會呼叫
+     * @return 翻譯結果
+     */
+    public String translateWithService(AiService aiService, String text, String targetLanguage,
+                                       Consumer<AiService.ServedBy> onServedByOther) {
+        if (translationChunker.needsChunking(aiService.getProviderName(), text)) {
+            return translateChunked(aiService, text, targetLanguage, onServedByOther).join();
+        }
+        TranslationCacheKey cacheKey = TranslationCacheKey.of(text, targetLanguage,
+                aiService.getProviderName(), aiService.getModelName());
+        return translationCache.get(cacheKey, load -> {
+            log.info("使用 {} ({}) 翻譯成 {}", aiService.getProviderName(), aiService.getModelName(), targetLanguage);
+            long startNanos = System.nanoTime();
+            ServedByTracker served = new ServedByTracker(load, text, targetLanguage, onServedByOther);
+            // 快取鍵使用原文，只有送給模型的文本經過遮罩
+            PlaceholderMasker.Masked masked = placeholderMasker.mask(aiService.getProviderName(), text);
+            String result = translateDirect(aiService, masked != null ? masked.text() : text, targetLanguage, served);
+            recordLatency(aiService, served, result, startNanos);
+            if (masked != null) {
+                String restored = placeholderMasker.unmask(masked, result);
+                result = restored != null ? restored : translateDirect(aiService, text, targetLanguage, served);
+            }
+            return result;
+        });
+    }
+
+    private String translateDirect(AiService aiService, String text, String targetLanguage, ServedByTracker served) {
+        // 串流模式可記錄首個 token 時間與生成速度，回覆內容相同
+        return streamingEnabled
+                ? aiService.translateTextStreaming(text, targetLanguage, aiService.getModelName(), null, served)
+                : aiService.translateText(text, targetLanguage, aiService.getModelName(), served);
+    }
+
+    /**
+     * 非阻塞版本的 translateWithService，AI 服務等待回應期間不佔用呼叫者執行緒
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @return 完成時包含翻譯結果
+     */
+    public CompletableFuture<String> translateWithServiceAsync(AiService aiService, String text, String targetLanguage) {
+        return translateWithServiceAsync(aiService, text, targetLanguage, null);
+    }
+
+    /**
+     * 非阻塞版本的 translateWithService，結果由其他提供者產生時通知呼叫者
+     *
+     * @param aiService AI 服務
+     * @param text 要翻譯的文本
+     * @param targetLanguage 目標語言
+     * @param onServedByOther 結果由其他提供者產生時的回呼，可為 null；命中快取時不會呼叫
+     * @return 完成時包含翻譯結果
+     */
+    public CompletableFuture<String> translateWithServiceAsync(AiService aiService, String text, String targetLanguage,
+                                                               Consumer<AiService.ServedBy> onServedByOther) {
+        if (translationChunker.needsChunking(aiService.getProviderName(), text)) {
+            return translateChunked(aiService, text, targetLanguage, onServedByOther);
+        }
+        return translateSingleAsync(aiService, text, targetLanguage, onServedByOther);
+    }
+
+    /**
+     * 長文本分段後並行翻譯，每一段各自經過翻譯快取
+     */
+    private CompletableFuture<String> translateChunked(AiService aiService, String text, String targetLanguage,
+                                                       Consumer<AiService.ServedBy> onServedByOther) {
+        return translationChunker.translate(aiService.getProviderName(), text,
+                chunk -> translateSingleAsync(aiService, chunk, targetLanguage, onServedByOther));
+    }
+
+    private CompletableFuture<String> translateSingleAsync(AiService aiService, String text, String targetLanguage,
+                                                           Consumer<AiService.ServedBy> onServedByOther) {
+        TranslationCacheKey cacheKey = TranslationCacheKey.of(text, targetLanguage,
+                aiService.getProviderName(), aiService.getModelName());
+        return translationCache.getAsync(cacheKey, load -> {
+            log.info("使用 {} ({}) 非同步翻譯成 {}", aiService.getProviderName(), aiService.getModelName(), targetLanguage);
+            long startNanos = System.nanoTime();
+            ServedByTracker served = new ServedByTracker(load, text, targetLanguage, onServedByOther);
+            PlaceholderMasker.Masked masked = placeholderMasker.mask(aiService.getProviderName(), text);
+            // 短文本可能與同一時間的其他請求合併成一次呼叫
+            CompletableFuture<String> call = translationBatcher.translate(aiService,
+                    masked != null ? masked.text() : text, targetLanguage, served);
+            // 返回原本的呼叫而不是衍生的 Future，快取取消載入時才能中止 HTTP 請求
+            call.whenComplete((result, error) -> recordLatency(aiService, served, result, startNanos));
+            if (masked == null) {
+                return call;
+            }
+            CompletableFuture<String> restored = call.thenCompose(result -> {
+                String unmasked = placeholderMasker.unmask(masked, result);
+                return unmasked != null
+                        ? CompletableFuture.completedFuture(unmasked)
+                        : translationBatcher.translate(aiService, text, targetLanguage, served);
+            });
+            restored.whenComplete((result, error) -> {
+                if (restored.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+            return restored;
+        });
+    }
+
+    /**
+     * 成功的翻譯延遲提供給模型路由，作為延遲 SLO 的依據
+     * 由其他提供者產生的結果不代表所選模型的延遲，不記錄
+     */
+    private void recordLatency(AiService aiService, ServedByTracker served, String result, long startNanos) {
+        if (!served.isServedByOther() && TranslationCache.isCacheable(result)) {
+            modelRouter.recordLatency(aiService.getProviderName(), aiService.getModelName(), System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 記錄一次快取載入的結果是否由其他提供者產生
+     * 由其他提供者產生時，結果改存到該提供者與模型的快取鍵，並通知呼叫者
+     */
+    private static final class ServedByTracker implements Consumer<AiService.ServedBy> {
+        private final TranslationCache.Load load;
+        private final String text;
+        private final String targetLanguage;
+        private final Consumer<AiService.ServedBy> onServedByOther;
+        private volatile boolean servedByOther;
+
+        ServedByTracker(TranslationCache.Load load, String text, String targetLanguage,
+                        Consumer<AiService.ServedBy> onServedByOther) {
+            this.load = load;
+            this.text = text;
+            this.targetLanguage = targetLanguage;
+            this.onServedByOther = onServedByOther;
+        }
+
+        @Override
+        public void accept(AiService.ServedBy servedBy) {
+            servedByOther = true;
+            load.storeUnder(TranslationCacheKey.of(text, targetLanguage, servedBy.provider(), servedBy.model()));
+            if (onServedByOther != null) {
+                onServedByOther.accept(servedBy);
+            }
+        }
+
+        boolean isServedByOther() {
+            return servedByOther;
+        }
+    }
+
+    /**
+     * 等待非同步翻譯完成並記錄從發出請求開始的耗時，以及其中等待速率限制額度的時間
+     */
+    private String awaitTranslation(TranslationContext context, CompletableFuture<String> translation, long startNanos,
+                                    LongAdder queueWait) {
+        String translatedText;
+        try {
+            translatedText = translation.join();
+        } catch (Exception e) {
+            log.error("非同步翻譯失敗: {}", e.getMessage());
+            translatedText = "翻譯失敗: " + e.getMessage();
+        }
+        context.recordTiming(TranslationContext.Stage.TRANSLATION, (System.nanoTime() - startNanos) / 1_000_000);
+        recordQueueWait(context, queueWait);
+        return translatedText;
+    }
+
+    /**
+     * 在翻譯上下文中執行翻譯並記錄耗時
+     */
+    private String translateWithContext(TranslationContext context, AiService aiService) {
+        long startNanos = System.nanoTime();
+        LongAdder queueWait = new LongAdder();
+        String translatedText = rateLimiter.trackQueueWait(queueWait, () -> translateWithService(aiService,
+                context.getSourceText(), context.getTargetLanguage(), context::setServedBy));
+        context.recordTiming(TranslationContext.Stage.TRANSLATION, (System.nanoTime() - startNanos) / 1_000_000);
+        recordQueueWait(context, queueWait);
+        return translatedText;
+    }
+
+    /**
+     * 翻譯請求曾等待速率限制額度時，記錄為獨立的階段（已包含在翻譯階段的耗時中）
+     */
+    private static void recordQueueWait(TranslationContext context, LongAdder queueWait) {
+        long waitedNanos = queueWait.sum();
+        if (waitedNanos > 0) {
+            context.recordTiming(TranslationContext.Stage.RATE_LIMIT, waitedNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * 從快取載入用戶偏好設定並保存到翻譯上下文
+     */
+    private UserPreferences loadUserPreferences(TranslationContext context) {
+        long startNanos = System.nanoTime();
+        UserPreferences preferences = userProfileCache.get(context.getUserId());
+        context.setPreferences(preferences);
+        context.recordTiming(TranslationContext.Stage.PROFILE, (System.nanoTime() - startNanos) / 1_000_000);
+        return preferences;
+    }
+
+    /**
+     * 保存翻譯記錄並更新用戶資料
+     */
+    private void persistTranslation(TranslationContext context, AiService aiService, String translatedText) {
+        // 計算處理時間（不含記錄保存）
+        long processingTimeMs = context.getElapsedMs();
+
+        long startNanos = System.nanoTime();
+        // 對沖請求由次要提供者勝出時，記錄實際產生譯文的提供者與模型
+        AiService.ServedBy servedBy = context.getServedBy();
+        saveTranslationRecord(context.getUserId(), context.getSourceText(), context.getDetectedLanguage(),
+                context.getTargetLanguage(), translatedText,
+                servedBy != null ? servedBy.provider() : aiService.getProviderName(),
+                servedBy != null ? servedBy.model() : aiService.getModelName(),
+                processingTimeMs, false, null, context.getRoutingDecision());
+        updateUserProfileAfterTranslation(context.getUserId(), translatedText, context.getTargetLanguage());
+        context.recordTiming(TranslationContext.Stage.PERSISTENCE, (System.nanoTime() - startNanos) / 1_000_000);
+
+        log.info("用戶 {} 的翻譯處理完成，總耗時 {}ms ({})", context.getUserId(), context.getElapsedMs(), context.formatTimings());
     }
 
     /**
@@ -401,20 +679,7 @@ public class TranslationService {
      * @return 用戶資料
      */
     private UserProfile ensureUserProfileExists(String userId) {
-        Optional<UserProfile> userProfileOptional = userProfileRepository.findByUserId(userId);
-
-        if (userProfileOptional.isPresent()) {
-            UserProfile userProfile = userProfileOptional.get();
-            userProfile.setLastInteractionAt(LocalDateTime.now());
-            return userProfileRepository.save(userProfile);
-        } else {
-            UserProfile newUserProfile = UserProfile.builder()
-                    .userId(userId)
-                    .firstInteractionAt(LocalDateTime.now())
-                    .lastInteractionAt(LocalDateTime.now())
-                    .build();
-            return userProfileRepository.save(newUserProfile);
-        }
+        return userProfileRepository.touchUserProfile(userId);
     }
 
     /**
@@ -422,7 +687,8 @@ public class TranslationService {
      */
     private void saveTranslationRecord(String userId, String sourceText, String sourceLanguage,
                                        String targetLanguage, String translatedText, String aiProvider,
-                                       String modelName, double processingTimeMs, boolean isImageTranslation, String imageUrl) {
+                                       String modelName, double processingTimeMs, boolean isImageTranslation, String imageUrl,
+                                       RoutingDecision routingDecision) {
 
         TranslationRecord record = TranslationRecord.builder()
                 .userId(userId)
@@ -436,30 +702,19 @@ public class TranslationService {
                 .processingTimeMs(processingTimeMs)
                 .isImageTranslation(isImageTranslation)
                 .imageUrl(imageUrl)
+                .routingReason(routingDecision != null ? routingDecision.reason() : null)
+                .baselineModel(routingDecision != null ? routingDecision.baselineModel() : null)
                 .build();
 
-        translationRecordRepository.save(record);
-        log.info("已保存用戶 {} 的翻譯記錄", userId);
+        translationRecordWriter.write(record);
+        log.info("已提交用戶 {} 的翻譯記錄", userId);
     }
 
     /**
      * 更新用戶資料
      */
-    private void updateUserProfileAfterTranslation(UserProfile userProfile, String translatedText, String targetLanguage) {
-        userProfile.setLastInteractionAt(LocalDateTime.now());
-        userProfile.setTotalTranslations(userProfile.getTotalTranslations() + 1);
-        userProfile.setTextTranslations(userProfile.getTextTranslations() + 1);
-
-        // 更新最近的翻譯
-        userProfile.getRecentTranslations().add(0, translatedText);
-        if (userProfile.getRecentTranslations().size() > 5) {
-            userProfile.getRecentTranslations().remove(5);
-        }
-
-        // 更新最近使用的語言
-        userProfile.addRecentLanguage(targetLanguage);
-
-        userProfileRepository.save(userProfile);
+    private void updateUserProfileAfterTranslation(String userId, String translatedText, String targetLanguage) {
+        userProfileRepository.recordTranslation(userId, false, translatedText, targetLanguage);
     }
 
     /**
@@ -474,9 +729,8 @@ public class TranslationService {
             return "不支持的 AI 提供者。請選擇 'openai' 或 'gemini'。";
         }
 
-        UserProfile userProfile = ensureUserProfileExists(userId);
-        userProfile.setPreferredAiProvider(provider);
-        userProfileRepository.save(userProfile);
+        userProfileRepository.updatePreferences(userId, Map.of("preferredAiProvider", provider));
+        userProfileCache.invalidate(userId);
 
         return "已將您的偏好 AI 設置為 " + provider;
     }
@@ -496,9 +750,8 @@ public class TranslationService {
                     "。請使用支援的語言代碼（如 en、ja、ko）或語言名稱（如 英文、日文、韓文）。";
         }
 
-        UserProfile userProfile = ensureUserProfileExists(userId);
-        userProfile.setPreferredLanguage(languageCode);
-        userProfileRepository.save(userProfile);
+        userProfileRepository.updatePreferences(userId, Map.of("preferredLanguage", languageCode));
+        userProfileCache.invalidate(userId);
 
         String languageName = LanguageUtils.toChineseName(languageCode);
         return "已將您的偏好語言設置為 " + languageName + " (" + languageCode + ")";
@@ -521,8 +774,7 @@ public class TranslationService {
      * @return 用戶偏好的 AI 提供者 (openai 或 gemini)
      */
     public String getPreferredProvider(String userId) {
-        UserProfile userProfile = ensureUserProfileExists(userId);
-        String provider = userProfile.getPreferredAiProvider();
+        String provider = userProfileCache.get(userId).getPreferredAiProvider();
         
         if (provider == null || provider.isEmpty()) {
             provider = "openai"; // 預設為 OpenAI
@@ -539,7 +791,7 @@ public class TranslationService {
      * @return 設置結果消息
      */
     public String setPreferredChineseTargetLanguage(String userId, String targetLanguage) {
-        UserProfile userProfile = ensureUserProfileExists(userId);
+        UserPreferences preferences = userProfileCache.get(userId);
         
         // 將語言名稱轉換為語言代碼
         String languageCode = LanguageUtils.toLanguageCode(targetLanguage);
@@ -550,9 +802,9 @@ public class TranslationService {
         }
         
         // 保存用戶偏好的中文翻譯目標語言
-        String oldLanguage = userProfile.getPreferredChineseTargetLanguage();
-        userProfile.setPreferredChineseTargetLanguage(languageCode);
-        userProfileRepository.save(userProfile);
+        String oldLanguage = preferences.getPreferredChineseTargetLanguage();
+        userProfileRepository.updatePreferences(userId, Map.of("preferredChineseTargetLanguage", languageCode));
+        userProfileCache.invalidate(userId);
         
         // 準備回應消息
         String languageName = LanguageUtils.toChineseName(languageCode);
@@ -670,8 +922,8 @@ public class TranslationService {
      * @return 設置結果消息
      */
     public String setPreferredModel(String userId, String modelName) {
-        UserProfile userProfile = ensureUserProfileExists(userId);
-        String currentProvider = userProfile.getPreferredAiProvider();
+        UserPreferences current = userProfileCache.get(userId);
+        String currentProvider = current.getPreferredAiProvider();
         
         // 檢查模型屬於哪個提供者
         boolean isOpenAiModel = false;
@@ -686,33 +938,35 @@ public class TranslationService {
         
         String oldModel;
         String newProvider = currentProvider;
+        Map<String, Object> preferences = new HashMap<>();
         
         // 根據模型類型設置相應的提供者和模型
         if (isOpenAiModel) {
-            oldModel = userProfile.getOpenaiPreferredModel();
-            userProfile.setOpenaiPreferredModel(modelName);
+            oldModel = current.getOpenaiPreferredModel();
+            preferences.put("openaiPreferredModel", modelName);
             newProvider = "openai";
         } else if (isGeminiModel) {
-            oldModel = userProfile.getGeminiPreferredModel();
-            userProfile.setGeminiPreferredModel(modelName);
+            oldModel = current.getGeminiPreferredModel();
+            preferences.put("geminiPreferredModel", modelName);
             newProvider = "gemini";
         } else {
             // 如果無法確定模型類型，則根據當前提供者設置
             if ("openai".equals(currentProvider)) {
-                oldModel = userProfile.getOpenaiPreferredModel();
-                userProfile.setOpenaiPreferredModel(modelName);
+                oldModel = current.getOpenaiPreferredModel();
+                preferences.put("openaiPreferredModel", modelName);
             } else {
-                oldModel = userProfile.getGeminiPreferredModel();
-                userProfile.setGeminiPreferredModel(modelName);
+                oldModel = current.getGeminiPreferredModel();
+                preferences.put("geminiPreferredModel", modelName);
             }
         }
         
         // 如果提供者發生變化，更新提供者設置
         if (!newProvider.equals(currentProvider)) {
-            userProfile.setPreferredAiProvider(newProvider);
+            preferences.put("preferredAiProvider", newProvider);
         }
         
-        userProfileRepository.save(userProfile);
+        userProfileRepository.updatePreferences(userId, preferences);
+        userProfileCache.invalidate(userId);
         
         StringBuilder result = new StringBuilder();
         if (oldModel != null && !oldModel.isEmpty() && oldModel.equals(modelName)) {
@@ -0,0 +1,196 @@
+package com.linetranslate.bot.service.translation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.linetranslate.bot.service.metrics.MetricsReporter;
+import com.linetranslate.bot.util.LanguageCode;
+import com.linetranslate.bot.util.LanguageUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 翻譯前的本地分類，找出不需要呼叫 AI 模型的訊息
+ * 只有符號、表情、網址、數字或 LINE 表情文字（例如 (laugh)）、太短的文字，
+ * 以及已經是目標語言的文字，直接以本地訊息回覆
+ */
+@Component
+@Slf4j
+public class UntranslatableMessageClassifier implements MetricsReporter {
+
+    private static final Pattern URL = Pattern.compile("(?:https?://|www\\.)\\S+", Pattern.CASE_INSENSITIVE);
+
+    // LINE 表情在文字訊息中以 (laugh)、(love)、(moon grin) 等關鍵字表示；只比對已知的關鍵字，
+    // 避免 (Note)、(see above) 等括號中的一般英文被當成表情
+    private static final Pattern LINE_EMOTICON = Pattern.compile(
+            "\\((?:(?:moon|brown|cony|sally|james|boss|jessica|edward|leonard) )?"
+            + "(?:happy|love|laugh|smile|grin|wink|kiss|sad|cry|crying|tears|angry|mad|shock|shocked|surprised"
+            + "|scared|sweat|sleepy|sleep|tired|cool|blush|shy|heart|hearts|broken heart|ok|thumbs up|clap"
+            + "|bow|please|thanks|hmm|confused|sick|hungry|party|music|star|sun|rain|gift|cake|beer|coffee"
+            + "|moon|brown|cony|sally|james|boss|jessica|edward|leonard)\\)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 略過翻譯的原因
+     */
+    public enum Reason {
+        SYMBOLS("符號/表情", "此訊息只包含符號或表情，不需要翻譯。"),
+        URL("網址", "此訊息只包含網址，不需要翻譯。"),
+        NUMBER("數字", "此訊息只包含數字，不需要翻譯。"),
+        LINE_EMOTICON("LINE 表情文字", "此訊息只包含 LINE 表情文字，不需要翻譯。"),
+        TOO_SHORT("文字過短", "訊息太短，無法判斷要翻譯的內容。"),
+        SAME_LANGUAGE("已是目標語言", null);
+
+        private final String displayName;
+        private final String reply;
+
+        Reason(String displayName, String reply) {
+            this.displayName = displayName;
+            this.reply = reply;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final boolean enabled;
+    private final int minLength;
+    private final double sameLanguageMinConfidence;
+
+    private final LongAdder checked = new LongAdder();
+    private final Map<Reason, LongAdder> skipped = new EnumMap<>(Reason.class);
+
+    @Autowired
+    public UntranslatableMessageClassifier(
+            @Value("${app.translation.skip.enabled:true}") boolean enabled,
+            @Value("${app.translation.skip.min-length:2}") int minLength,
+            @Value("${app.translation.skip.same-language-min-confidence:0.8}") double sameLanguageMinConfidence) {
+        this.enabled = enabled;
+        this.minLength = minLength;
+        this.sameLanguageMinConfidence = sameLanguageMinConfidence;
+        for (Reason reason : Reason.values()) {
+            skipped.put(reason, new LongAdder());
+        }
+
+        log.info("略過不需翻譯的訊息啟用: {}, 最短文字長度: {}", enabled, minLength);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 依文字內容判斷是否不需要翻譯
+     *
+     * @param text 要翻譯的文本
+     * @return 略過的原因，需要翻譯時返回 null
+     */
+    public Reason classify(String text) {
+        if (!enabled || text == null) {
+            return null;
+        }
+        checked.increment();
+
+        Matcher urlMatcher = URL.matcher(text);
+        boolean hasUrl = urlMatcher.find();
+        String remaining = hasUrl ? urlMatcher.replaceAll(" ") : text;
+        Matcher emoticonMatcher = LINE_EMOTICON.matcher(remaining);
+        boolean hasEmoticon = emoticonMatcher.find();
+        if (hasEmoticon) {
+            remaining = emoticonMatcher.replaceAll(" ");
+        }
+
+        int letters = 0;
+        int denseLetters = 0;
+        boolean hasDigit = false;
+        for (int i = 0; i < remaining.length(); ) {
+            int codePoint = remaining.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetter(codePoint)) {
+                letters++;
+                switch (Character.UnicodeScript.of(codePoint)) {
+                    case HAN, HIRAGANA, KATAKANA, HANGUL, THAI -> denseLetters++;
+                    default -> {
+                    }
+                }
+            } else if (Character.isDigit(codePoint)) {
+                hasDigit = true;
+            }
+        }
+
+        Reason reason = null;
+        if (letters == 0) {
+            reason = hasUrl ? Reason.URL : hasEmoticon ? Reason.LINE_EMOTICON : hasDigit ? Reason.NUMBER : Reason.SYMBOLS;
+        } else if (denseLetters == 0 && letters < minLength) {
+            // 單一漢字、假名或韓文字母仍有意義，只略過過短的拼音文字
+            reason = Reason.TOO_SHORT;
+        }
+        return record(reason);
+    }
+
+    /**
+     * 檢測出的源語言與目標語言相同時不需要翻譯
+     * 語言檢測無法區分中文的繁簡體，源語言為中文時一律翻譯；檢測結果為預設值或信心不足時也會翻譯
+     *
+     * @param detection 語言檢測結果
+     * @param targetLanguage 目標語言
+     * @return 相同語言時返回 SAME_LANGUAGE，否則返回 null
+     */
+    public Reason classify(LanguageDetectionResult detection, String targetLanguage) {
+        if (!enabled || detection == null || !detection.isKnown()
+                || detection.getTier() == LanguageDetectionResult.Tier.FALLBACK
+                || detection.getConfidence() < sameLanguageMinConfidence) {
+            return null;
+        }
+        LanguageCode source = LanguageCode.of(detection.getLanguageCode());
+        boolean same = !source.isChinese() && source.equals(LanguageCode.of(targetLanguage));
+        return record(same ? Reason.SAME_LANGUAGE : null);
+    }
+
+    private Reason record(Reason reason) {
+        if (reason != null) {
+            skipped.get(reason).increment();
+            log.info("略過翻譯: {}", reason.getDisplayName());
+        }
+        return reason;
+    }
+
+    /**
+     * 略過翻譯時回覆給用戶的訊息
+     *
+     * @param reason 略過的原因
+     * @param text 原文
+     * @param targetLanguage 目標語言，只有 SAME_LANGUAGE 使用
+     * @return 回覆訊息
+     */
+    public String reply(Reason reason, String text, String targetLanguage) {
+        if (reason == Reason.SAME_LANGUAGE) {
+            return text + "\n\n[已是" + LanguageUtils.toChineseName(targetLanguage) + "，不需要翻譯]";
+        }
+        return reason.reply;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "略過不需翻譯的訊息";
+    }
+
+    @Override
+    public String getMetricsSummary() {
+        long total = skipped.values().stream().mapToLong(LongAdder::sum).sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append("狀態: ").append(enabled ? "已啟用" : "已停用").append("\n");
+        sb.append("略過: ").append(total).append(" / 檢查 ").append(checked.sum()).append(" 則\n");
+        skipped.forEach((reason, counter) ->
+                sb.append(reason.getDisplayName()).append(" ").append(counter.sum()).append(" "));
+        return sb.toString().trim();
+    }
+}
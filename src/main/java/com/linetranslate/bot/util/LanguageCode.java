@@ -0,0 +1,108 @@
+package com.linetranslate.bot.util;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 標準化的語言代碼
+ * 已知語言的實例在類別初始化時建立並重複使用，
+ * 同一種語言不論輸入「日文」、「JA」或「japanese」都得到同一個實例
+ */
+public final class LanguageCode {
+
+    public static final LanguageCode UNKNOWN = new LanguageCode("unknown");
+
+    // 小寫的標準語言代碼 → 共用的實例
+    private static final Map<String, LanguageCode> INTERNED;
+
+    static {
+        Map<String, LanguageCode> interned = new HashMap<>();
+        for (String code : LanguageUtils.standardCodes()) {
+            interned.put(code.toLowerCase(Locale.ROOT), new LanguageCode(code));
+        }
+        interned.put(UNKNOWN.tag, UNKNOWN);
+        INTERNED = Map.copyOf(interned);
+    }
+
+    private final String tag;
+
+    private LanguageCode(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * 取得語言代碼
+     *
+     * @param languageNameOrCode 語言名稱、別名或代碼，不分大小寫
+     * @return 已知語言時返回共用的實例；無法識別時返回以標準大小寫表示的新實例，空白時返回 UNKNOWN
+     */
+    public static LanguageCode of(String languageNameOrCode) {
+        if (languageNameOrCode == null || languageNameOrCode.isBlank()) {
+            return UNKNOWN;
+        }
+        // 多數輸入已是標準代碼，先直接查找
+        LanguageCode interned = INTERNED.get(languageNameOrCode.trim().toLowerCase(Locale.ROOT));
+        if (interned != null) {
+            return interned;
+        }
+        String code = LanguageUtils.canonicalize(LanguageUtils.toLanguageCode(languageNameOrCode));
+        interned = INTERNED.get(code.toLowerCase(Locale.ROOT));
+        return interned != null ? interned : new LanguageCode(code);
+    }
+
+    /**
+     * @return 標準大小寫的 BCP-47 語言標籤，例如 zh-TW
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return 主要語言子標籤，例如 zh-TW 的 zh
+     */
+    public String getLanguage() {
+        int separator = tag.indexOf('-');
+        return separator < 0 ? tag : tag.substring(0, separator);
+    }
+
+    public boolean isChinese() {
+        return "zh".equals(getLanguage());
+    }
+
+    public boolean isKnown() {
+        return this != UNKNOWN;
+    }
+
+    /**
+     * 是否為相同語言，中文的各種變體視為相同
+     *
+     * @param other 另一個語言代碼
+     * @return 是否相同
+     */
+    public boolean sameLanguageAs(LanguageCode other) {
+        return equals(other) || isChinese() && other.isChinese();
+    }
+
+    public String getChineseName() {
+        return LanguageUtils.toChineseName(tag);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof LanguageCode other && tag.equals(other.tag);
+    }
+
+    @Override
+    public int hashCode() {
+        return tag.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return tag;
+    }
+}
@@ -1,19 +1,32 @@
 package com.linetranslate.bot.util;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 語言工具類，用於語言代碼和名稱的轉換和映射
+ * 類別初始化時將中文名稱、英文名稱、別名及語言代碼建立成不分大小寫的不可變索引，
+ * 每次查詢只需一次雜湊查找
  */
 public class LanguageUtils {
 
-    // 語言名稱到語言代碼的映射
+    // 語言名稱到語言代碼的映射（僅在初始化時使用）
     private static final Map<String, String> LANGUAGE_NAME_TO_CODE = new HashMap<>();
 
-    // 語言代碼到正式名稱的映射
+    // 語言代碼到正式名稱的映射（僅在初始化時使用）
     private static final Map<String, String> LANGUAGE_CODE_TO_NAME = new HashMap<>();
 
+    // 小寫的語言名稱、別名或代碼 → 標準語言代碼
+    private static final Map<String, String> LANGUAGE_INDEX;
+
+    // 小寫的標準語言代碼 → 中文名稱
+    private static final Map<String, String> CODE_TO_NAME_INDEX;
+
+    // 所有有中文名稱的標準語言代碼
+    private static final Set<String> STANDARD_CODES;
+
     static {
         // 初始化常見語言的映射
         addLanguageMapping("中文", "zh", "Chinese");
@@ -172,6 +185,18 @@ public class LanguageUtils {
         LANGUAGE_NAME_TO_CODE.put("au", "en");    // 澳大利亞（英文）
         LANGUAGE_NAME_TO_CODE.put("aus", "en");   // 澳大利亞（英文）
         LANGUAGE_NAME_TO_CODE.put("nz", "en");    // 紐西蘭（英文）
+
+        Map<String, String> index = new HashMap<>();
+        LANGUAGE_NAME_TO_CODE.forEach((name, code) -> index.put(fold(name), canonicalize(code)));
+        // 標準語言代碼優先於同名的國家代碼別名（例如 ar 是阿拉伯文而不是阿根廷）
+        Map<String, String> codeToName = new HashMap<>();
+        LANGUAGE_CODE_TO_NAME.forEach((code, name) -> {
+            index.put(fold(code), canonicalize(code));
+            codeToName.put(fold(code), name);
+        });
+        LANGUAGE_INDEX = Map.copyOf(index);
+        CODE_TO_NAME_INDEX = Map.copyOf(codeToName);
+        STANDARD_CODES = Set.copyOf(LANGUAGE_CODE_TO_NAME.keySet().stream().map(LanguageUtils::canonicalize).toList());
     }
 
     /**
@@ -183,83 +208,96 @@ public class LanguageUtils {
      */
     private static void addLanguageMapping(String chineseName, String code, String englishName) {
         LANGUAGE_NAME_TO_CODE.put(chineseName, code);
+        LANGUAGE_NAME_TO_CODE.put(englishName, code);
         LANGUAGE_CODE_TO_NAME.put(code, chineseName);
     }
 
+    private static String fold(String key) {
+        return key.trim().toLowerCase(Locale.ROOT);
+    }
+
     /**
      * 將語言名稱或代碼轉換為標準語言代碼
      *
-     * @param languageNameOrCode 語言名稱或代碼
-     * @return 標準語言代碼，如果無法識別則返回原始輸入
+     * @param languageNameOrCode 語言名稱或代碼，不分大小寫
+     * @return 標準語言代碼（例如 zh-TW），如果無法識別則返回原始輸入
      */
     public static String toLanguageCode(String languageNameOrCode) {
         if (languageNameOrCode == null || languageNameOrCode.trim().isEmpty()) {
             return "unknown";
         }
-
-        String normalizedInput = languageNameOrCode.trim().toLowerCase();
-
-        // 如果輸入的是標準語言代碼
-        if (LANGUAGE_CODE_TO_NAME.containsKey(normalizedInput)) {
-            return normalizedInput;
-        }
-
-        // 嘗試從大小寫不敏感的映射中找到對應的語言代碼
-        for (Map.Entry<String, String> entry : LANGUAGE_NAME_TO_CODE.entrySet()) {
-            if (entry.getKey().toLowerCase().equals(normalizedInput)) {
-                return entry.getValue();
-            }
-        }
-
-        // 如果無法識別，則返回原始輸入
-        return languageNameOrCode;
+        return LANGUAGE_INDEX.getOrDefault(fold(languageNameOrCode), languageNameOrCode);
     }
 
     /**
      * 將語言代碼轉換為中文名稱
      *
-     * @param languageCode 語言代碼
+     * @param languageCode 語言代碼，不分大小寫
      * @return 中文名稱，如果無法識別則返回語言代碼
      */
     public static String toChineseName(String languageCode) {
         if (languageCode == null || languageCode.trim().isEmpty()) {
             return "未知語言";
         }
-
-        String normalizedCode = languageCode.trim().toLowerCase();
-        return LANGUAGE_CODE_TO_NAME.getOrDefault(normalizedCode, languageCode);
+        return CODE_TO_NAME_INDEX.getOrDefault(fold(languageCode), languageCode);
     }
 
-/**
- * 檢查是否支持該語言
- *
- * @param languageNameOrCode 語言名稱或代碼
- * @return 是否支持
- */
-public static boolean isSupported(String languageNameOrCode) {
-    if (languageNameOrCode == null || languageNameOrCode.trim().isEmpty()) {
-        return false;
+    /**
+     * 檢查是否為已知的語言名稱、別名或代碼，用於從連續文字中切出語言名稱
+     *
+     * @param name 語言名稱
+     * @return 是否為已知名稱
+     */
+    public static boolean isLanguageName(String name) {
+        return name != null && LANGUAGE_INDEX.containsKey(fold(name));
     }
 
-    String normalizedInput = languageNameOrCode.trim().toLowerCase();
-
-    // 檢查代碼是否存在
-    if (LANGUAGE_CODE_TO_NAME.containsKey(normalizedInput)) {
-        return true;
+    /**
+     * 檢查是否支持該語言
+     *
+     * @param languageNameOrCode 語言名稱或代碼
+     * @return 是否支持
+     */
+    public static boolean isSupported(String languageNameOrCode) {
+        if (languageNameOrCode == null || languageNameOrCode.trim().isEmpty()) {
+            return false;
+        }
+        return LANGUAGE_INDEX.containsKey(fold(languageNameOrCode));
     }
 
-    // 檢查名稱是否存在於 LANGUAGE_NAME_TO_CODE 中
-    if (LANGUAGE_NAME_TO_CODE.containsKey(normalizedInput)) {
-        return true;
+    /**
+     * 所有有中文名稱的標準語言代碼
+     *
+     * @return 標準語言代碼
+     */
+    public static Set<String> standardCodes() {
+        return STANDARD_CODES;
     }
 
-    // 檢查名稱是否存在（大小寫不敏感）
-    for (String name : LANGUAGE_NAME_TO_CODE.keySet()) {
-        if (name.toLowerCase().equals(normalizedInput)) {
-            return true;
+    /**
+     * 將 BCP-47 語言標籤轉換為標準大小寫：語言小寫、文字首字母大寫、地區大寫（例如 zh-tw → zh-TW）
+     *
+     * @param tag 語言標籤，可使用 - 或 _ 分隔
+     * @return 標準化的語言標籤
+     */
+    public static String canonicalize(String tag) {
+        if (tag == null || tag.isBlank()) {
+            return tag;
+        }
+        String[] subtags = tag.trim().replace('_', '-').split("-");
+        StringBuilder sb = new StringBuilder(tag.length());
+        sb.append(subtags[0].toLowerCase(Locale.ROOT));
+        for (int i = 1; i < subtags.length; i++) {
+            String subtag = subtags[i];
+            sb.append('-');
+            if (subtag.length() == 4 && Character.isLetter(subtag.charAt(0))) {
+                sb.append(Character.toUpperCase(subtag.charAt(0))).append(subtag.substring(1).toLowerCase(Locale.ROOT));
+            } else if (subtag.length() == 2 || subtag.length() == 3 && Character.isDigit(subtag.charAt(0))) {
+                sb.append(subtag.toUpperCase(Locale.ROOT));
+            } else {
+                sb.append(subtag.toLowerCase(Locale.ROOT));
+            }
         }
+        return sb.toString();
     }
-
-    return false;
 }
-}
\ No newline at end of file
@@ -0,0 +1,159 @@
+package com.linetranslate.bot.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 分道序列執行器
+ * 依鍵的雜湊值將任務分配到固定數量的 lane，同一 lane 內的任務依提交順序逐一執行，
+ * 不同 lane 則共用同一個工作執行緒池並行執行。每個 lane 有獨立的佇列上限
+ */
+@Slf4j
+public class StripedExecutor {
+
+    private final Executor workerPool;
+    private final Lane[] lanes;
+    private final int laneCapacity;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * @param workerPool 共用的工作執行緒池
+     * @param laneCount lane 數量
+     * @param laneCapacity 每個 lane 最多可排隊的任務數
+     */
+    public StripedExecutor(Executor workerPool, int laneCount, int laneCapacity) {
+        if (laneCount <= 0 || laneCapacity <= 0) {
+            throw new IllegalArgumentException("lane 數量與佇列上限必須大於 0");
+        }
+        this.workerPool = workerPool;
+        this.laneCapacity = laneCapacity;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(laneCapacity);
+        }
+    }
+
+    /**
+     * 提交任務，相同鍵的任務保證依提交順序執行
+     *
+     * @param key 分道鍵，例如用戶 ID
+     * @param task 要執行的任務
+     * @throws RejectedExecutionException 對應 lane 的佇列已滿
+     */
+    public void execute(Object key, Runnable task) {
+        Lane lane = lanes[laneIndex(key)];
+        if (!lane.queue.offer(task)) {
+            rejected.increment();
+            throw new RejectedExecutionException("lane 佇列已滿 (上限 " + laneCapacity + ")");
+        }
+        lane.schedule();
+    }
+
+    int laneIndex(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    /**
+     * 所有 lane 中排隊中的任務總數
+     */
+    public int getQueuedTasks() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.queue.size();
+        }
+        return total;
+    }
+
+    /**
+     * 排隊最深的 lane 的任務數
+     */
+    public int getMaxLaneDepth() {
+        int max = 0;
+        for (Lane lane : lanes) {
+            max = Math.max(max, lane.queue.size());
+        }
+        return max;
+    }
+
+    /**
+     * 正在執行或等待執行緒的 lane 數量
+     */
+    public int getActiveLanes() {
+        int active = 0;
+        for (Lane lane : lanes) {
+            if (lane.scheduled.get()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    private class Lane {
+        private final BlockingQueue<Runnable> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                workerPool.execute(this::runNext);
+            } catch (RejectedExecutionException e) {
+                // 通常只在關閉期間發生，排隊中的任務將不會執行
+                scheduled.set(false);
+                log.warn("工作執行緒池拒絕任務，lane 中仍有 {} 個任務未執行", queue.size());
+            }
+        }
+
+        /**
+         * 每次只執行一個任務後重新排程，避免單一用戶長時間佔用執行緒
+         */
+        private void runNext() {
+            try {
+                Runnable task = queue.poll();
+                if (task != null) {
+                    task.run();
+                    completed.increment();
+                }
+            } catch (Throwable t) {
+                log.error("lane 任務執行失敗: {}", t.getMessage(), t);
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
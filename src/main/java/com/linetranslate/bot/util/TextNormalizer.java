@@ -0,0 +1,80 @@
+package com.linetranslate.bot.util;
+
+import java.text.Normalizer;
+
+/**
+ * 文本正規化工具類，用於產生快取鍵等需要穩定比對的場合
+ */
+public class TextNormalizer {
+
+    // FNV-1a 64 位元雜湊參數
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 將文本正規化為快取鍵使用的形式
+     * NFKC 正規化、統一換行符號、合併連續的空白並移除首尾空白，保留換行以免改變翻譯結果
+     *
+     * @param text 原始文本
+     * @return 正規化後的文本，若輸入為 null 則返回空字串
+     */
+    public static String normalizeForKey(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '\r') {
+                continue;
+            }
+            if (c == '\n') {
+                // 換行前的空白沒有意義，直接丟棄
+                pendingSpace = false;
+                sb.append('\n');
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            } else {
+                if (pendingSpace && sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(c);
+            }
+        }
+
+        return sb.toString().strip();
+    }
+
+    /**
+     * 計算正規化文本的 64 位元指紋，用於不需要保留原文的快取鍵
+     * 在 normalizeForKey 的基礎上將換行也視為空白，再以 FNV-1a 雜湊
+     *
+     * @param text 原始文本
+     * @return 64 位元指紋
+     */
+    public static long fingerprint64(String text) {
+        String normalized = normalizeForKey(text);
+        long hash = FNV_OFFSET_BASIS;
+
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '\n') {
+                c = ' ';
+            }
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+}
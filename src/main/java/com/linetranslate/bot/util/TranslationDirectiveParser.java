@@ -0,0 +1,155 @@
+package com.linetranslate.bot.util;
+
+/**
+ * 解析訊息中的「翻譯成XX」指令
+ * 以單次線性掃描找出指令位置、判斷格式並解析語言名稱或代碼，不使用需要回溯的正則表達式，
+ * 長文本也只需掃描一次
+ */
+public class TranslationDirectiveParser {
+
+    public static final String KEYWORD = "翻譯成";
+
+    // 已知中文語言名稱的最大長度（例如「西班牙文」），用於從連續漢字中找出最長的語言名稱
+    private static final int MAX_LANGUAGE_NAME_LENGTH = 6;
+
+    /**
+     * 指令在訊息中的格式
+     */
+    public enum Form {
+        /** 翻譯成日文 你好 */
+        PREFIX,
+        /** 你好 翻譯成日文 */
+        SUFFIX,
+        /** 你好\n翻譯成日文 */
+        NEWLINE,
+        /** 指令緊接在其他文字之後，只有圖片文字會使用 */
+        INLINE
+    }
+
+    /**
+     * 解析結果
+     *
+     * @param form 指令格式
+     * @param languageToken 用戶輸入的語言名稱或代碼
+     * @param languageName 語言是否以中文名稱指定
+     * @param targetLanguage 目標語言代碼
+     * @param sourceText 去除指令後要翻譯的文本
+     */
+    public record Directive(Form form, String languageToken, boolean languageName,
+                            String targetLanguage, String sourceText) {
+    }
+
+    private TranslationDirectiveParser() {
+    }
+
+    /**
+     * 解析聊天訊息中的翻譯指令，指令必須位於開頭、換行之後或空白之後
+     *
+     * @param text 訊息文本
+     * @return 解析結果，沒有符合格式的指令時返回 null
+     */
+    public static Directive parse(String text) {
+        return scan(text, false);
+    }
+
+    /**
+     * 找出文本中任意位置的翻譯指令，用於圖片辨識出的文字
+     *
+     * @param text 文本
+     * @return 解析結果，沒有指令時返回 null
+     */
+    public static Directive find(String text) {
+        return scan(text, true);
+    }
+
+    private static Directive scan(String text, boolean allowInline) {
+        if (text == null) {
+            return null;
+        }
+        int contentStart = 0;
+        while (contentStart < text.length() && Character.isWhitespace(text.charAt(contentStart))) {
+            contentStart++;
+        }
+        int from = 0;
+        int index;
+        while ((index = text.indexOf(KEYWORD, from)) >= 0) {
+            from = index + KEYWORD.length();
+            Form form = classify(text, index, contentStart);
+            if (form == Form.INLINE && !allowInline) {
+                continue;
+            }
+            Directive directive = parseAt(text, index, form);
+            if (directive != null) {
+                return directive;
+            }
+        }
+        return null;
+    }
+
+    private static Form classify(String text, int index, int contentStart) {
+        // 指令前只有空白時視為開頭
+        if (index <= contentStart) {
+            return Form.PREFIX;
+        }
+        char previous = text.charAt(index - 1);
+        if (previous == '\n') {
+            return Form.NEWLINE;
+        }
+        return Character.isWhitespace(previous) ? Form.SUFFIX : Form.INLINE;
+    }
+
+    private static Directive parseAt(String text, int index, Form form) {
+        int tokenStart = index + KEYWORD.length();
+        int tokenEnd = tokenStart;
+        boolean languageName;
+        if (tokenEnd < text.length() && isHan(text.charAt(tokenEnd))) {
+            languageName = true;
+            while (tokenEnd < text.length() && isHan(text.charAt(tokenEnd))) {
+                tokenEnd++;
+            }
+            tokenEnd = tokenStart + longestLanguageName(text, tokenStart, tokenEnd);
+        } else {
+            languageName = false;
+            while (tokenEnd < text.length() && isCodeChar(text.charAt(tokenEnd))) {
+                tokenEnd++;
+            }
+        }
+        if (tokenEnd == tokenStart) {
+            return null;
+        }
+
+        String token = text.substring(tokenStart, tokenEnd);
+        String targetLanguage = LanguageCode.of(token).getTag();
+        String remainder = text.substring(tokenEnd).strip();
+        String sourceText;
+        if (form == Form.PREFIX) {
+            sourceText = remainder;
+        } else {
+            String before = text.substring(0, index).strip();
+            sourceText = remainder.isEmpty() ? before : before + " " + remainder;
+        }
+        return new Directive(form, token, languageName, targetLanguage, sourceText);
+    }
+
+    /**
+     * 從連續漢字中找出最長的已知語言名稱，沒有已知名稱時整段視為語言名稱
+     *
+     * @return 語言名稱的長度
+     */
+    private static int longestLanguageName(String text, int start, int end) {
+        for (int length = Math.min(end - start, MAX_LANGUAGE_NAME_LENGTH); length > 0; length--) {
+            if (LanguageUtils.isLanguageName(text.substring(start, start + length))) {
+                return length;
+            }
+        }
+        return end - start;
+    }
+
+    private static boolean isHan(char c) {
+        return c >= '\u4e00' && c <= '\u9fa5';
+    }
+
+    private static boolean isCodeChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '-';
+    }
+}
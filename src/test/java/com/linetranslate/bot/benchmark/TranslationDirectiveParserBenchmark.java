@@ -0,0 +1,116 @@
+package com.linetranslate.bot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.linetranslate.bot.util.TranslationDirectiveParser;
+
+/**
+ * 翻譯指令解析的效能測試，比較單次掃描的解析器與原本依序嘗試六個正則表達式的做法
+ * 執行方式: mvn test-compile exec:java -Dexec.classpathScope=test
+ *          -Dexec.mainClass=com.linetranslate.bot.benchmark.TranslationDirectiveParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationDirectiveParserBenchmark {
+
+    private static final Pattern TRANSLATION_COMMAND_PATTERN_CN = Pattern.compile("翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
+    private static final Pattern TRANSLATION_COMMAND_PATTERN_CODE = Pattern.compile("翻譯成([a-zA-Z\\-]+)\\s*(.*)");
+    private static final Pattern TEXT_THEN_TRANSLATION_PATTERN_CN = Pattern.compile("(.+?)\\s+翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
+    private static final Pattern TEXT_THEN_TRANSLATION_PATTERN_CODE = Pattern.compile("(.+?)\\s+翻譯成([a-zA-Z\\-]+)\\s*(.*)");
+    private static final Pattern MULTILINE_TRANSLATION_PATTERN_CN = Pattern.compile("(.*?)\\n翻譯成([\\u4e00-\\u9fa5]+)\\s*(.*)");
+    private static final Pattern MULTILINE_TRANSLATION_PATTERN_CODE = Pattern.compile("(.*?)\\n翻譯成([a-zA-Z\\-]+)\\s*(.*)");
+
+    /** 貼上的文本長度（字元數） */
+    @Param({"100", "10000", "100000"})
+    private int length;
+
+    /** none: 沒有指令, prefix: 翻譯成日文 ..., suffix: ... 翻譯成en, newline: ...\n翻譯成日文 */
+    @Param({"none", "prefix", "suffix", "newline"})
+    private String form;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder(length + 16);
+        String sentence = "今天天氣很好，我們一起去公園散步吧。The weather is nice today. ";
+        while (sb.length() < length) {
+            sb.append(sentence);
+            if (sb.length() % 7 == 0) {
+                sb.append('\n');
+            }
+        }
+        sb.setLength(length);
+        String body = sb.toString();
+        text = switch (form) {
+            case "prefix" -> "翻譯成日文 " + body;
+            case "suffix" -> body + " 翻譯成en";
+            case "newline" -> body + "\n翻譯成日文";
+            default -> body;
+        };
+    }
+
+    @Benchmark
+    public Object parser() {
+        return TranslationDirectiveParser.parse(text);
+    }
+
+    @Benchmark
+    public Object regex() {
+        Matcher matcher = MULTILINE_TRANSLATION_PATTERN_CN.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        matcher = MULTILINE_TRANSLATION_PATTERN_CODE.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        if (!text.contains("翻譯成")) {
+            return null;
+        }
+        matcher = TEXT_THEN_TRANSLATION_PATTERN_CN.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        matcher = TEXT_THEN_TRANSLATION_PATTERN_CODE.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        if (!text.startsWith("翻譯成")) {
+            return null;
+        }
+        matcher = TRANSLATION_COMMAND_PATTERN_CN.matcher(text);
+        if (matcher.find()) {
+            return matcher.group(2);
+        }
+        matcher = TRANSLATION_COMMAND_PATTERN_CODE.matcher(text);
+        return matcher.find() ? matcher.group(2) : null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TranslationDirectiveParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
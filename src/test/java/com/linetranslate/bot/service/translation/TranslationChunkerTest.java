@@ -0,0 +1,102 @@
+package com.linetranslate.bot.service.translation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.linetranslate.bot.service.ai.TokenEstimator;
+
+/**
+ * 長文本切分：每段不超過上限，且依序接上分隔符號後可還原原文
+ */
+class TranslationChunkerTest {
+
+    private static final String PROVIDER = "openai";
+    private static final int MAX_CHUNK_TOKENS = 20;
+
+    private final TranslationChunker chunker = new TranslationChunker(true, MAX_CHUNK_TOKENS, 2);
+
+    @Test
+    void keepsShortTextInOneChunk() {
+        String text = "Hello there.\n\nHow are you?";
+
+        List<TranslationChunker.Chunk> chunks = chunker.split(PROVIDER, text);
+
+        assertEquals(1, chunks.size());
+        assertEquals(text, join(chunks));
+        assertFalse(chunker.needsChunking(PROVIDER, text));
+    }
+
+    @Test
+    void splitsAtParagraphBreaks() {
+        String first = "第一段的內容比較長，需要單獨成為一段翻譯。";
+        String second = "第二段的內容也比較長，同樣需要單獨翻譯。";
+        String text = first + "\n\n" + second;
+
+        List<TranslationChunker.Chunk> chunks = chunker.split(PROVIDER, text);
+
+        assertTrue(chunker.needsChunking(PROVIDER, text));
+        assertEquals(2, chunks.size());
+        assertEquals(first, chunks.get(0).text());
+        assertEquals("\n\n", chunks.get(0).separator());
+        assertEquals(second, chunks.get(1).text());
+        assertEquals(text, join(chunks));
+    }
+
+    @Test
+    void splitsLongParagraphAtSentenceEnds() {
+        String text = "這是第一句話，內容有一點長。這是第二句話，內容也有一點長。這是第三句話，內容同樣有一點長。";
+
+        List<TranslationChunker.Chunk> chunks = chunker.split(PROVIDER, text);
+
+        assertTrue(chunks.size() > 1);
+        for (TranslationChunker.Chunk chunk : chunks) {
+            assertTrue(chunk.text().endsWith("。"), chunk.text());
+        }
+        assertWithinLimit(chunks);
+        assertEquals(text, join(chunks));
+    }
+
+    @Test
+    void splitsSentenceWithoutBoundariesByLength() {
+        String text = "很".repeat(40) + "😀".repeat(30);
+
+        List<TranslationChunker.Chunk> chunks = chunker.split(PROVIDER, text);
+
+        assertTrue(chunks.size() > 1);
+        for (TranslationChunker.Chunk chunk : chunks) {
+            // 不在表情符號的代理對中間切開
+            assertFalse(Character.isLowSurrogate(chunk.text().charAt(0)), chunk.text());
+        }
+        assertWithinLimit(chunks);
+        assertEquals(text, join(chunks));
+    }
+
+    @Test
+    void foldsConsecutiveSeparatorsIntoPreviousChunk() {
+        String text = "第一段的內容比較長，需要單獨成為一段翻譯。\n\n\n\n第二段的內容也比較長，同樣需要單獨翻譯。\n";
+
+        List<TranslationChunker.Chunk> chunks = chunker.split(PROVIDER, text);
+
+        assertEquals(2, chunks.size());
+        assertEquals(text, join(chunks));
+    }
+
+    private static void assertWithinLimit(List<TranslationChunker.Chunk> chunks) {
+        for (TranslationChunker.Chunk chunk : chunks) {
+            assertTrue(TokenEstimator.estimate(PROVIDER, chunk.text()) <= MAX_CHUNK_TOKENS, chunk.text());
+        }
+    }
+
+    private static String join(List<TranslationChunker.Chunk> chunks) {
+        StringBuilder sb = new StringBuilder();
+        for (TranslationChunker.Chunk chunk : chunks) {
+            sb.append(chunk.text()).append(chunk.separator());
+        }
+        return sb.toString();
+    }
+}
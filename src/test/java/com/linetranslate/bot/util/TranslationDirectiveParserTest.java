@@ -0,0 +1,120 @@
+package com.linetranslate.bot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.linetranslate.bot.util.TranslationDirectiveParser.Directive;
+import com.linetranslate.bot.util.TranslationDirectiveParser.Form;
+
+/**
+ * 翻譯指令解析的格式與邊界情況
+ */
+class TranslationDirectiveParserTest {
+
+    @Test
+    void parsesPrefixDirective() {
+        Directive directive = TranslationDirectiveParser.parse("翻譯成日文 你好");
+
+        assertNotNull(directive);
+        assertEquals(Form.PREFIX, directive.form());
+        assertEquals("日文", directive.languageToken());
+        assertTrue(directive.languageName());
+        assertEquals(LanguageCode.of("日文").getTag(), directive.targetLanguage());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void prefixDirectiveKeepsEveryFollowingLine() {
+        Directive directive = TranslationDirectiveParser.parse("翻譯成英文\n第一行\n第二行\n第三行");
+
+        assertNotNull(directive);
+        assertEquals(Form.PREFIX, directive.form());
+        assertEquals("第一行\n第二行\n第三行", directive.sourceText());
+    }
+
+    @Test
+    void prefixDirectiveAllowsLeadingWhitespace() {
+        Directive directive = TranslationDirectiveParser.parse("  翻譯成英文 早安");
+
+        assertNotNull(directive);
+        assertEquals(Form.PREFIX, directive.form());
+        assertEquals("早安", directive.sourceText());
+    }
+
+    @Test
+    void splitsLanguageNameFromTextWithoutSpace() {
+        Directive directive = TranslationDirectiveParser.parse("翻譯成日文你好");
+
+        assertNotNull(directive);
+        assertEquals(Form.PREFIX, directive.form());
+        assertEquals("日文", directive.languageToken());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void parsesLanguageCode() {
+        Directive directive = TranslationDirectiveParser.parse("翻譯成ja 你好");
+
+        assertNotNull(directive);
+        assertEquals("ja", directive.languageToken());
+        assertFalse(directive.languageName());
+        assertEquals(LanguageCode.of("ja").getTag(), directive.targetLanguage());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void parsesSuffixDirective() {
+        Directive directive = TranslationDirectiveParser.parse("你好 翻譯成英文");
+
+        assertNotNull(directive);
+        assertEquals(Form.SUFFIX, directive.form());
+        assertEquals("英文", directive.languageToken());
+        assertEquals(LanguageCode.of("英文").getTag(), directive.targetLanguage());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void parsesNewlineDirective() {
+        Directive directive = TranslationDirectiveParser.parse("你好\n翻譯成英文");
+
+        assertNotNull(directive);
+        assertEquals(Form.NEWLINE, directive.form());
+        assertEquals("英文", directive.languageToken());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void newlineDirectiveUsesEveryPrecedingLine() {
+        Directive directive = TranslationDirectiveParser.parse("第一行\n第二行\n第三行\n翻譯成英文");
+
+        assertNotNull(directive);
+        assertEquals(Form.NEWLINE, directive.form());
+        assertEquals("第一行\n第二行\n第三行", directive.sourceText());
+    }
+
+    @Test
+    void inlineDirectiveIsOnlyFoundInImageText() {
+        String text = "你好翻譯成英文";
+
+        assertNull(TranslationDirectiveParser.parse(text));
+
+        Directive directive = TranslationDirectiveParser.find(text);
+        assertNotNull(directive);
+        assertEquals(Form.INLINE, directive.form());
+        assertEquals("英文", directive.languageToken());
+        assertEquals("你好", directive.sourceText());
+    }
+
+    @Test
+    void returnsNullWithoutDirective() {
+        assertNull(TranslationDirectiveParser.parse(null));
+        assertNull(TranslationDirectiveParser.parse("你好"));
+        assertNull(TranslationDirectiveParser.parse("翻譯成"));
+        assertNull(TranslationDirectiveParser.find("翻譯成 你好"));
+    }
+}